@@ -0,0 +1,91 @@
+package benchmarks;
+
+import Util.BulkLoader;
+import Util.DBUtil;
+import Util.Dialect;
+import Util.TableSql;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load books with BulkLoader, which streams them with COPY, against multi-row INSERT statements
+ * COPY only exists in PostgreSQL, so the trial starts an embedded server instead of using H2
+ * The server is started by initdb, which refuses to run as root
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkLoadBenchmark {
+
+    private static final int CHUNK_ROWS = 10_000;
+    private static final String TABLE_SQL = "CREATE TABLE public.book (book_id SERIAL PRIMARY KEY, " +
+            "title VARCHAR(255), description VARCHAR(4000), number_of_pages INT, " +
+            "date_added TIMESTAMP WITH TIME ZONE, genre VARCHAR(255), author_id INT)";
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private EmbeddedPostgres postgres;
+    private String url;
+    private TableSql table;
+    private List<Object[]> books;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        postgres = EmbeddedPostgres.builder().start();
+        url = postgres.getJdbcUrl("postgres", "postgres");
+        DBUtil.executeUpdate(TABLE_SQL, url);
+        table = new TableSql(Dialect.POSTGRESQL, "book", "book_id", "title", "description",
+                "number_of_pages", "date_added", "genre", "author_id");
+
+        OffsetDateTime now = OffsetDateTime.now();
+        books = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            books.add(new Object[]{"Title " + i, "Description of book " + i, 100 + i % 900, now,
+                    "Genre " + i % 20, i % 100});
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        DBUtil.executeUpdate("TRUNCATE public.book", url);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        postgres.close();
+    }
+
+    @Benchmark
+    public long copy() throws SQLException {
+        return BulkLoader.load(table, url, books.iterator(), CHUNK_ROWS, null);
+    }
+
+    @Benchmark
+    public List<Object[]> insertRows() throws SQLException {
+        return DBUtil.executeInsertRows(table, url, books);
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import Util.DBUtil;
+
+import java.sql.SQLException;
+
+/**
+ * Creates the library tables in an in-memory H2 database in PostgreSQL mode
+ */
+public final class Database {
+
+    // Kept open for the whole JVM so every pooled connection sees the same tables
+    public static final String URL = "jdbc:h2:mem:library;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;" +
+            "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS public.author (author_id SERIAL PRIMARY KEY, first_name VARCHAR(255), " +
+                    "last_name VARCHAR(255), date_added TIMESTAMP WITH TIME ZONE)",
+            "CREATE TABLE IF NOT EXISTS public.book (book_id SERIAL PRIMARY KEY, title VARCHAR(255), " +
+                    "description VARCHAR(4000), number_of_pages INT, date_added TIMESTAMP WITH TIME ZONE, " +
+                    "genre VARCHAR(255), author_id INT)",
+            "CREATE TABLE IF NOT EXISTS public.\"user\" (user_id SERIAL PRIMARY KEY, first_name VARCHAR(255), " +
+                    "last_name VARCHAR(255), date_added TIMESTAMP WITH TIME ZONE, booking_record BOOLEAN)",
+            "CREATE TABLE IF NOT EXISTS public.borrow (borrowing_id SERIAL PRIMARY KEY, book_id INT, user_id INT, " +
+                    "borrowing_date TIMESTAMP WITH TIME ZONE, expected_return_date TIMESTAMP WITH TIME ZONE, " +
+                    "actual_return_date TIMESTAMP WITH TIME ZONE)",
+            "CREATE INDEX IF NOT EXISTS book_date_added ON public.book (date_added, book_id)"
+    };
+
+    static {
+
+        // DBUtil reads its database from DatabaseConfig when it is first loaded
+        if (System.getProperty("db.url") == null) {
+            System.setProperty("db.url", URL);
+        }
+    }
+
+    private static boolean created;
+
+    private Database() {
+    }
+
+    /**
+     * Creates the tables once per JVM
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    public static synchronized void create() throws SQLException {
+        if (created) {
+            return;
+        }
+        for (String sql : SCHEMA) {
+            DBUtil.executeUpdate(sql, DBUtil.getURL());
+        }
+        created = true;
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import Util.DateTimeUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the DateTimeUtil parsers over millions of distinct timestamps
+ * The before methods parse the way DateTimeUtil did before its formatter registry and ISO fast path:
+ * a formatter compiled on every call and the ISO formatter for every string.
+ * Run with -Dprof=gc to also get the bytes allocated per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DateTimeBenchmark {
+
+    // A power of two, so the next sample is found with a mask
+    @Param("2097152")
+    private int samples;
+
+    private String[] iso;
+    private String[] custom;
+    private int mask;
+
+    /**
+     * The position of one benchmark thread in the samples
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = ThreadLocalRandom.current().nextInt();
+    }
+
+    @Setup
+    public void setUp() {
+        if (Integer.bitCount(samples) != 1) {
+            throw new IllegalArgumentException("samples must be a power of two: " + samples);
+        }
+        iso = new String[samples];
+        custom = new String[samples];
+        mask = samples - 1;
+
+        // Offsets, fractions and dates all vary, as they do in rows read from the database
+        OffsetDateTime start = OffsetDateTime.of(2000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < samples; i++) {
+            OffsetDateTime sample = start.plusSeconds(random.nextLong(800_000_000L))
+                    .withNano(random.nextInt(4) == 0 ? 0 : random.nextInt(1_000_000) * 1_000)
+                    .withOffsetSameInstant(ZoneOffset.ofTotalSeconds(900 * random.nextInt(-44, 53)));
+            iso[i] = DateTimeUtil.formatToIso(sample);
+            custom[i] = DateTimeUtil.formatToCustom2(sample.withNano(0));
+        }
+    }
+
+    @Benchmark
+    public OffsetDateTime parseIso(Cursor cursor) {
+        return DateTimeUtil.parseIso(iso[cursor.next++ & mask]);
+    }
+
+    @Benchmark
+    public OffsetDateTime parseIsoBefore(Cursor cursor) {
+        return OffsetDateTime.parse(iso[cursor.next++ & mask], DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+
+    @Benchmark
+    public OffsetDateTime parsePattern(Cursor cursor) {
+        return DateTimeUtil.parse(custom[cursor.next++ & mask], DateTimeUtil.PATTERN_2);
+    }
+
+    @Benchmark
+    public OffsetDateTime parsePatternBefore(Cursor cursor) {
+        return OffsetDateTime.parse(custom[cursor.next++ & mask], DateTimeFormatter.ofPattern(DateTimeUtil.PATTERN_2));
+    }
+}
@@ -0,0 +1,144 @@
+package benchmarks;
+
+import Util.DBUtil;
+import model.Book;
+import model.Borrow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of the model write and read paths and of DBUtil against H2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+
+    private static final int BOOKS = 10_000;
+    private static final String FIND_SQL = "SELECT book_id, title, description, number_of_pages, date_added, " +
+            "genre, author_id FROM public.book WHERE book_id = ?";
+    private static final String UPDATE_SQL = "UPDATE public.book SET number_of_pages = ? WHERE book_id = ?";
+
+    private int[] bookIds;
+    private Book sampleBook;
+    private Borrow sampleBorrow;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        Database.create();
+        List<Book> books = new ArrayList<>(BOOKS);
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(new Book("Title " + i, "Description of book " + i, 100 + i % 900, "Genre " + i % 20, i % 100));
+        }
+        Book.addAllToDatabase(books);
+        bookIds = books.stream().mapToInt(Book::getBook_id).toArray();
+
+        sampleBook = Book.findById(bookIds[0]);
+        sampleBorrow = new Borrow(1, bookIds[0], 1, OffsetDateTime.now(), OffsetDateTime.now().plusDays(14), null);
+    }
+
+    /**
+     * A book owned by one benchmark thread, updated over and over
+     */
+    @State(Scope.Thread)
+    public static class OwnBook {
+        Book book;
+        int pages;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            Database.create();
+            book = new Book("Updated", "Updated by one thread", 1, "Genre", 1);
+            book.addToDatabase();
+        }
+    }
+
+    /**
+     * A fresh book for every call of deleteBook()
+     */
+    @State(Scope.Thread)
+    public static class FreshBook {
+        Book book;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws SQLException {
+            Database.create();
+            book = new Book("Deleted", "Deleted right away", 1, "Genre", 1);
+            book.addToDatabase();
+        }
+    }
+
+    private int randomBookId() {
+        return bookIds[ThreadLocalRandom.current().nextInt(bookIds.length)];
+    }
+
+    @Benchmark
+    public String insertBook() {
+        return new Book("Inserted", "Inserted by the benchmark", 321, "Genre", 7).addToDatabase();
+    }
+
+    @Benchmark
+    public String insertBorrow() {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new Borrow(randomBookId(), 1, now.plusDays(14)).addToDatabase();
+    }
+
+    @Benchmark
+    public String updateBook(OwnBook own) {
+        own.book.setNumber_of_pages(++own.pages);
+        return own.book.saveChanges();
+    }
+
+    @Benchmark
+    public String deleteBook(FreshBook fresh) {
+        return fresh.book.delete();
+    }
+
+    @Benchmark
+    public Book findByIdCached() throws SQLException {
+        return Book.findById(randomBookId());
+    }
+
+    @Benchmark
+    public boolean executeQuery() throws SQLException {
+        try (ResultSet rs = DBUtil.executeQuery(FIND_SQL, DBUtil.getURL(), randomBookId())) {
+            return rs.next();
+        }
+    }
+
+    @Benchmark
+    public int executeUpdate() throws SQLException {
+        return DBUtil.executeUpdate(UPDATE_SQL, DBUtil.getURL(), 200, randomBookId());
+    }
+
+    @Benchmark
+    public String bookToString() {
+        return sampleBook.toString();
+    }
+
+    @Benchmark
+    public String borrowToString() {
+        return sampleBorrow.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks once per thread count and writes every result to one JSON file
+ * Usage: java [-Dthreads=1,4,8] [-Dresult=jmh-result.json] [-Dprof=gc] -jar benchmarks.jar [regexp]
+ * prof names a JMH profiler, gc adds the bytes allocated per operation to the results.
+ */
+public final class Runner {
+
+    private Runner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+        String result = System.getProperty("result", "jmh-result.json");
+        String profiler = System.getProperty("prof");
+
+        List<RunResult> results = new ArrayList<>();
+        for (String threads : System.getProperty("threads", "1,4,8").split(",")) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .jvmArgsAppend("-Ddb.url=" + Database.URL);
+            if (profiler != null) {
+                options.addProfiler(profiler);
+            }
+            results.addAll(new org.openjdk.jmh.runner.Runner(options.build()).run());
+        }
+        ResultFormatFactory.getInstance(ResultFormatType.JSON, result).writeOut(results);
+        System.out.println("Results written to " + result);
+    }
+}
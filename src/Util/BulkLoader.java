@@ -0,0 +1,384 @@
+package Util;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads large numbers of rows into a table, with COPY FROM STDIN (FORMAT binary) on PostgreSQL
+ * Rows are encoded straight into reusable buffers of chunkRows rows on the calling thread and sent by a
+ * writer thread, each chunk as its own COPY. At most QUEUED_CHUNKS chunks wait for the writer, so the
+ * caller is slowed down to the speed of the database instead of filling the memory.
+ * A failed chunk is reported and skipped, the others are still loaded.
+ * Other databases get the same chunks through the multi-row inserts of DBUtil.executeInsertRows().
+ * Generated ids are not read back, so the caches and indexes of the models must be rebuilt afterwards.
+ */
+public final class BulkLoader {
+
+    /**
+     * Receives the outcome of every chunk, on the thread sending the chunks
+     */
+    @FunctionalInterface
+    public interface ChunkListener {
+
+        /**
+         * Called once a chunk was loaded or failed
+         *
+         * @param chunk the number of the chunk, from 0
+         * @param rows the number of rows of the chunk
+         * @param loadedRows the number of rows loaded so far, by this chunk and the ones before
+         * @param error the error of the chunk or null if its rows were loaded
+         */
+        void onChunk(int chunk, int rows, long loadedRows, SQLException error);
+    }
+
+    /**
+     * Sends the encoded rows of a chunk to the database
+     */
+    @FunctionalInterface
+    interface ChunkSender {
+
+        /**
+         * Sends a chunk, on the writer thread
+         *
+         * @param chunk the chunk, its buffer holds the COPY data up to its position
+         * @return the error of the chunk or null if its rows were loaded
+         */
+        SQLException send(Chunk chunk);
+    }
+
+    private static final int QUEUED_CHUNKS = 4;
+
+    // How often the encoder waiting for a free buffer checks whether the writer failed
+    private static final long POLL_MILLIS = 100;
+    private static final int INITIAL_BUFFER_BYTES = 1024 * 1024;
+
+    // Binary COPY header: signature, flags and header extension length, and the trailer ending the rows
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final short TRAILER = -1;
+
+    // PostgreSQL counts timestamps in microseconds from 2000-01-01 UTC
+    private static final long POSTGRES_EPOCH_SECONDS =
+            OffsetDateTime.of(2000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).toEpochSecond();
+
+    private BulkLoader() {
+    }
+
+    /**
+     * Loads rows into a table, see the class description
+     *
+     * @param table the statements of the table
+     * @param url the Url for the connection, its dialect must be the one of the statements
+     * @param rows the values of the insert columns of each row, read once
+     * @param chunkRows the number of rows sent and committed together
+     * @param listener told about every chunk or null to only print the errors
+     * @return the number of rows loaded
+     * @throws SQLException if no connection can be obtained
+     * @throws IllegalArgumentException if a value has a type that cannot be loaded
+     * @throws RuntimeException if the thread sending the chunks stopped on an unexpected error, encoding stops
+     */
+    public static long load(TableSql table, String url, Iterator<Object[]> rows, int chunkRows,
+                            ChunkListener listener) throws SQLException {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkRows);
+        }
+        if (listener == null) {
+            listener = (chunk, count, loaded, error) -> {
+                if (error != null) error.printStackTrace();
+            };
+        }
+        if (table.getDialect() != Dialect.POSTGRESQL) {
+            return insert(table, url, rows, chunkRows, listener);
+        }
+
+        ConnectionPool pool = DBUtil.getPool(url);
+        PoolEntry entry = pool.borrow();
+        try {
+            CopyManager copy = entry.connection.unwrap(PGConnection.class).getCopyAPI();
+            String sql = "COPY " + table.table() + " (" + String.join(", ", table.columns()) +
+                    ") FROM STDIN (FORMAT binary)";
+            return copy(chunk -> copyChunk(copy, sql, url, chunk), rows, chunkRows, table.columns().size(),
+                    listener);
+        } finally {
+            pool.release(entry);
+        }
+    }
+
+    /**
+     * Encodes the chunks on the calling thread while a writer thread sends them
+     *
+     * @param sender sends a chunk, with COPY outside of the tests
+     * @return the number of rows loaded
+     * @throws RuntimeException if the writer thread stopped on an unexpected error
+     */
+    static long copy(ChunkSender sender, Iterator<Object[]> rows, int chunkRows, int columnCount,
+                     ChunkListener listener) {
+
+        // Buffers go around: free to the encoder, full to the writer and back to free
+        // One is being encoded and one copied, so QUEUED_CHUNKS can wait in between
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(QUEUED_CHUNKS + 2);
+        BlockingQueue<Chunk> full = new LinkedBlockingQueue<>();
+        for (int i = 0; i < QUEUED_CHUNKS + 2; i++) {
+            free.add(new Chunk(INITIAL_BUFFER_BYTES));
+        }
+        long[] loaded = new long[1];
+
+        // Set by the writer if it stops on an unexpected error, it then hands back no more buffers
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            try {
+                Chunk chunk;
+                while ((chunk = full.take()).rows >= 0) {
+                    SQLException error = sender.send(chunk);
+                    if (error == null) loaded[0] += chunk.rows;
+                    try {
+                        listener.onChunk(chunk.index, chunk.rows, loaded[0], error);
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                    }
+                    free.add(chunk);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException | Error ex) {
+                failure.set(ex);
+            }
+        }, "BulkLoader-copy");
+        writer.setDaemon(true);
+        writer.start();
+
+        Encoder encoder = new Encoder();
+        boolean interrupted = false;
+        try {
+            int index = 0;
+            while (rows.hasNext()) {
+                Chunk chunk = null;
+                while (chunk == null) {
+                    rethrow(failure.get());
+                    chunk = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                encoder.start(chunk, index++);
+                while (chunk.rows < chunkRows && rows.hasNext()) {
+                    encoder.row(rows.next(), columnCount);
+                }
+                encoder.finish();
+                full.put(chunk);
+            }
+        } catch (InterruptedException ex) {
+            interrupted = true;
+        } finally {
+
+            // Tell the writer there is nothing more, then wait for it to send what it was given
+            Chunk end = new Chunk(0);
+            end.rows = -1;
+            full.add(end);
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // The writer may also have failed on the last chunks
+        rethrow(failure.get());
+        return loaded[0];
+    }
+
+    /**
+     * Throws the error that stopped the writer thread on the calling thread, if any
+     */
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    private static SQLException copyChunk(CopyManager copy, String sql, String url, Chunk chunk) {
+        long start = System.nanoTime();
+        CopyIn in = null;
+        try {
+            in = copy.copyIn(sql);
+            in.writeToCopy(chunk.buffer.array(), 0, chunk.buffer.position());
+            long rows = in.endCopy();
+            DBMetrics.record(sql, null, 0, System.nanoTime() - start, rows, null);
+            ReplicaRouter.wrote(url);
+            return null;
+        } catch (SQLException ex) {
+            if (in != null && in.isActive()) {
+                try {
+                    in.cancelCopy();
+                } catch (SQLException cancel) {
+                    ex.addSuppressed(cancel);
+                }
+            }
+            DBMetrics.record(sql, null, 0, System.nanoTime() - start, -1, ex);
+            return ex;
+        }
+    }
+
+    /**
+     * Sends the chunks with DBUtil.executeInsertRows() on the calling thread
+     */
+    private static long insert(TableSql table, String url, Iterator<Object[]> rows, int chunkRows,
+                               ChunkListener listener) {
+        long loaded = 0;
+        int index = 0;
+        List<Object[]> chunk = new ArrayList<>(chunkRows);
+        while (rows.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < chunkRows && rows.hasNext()) {
+                chunk.add(rows.next());
+            }
+            SQLException error = null;
+            try {
+                DBUtil.executeInsertRows(table, url, chunk);
+                loaded += chunk.size();
+            } catch (SQLException ex) {
+                error = ex;
+            }
+            listener.onChunk(index++, chunk.size(), loaded, error);
+        }
+        return loaded;
+    }
+
+    /**
+     * The binary COPY data of a chunk of rows
+     */
+    static final class Chunk {
+        ByteBuffer buffer;
+        int index;
+        int rows;
+
+        Chunk(int capacity) {
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /**
+     * Writes rows in the binary COPY format, reusing the buffer of the chunk
+     */
+    static final class Encoder {
+        private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder();
+        private Chunk chunk;
+
+        void start(Chunk chunk, int index) {
+            this.chunk = chunk;
+            chunk.index = index;
+            chunk.rows = 0;
+            chunk.buffer.clear();
+            chunk.buffer.put(SIGNATURE).putInt(0).putInt(0);
+        }
+
+        void row(Object[] values, int columnCount) {
+            if (values.length != columnCount) {
+                throw new IllegalArgumentException("Expected " + columnCount + " values but got " + values.length);
+            }
+            ensure(Short.BYTES);
+            chunk.buffer.putShort((short) columnCount);
+            for (Object value : values) {
+                field(value);
+            }
+            chunk.rows++;
+        }
+
+        void finish() {
+            ensure(Short.BYTES);
+            chunk.buffer.putShort(TRAILER);
+        }
+
+        /**
+         * Writes the length of a value then its bytes in the binary format of its column type
+         */
+        private void field(Object value) {
+            ensure(Integer.BYTES + Long.BYTES);
+            ByteBuffer buffer = chunk.buffer;
+            if (value == null) {
+                buffer.putInt(-1);
+            } else if (value instanceof String) {
+                string((String) value);
+            } else if (value instanceof Integer) {
+                buffer.putInt(Integer.BYTES).putInt((Integer) value);
+            } else if (value instanceof Long) {
+                buffer.putInt(Long.BYTES).putLong((Long) value);
+            } else if (value instanceof Boolean) {
+                buffer.putInt(1).put((byte) ((Boolean) value ? 1 : 0));
+            } else if (value instanceof OffsetDateTime) {
+                buffer.putInt(Long.BYTES).putLong(micros(((OffsetDateTime) value).toInstant()));
+            } else {
+                throw new IllegalArgumentException("Cannot copy a value of type " + value.getClass().getName());
+            }
+        }
+
+        /**
+         * Encodes a string as UTF-8 straight into the buffer, growing it as needed
+         */
+        private void string(String value) {
+            int lengthPosition = chunk.buffer.position();
+            chunk.buffer.putInt(0);
+            int start = chunk.buffer.position();
+
+            CharBuffer chars = CharBuffer.wrap(value);
+            utf8.reset();
+            while (true) {
+                CoderResult result = utf8.encode(chars, chunk.buffer, true);
+                if (result.isOverflow()) {
+                    grow(value.length() * 3);
+                    continue;
+                }
+                if (result.isError()) {
+                    throw new IllegalArgumentException("Cannot encode a string as UTF-8: " + result);
+                }
+                if (utf8.flush(chunk.buffer).isOverflow()) {
+                    grow(16);
+                    continue;
+                }
+                break;
+            }
+            chunk.buffer.putInt(lengthPosition, chunk.buffer.position() - start);
+        }
+
+        private void ensure(int bytes) {
+            if (chunk.buffer.remaining() < bytes) {
+                grow(bytes);
+            }
+        }
+
+        private void grow(int bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(chunk.buffer.capacity() * 2,
+                    chunk.buffer.position() + bytes));
+            chunk.buffer.flip();
+            bigger.put(chunk.buffer);
+            chunk.buffer = bigger;
+        }
+
+        private static long micros(Instant instant) {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond() - POSTGRES_EPOCH_SECONDS, 1_000_000L),
+                    instant.getNano() / 1_000);
+        }
+    }
+}
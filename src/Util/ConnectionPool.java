@@ -0,0 +1,291 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of JDBC connections to a single database
+ * Connections are validated on checkout, evicted when idle for too long
+ * and reported when they are held for longer than the leak threshold
+ */
+public class ConnectionPool {
+
+    // Connections used within this window are not validated again on checkout
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 30_000;
+
+    // Connection settings
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+
+    // Pool settings
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+
+    // Most recently used connections are kept at the head of the deque
+    private final LinkedBlockingDeque<PoolEntry> idle = new LinkedBlockingDeque<>();
+    private final Set<PoolEntry> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a ConnectionPool, connections are opened lazily
+     *
+     * @param jdbcUrl the JDBC URL of the database
+     * @param user the user to connect as
+     * @param password the password of the user
+     * @param minSize the number of idle connections kept open
+     * @param maxSize the maximum number of connections open at once
+     * @param borrowTimeoutMillis how long borrow() waits for a free connection
+     * @param idleTimeoutMillis how long a connection above minSize may stay idle
+     * @param leakThresholdMillis how long a connection may be held before it is reported, 0 to disable
+     */
+    public ConnectionPool(String jdbcUrl, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min = " + minSize + ", max = " + maxSize);
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ConnectionPool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_PERIOD_MILLIS,
+                HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the borrow timeout
+     * The connection must be handed back with release()
+     *
+     * @return a valid pooled connection
+     * @throws SQLException if no connection could be obtained in time or a database access error occurs,
+     *                      ConnectionUnavailableException if the database cannot be reached
+     */
+    PoolEntry borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool for " + jdbcUrl + " is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis +
+                        " ms waiting for a connection to " + jdbcUrl);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", ex);
+        }
+
+        try {
+            PoolEntry entry = takeIdle();
+            if (entry == null) {
+                entry = open();
+            }
+            entry.borrowedAt = System.currentTimeMillis();
+            entry.borrowTrace = (leakThresholdMillis > 0) ? new Throwable("Connection borrowed here") : null;
+            entry.leakReported = false;
+            borrowed.add(entry);
+            return entry;
+        } catch (SQLException ex) {
+            permits.release();
+
+            // Nothing was sent yet, tell the caller its write cannot have been applied
+            throw WriteJournal.isConnectionFailure(ex) ? new ConnectionUnavailableException(ex) : ex;
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Hands a borrowed connection back to the pool
+     *
+     * @param entry the connection returned by borrow()
+     */
+    void release(PoolEntry entry) {
+        if (!borrowed.remove(entry)) {
+            return;
+        }
+
+        try {
+
+            // Never hand out a connection with a half finished transaction
+            if (!entry.connection.isClosed() && !entry.connection.getAutoCommit()) {
+                entry.connection.rollback();
+                entry.connection.setAutoCommit(true);
+            }
+            if (closed || entry.connection.isClosed()) {
+                discard(entry);
+            } else {
+                entry.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(entry);
+            }
+        } catch (SQLException ex) {
+            discard(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Retrieves the number of connections currently handed out
+     *
+     * @return the number of borrowed connections
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * Retrieves the number of open connections waiting to be borrowed
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Retrieves the JDBC URL of the database the pool connects to
+     *
+     * @return the JDBC URL
+     */
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    /**
+     * Retrieves the maximum number of connections of the pool
+     *
+     * @return the maximum pool size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Closes every idle connection and stops the pool
+     * Borrowed connections are closed as soon as they are released
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PoolEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection, validating it first
+     *
+     * @return a valid idle connection or null if none is available
+     */
+    private PoolEntry takeIdle() {
+        PoolEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - entry.lastUsed < VALIDATION_BYPASS_MILLIS || isValid(entry)) {
+                return entry;
+            }
+            discard(entry);
+        }
+        return null;
+    }
+
+    /**
+     * Opens a new physical connection
+     *
+     * @return the new pooled connection
+     * @throws SQLException if a database access error occurs
+     */
+    private PoolEntry open() throws SQLException {
+        totalCount.incrementAndGet();
+        try {
+            return new PoolEntry(DriverManager.getConnection(jdbcUrl, user, password));
+        } catch (SQLException ex) {
+            totalCount.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private boolean isValid(PoolEntry entry) {
+        try {
+            return entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void discard(PoolEntry entry) {
+        totalCount.decrementAndGet();
+        entry.close();
+    }
+
+    /**
+     * Evicts idle connections, tops the pool up to its minimum size and reports leaks
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // Least recently used connections sit at the tail of the deque
+        Iterator<PoolEntry> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && totalCount.get() > minSize) {
+            PoolEntry entry = iterator.next();
+            if (now - entry.lastUsed > idleTimeoutMillis && idle.remove(entry)) {
+                discard(entry);
+            }
+        }
+
+        while (!closed && totalCount.get() < minSize) {
+            try {
+                PoolEntry entry = open();
+                entry.lastUsed = now;
+                idle.offerLast(entry);
+            } catch (SQLException ex) {
+
+                // The database is unreachable, try again on the next run
+                break;
+            }
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (PoolEntry entry : borrowed) {
+                if (!entry.leakReported && now - entry.borrowedAt > leakThresholdMillis) {
+                    entry.leakReported = true;
+                    System.err.println("Possible connection leak: connection to " + jdbcUrl +
+                            " held for " + (now - entry.borrowedAt) + " ms");
+                    if (entry.borrowTrace != null) entry.borrowTrace.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package Util;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown when a connection to the database cannot be opened
+ * No statement was sent, so the write that asked for the connection cannot have been applied
+ */
+public class ConnectionUnavailableException extends SQLTransientConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Wraps the failure to open a connection, keeping its message, SQLState and error code
+     *
+     * @param cause the exception thrown by the driver
+     */
+    public ConnectionUnavailableException(SQLException cause) {
+        super(cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+    }
+}
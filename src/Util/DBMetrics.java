@@ -0,0 +1,169 @@
+package Util;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per statement metrics of the calls made through DBUtil
+ * Metrics are kept per SQL text, exposed through JMX as Util:type=DBMetrics
+ * and forwarded to the registered MetricsListener implementations
+ */
+public class DBMetrics {
+
+    // Statements beyond this number are counted together so generated SQL cannot exhaust memory
+    private static final int MAX_STATEMENTS = 1_000;
+    private static final String OTHER_STATEMENTS = "<other>";
+
+    private static final ConcurrentMap<String, Metrics> STATEMENTS = new ConcurrentHashMap<>();
+    private static final List<MetricsListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static volatile boolean enabled = true;
+
+    // Metrics of one SQL statement
+    private static final class Metrics {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LatencyHistogram execute = new LatencyHistogram();
+        final LatencyHistogram poolWait = new LatencyHistogram();
+    }
+
+    static {
+        for (MetricsListener listener : ServiceLoader.load(MetricsListener.class)) {
+            LISTENERS.add(listener);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(),
+                    new ObjectName("Util:type=DBMetrics"));
+        } catch (Exception ex) {
+
+            // Metrics still work without JMX, for example when the name is already registered
+            ex.printStackTrace();
+        }
+    }
+
+    private DBMetrics() {
+    }
+
+    /**
+     * Records the execution of a statement, called by DBUtil
+     *
+     * @param sql the SQL text of the statement
+     * @param params the parameters of the statement
+     * @param poolWaitNanos the time spent waiting for a connection
+     * @param executeNanos the time spent executing the statement
+     * @param rows the number of rows affected or returned, -1 if unknown
+     * @param error the exception thrown by the statement or null if it succeeded
+     */
+    static void record(String sql, Object[] params, long poolWaitNanos, long executeNanos, long rows,
+                       Throwable error) {
+        if (!enabled) {
+            return;
+        }
+
+        Metrics metrics = STATEMENTS.get(sql);
+        if (metrics == null) {
+            metrics = STATEMENTS.computeIfAbsent(STATEMENTS.size() < MAX_STATEMENTS ? sql : OTHER_STATEMENTS,
+                    key -> new Metrics());
+        }
+        metrics.calls.increment();
+        metrics.poolWait.record(poolWaitNanos);
+        metrics.execute.record(executeNanos);
+        if (error != null) {
+            metrics.errors.increment();
+        } else if (rows > 0) {
+            metrics.rows.add(rows);
+        }
+
+        for (MetricsListener listener : LISTENERS) {
+            try {
+                listener.onStatement(sql, params, poolWaitNanos, executeNanos, rows, error);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Registers a listener called after every statement
+     *
+     * @param listener the listener to add
+     */
+    public static void addListener(MetricsListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeListener(MetricsListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Turns metric collection on or off, listeners are not called while it is off
+     *
+     * @param on true to collect metrics, otherwise false
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Retrieves a snapshot of the metrics of every statement
+     *
+     * @return the metrics of every statement
+     */
+    public static List<StatementStats> getStatements() {
+        List<StatementStats> stats = new ArrayList<>(STATEMENTS.size());
+        STATEMENTS.forEach((sql, metrics) -> stats.add(new StatementStats(sql, metrics.calls.sum(),
+                metrics.errors.sum(), metrics.rows.sum(), toMillis(metrics.execute.getMean()),
+                toMillis(metrics.execute.getPercentile(50)), toMillis(metrics.execute.getPercentile(95)),
+                toMillis(metrics.execute.getPercentile(99)), toMillis(metrics.execute.getMax()),
+                toMillis(metrics.poolWait.getPercentile(99)))));
+        return stats;
+    }
+
+    /**
+     * Forgets every collected metric
+     */
+    public static void reset() {
+        STATEMENTS.clear();
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    // Exposes the metrics through JMX
+    private static final class MXBean implements DBMetricsMXBean {
+
+        @Override
+        public List<StatementStats> getStatements() {
+            return DBMetrics.getStatements();
+        }
+
+        @Override
+        public long getTotalCalls() {
+            return STATEMENTS.values().stream().mapToLong(metrics -> metrics.calls.sum()).sum();
+        }
+
+        @Override
+        public long getTotalErrors() {
+            return STATEMENTS.values().stream().mapToLong(metrics -> metrics.errors.sum()).sum();
+        }
+
+        @Override
+        public void reset() {
+            DBMetrics.reset();
+        }
+    }
+}
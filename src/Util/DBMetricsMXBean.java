@@ -0,0 +1,35 @@
+package Util;
+
+import java.util.List;
+
+/**
+ * JMX view of the statement metrics collected by DBMetrics
+ */
+public interface DBMetricsMXBean {
+
+    /**
+     * Retrieves a snapshot of the metrics of every statement
+     *
+     * @return the metrics of every statement
+     */
+    List<StatementStats> getStatements();
+
+    /**
+     * Retrieves the number of statements executed
+     *
+     * @return the number of statements executed
+     */
+    long getTotalCalls();
+
+    /**
+     * Retrieves the number of statements that failed
+     *
+     * @return the number of statements that failed
+     */
+    long getTotalErrors();
+
+    /**
+     * Forgets every collected metric
+     */
+    void reset();
+}
@@ -1,62 +1,485 @@
 package Util;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DBUtil {
 
     // JDBC URL, Set last part (db name) to your database name
     private static final String JDBC_URL_POSTGRES = "jdbc:postgresql://localhost:5432/Library_Management_System";
     private static final String JDBC_URL_MYSQL = "jdbc:mysql://localhost:3306/Library_Management_System";
-    private static final String JDBC_URL_SQLSERVER = "jdbc:sqlserver://localhost:1433;databaseName=yLibrary_Management_System";
+    private static final String JDBC_URL_SQLSERVER = "jdbc:sqlserver://localhost:1433;databaseName=Library_Management_System";
 
-    // Set USER and PASSWORD to your user and password
-    private static final String JDBC_USER = "login1";
-    private static final String JDBC_PASSWORD = "1234";
+    // Database used by the models, credentials and pool settings come from DatabaseConfig
+    private static final String JDBC_URL = DatabaseConfig.get("db.url", JDBC_URL_POSTGRES);
+    private static final Dialect DIALECT = Dialect.forUrl(JDBC_URL);
 
-    // JDBC variables for opening and managing connection
-    private static Connection conn;
-    private static PreparedStatement pstmt;
+    // Default connection pool settings
+    private static final int POOL_MIN_SIZE = (int) DatabaseConfig.getLong("pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = (int) DatabaseConfig.getLong("pool.maxSize",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = DatabaseConfig.getLong("pool.borrowTimeoutMillis", 30_000);
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = DatabaseConfig.getLong("pool.idleTimeoutMillis", 600_000);
+    private static final long POOL_LEAK_THRESHOLD_MILLIS = DatabaseConfig.getLong("pool.leakThresholdMillis", 60_000);
+
+    // Default number of rows sent and committed together by executeBatch()
+    private static final int DEFAULT_BATCH_SIZE = 1_000;
+
+    // Number of rows fetched per round trip by stream()
+    private static volatile int fetchSize = 500;
+
+    // Largest page returned by page()
+    private static final int MAX_PAGE_SIZE = 1_000;
+
+    // One connection pool per JDBC URL
+    private static final Map<String, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+
+    // Used to detach query results from the connection they were read from
+    private static final RowSetFactory ROW_SET_FACTORY;
+
+    // Runs the asynchronous calls, at most as many at once as a pool has connections
+    private static final ExecutorService ASYNC_EXECUTOR = createAsyncExecutor();
+    private static final Semaphore ASYNC_PERMITS = new Semaphore(POOL_MAX_SIZE);
+
+    static {
+        try {
+            ROW_SET_FACTORY = RowSetProvider.newFactory();
+        } catch (SQLException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+        for (String replica : DatabaseConfig.get("db.replicas", "").split(",")) {
+            if (!replica.isBlank()) addReplica(JDBC_URL, replica.trim());
+        }
+    }
 
     /**
-     * Establishes a connection to the database based on the JDBC URL.
+     * Establishes the connection pool of the database based on the JDBC URL
+     * and checks that a connection can be obtained from it.
      *
      * @param jdbcUrl the JDBC URL of the database
      * @throws SQLException if a database access error occurs
      */
     public static void connect(String jdbcUrl) throws SQLException {
+        ConnectionPool pool = getPool(jdbcUrl);
+        pool.release(pool.borrow());
+    }
+
+    /**
+     * Replaces the connection pool of a database with one using the given settings.
+     * The previous pool, if any, is closed.
+     *
+     * @param jdbcUrl the JDBC URL of the database
+     * @param minSize the number of idle connections kept open
+     * @param maxSize the maximum number of connections open at once
+     * @param borrowTimeoutMillis how long a call waits for a free connection
+     * @param idleTimeoutMillis how long a connection above minSize may stay idle
+     * @param leakThresholdMillis how long a connection may be held before it is reported, 0 to disable
+     */
+    public static void configurePool(String jdbcUrl, int minSize, int maxSize, long borrowTimeoutMillis,
+                                     long idleTimeoutMillis, long leakThresholdMillis) {
+        ConnectionPool previous = POOLS.put(jdbcUrl, new ConnectionPool(jdbcUrl, DatabaseConfig.getUser(), DatabaseConfig.getPassword(),
+                minSize, maxSize, borrowTimeoutMillis, idleTimeoutMillis, leakThresholdMillis));
+        if (previous != null) previous.close();
+    }
+
+    /**
+     * Retrieves the connection pool of a database, creating it with the default settings if needed
+     *
+     * @param jdbcUrl the JDBC URL of the database
+     * @return the connection pool of the database
+     */
+    public static ConnectionPool getPool(String jdbcUrl) {
+        return POOLS.computeIfAbsent(jdbcUrl, url -> new ConnectionPool(url, DatabaseConfig.getUser(), DatabaseConfig.getPassword(),
+                POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_BORROW_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS,
+                POOL_LEAK_THRESHOLD_MILLIS));
+    }
+
+    /**
+     * Adds a read replica of a database. Queries are then sent to the healthy replica with the fewest
+     * queries in flight, except for a thread that wrote to the database within the read-your-writes window.
+     * Replicas are checked every few seconds and queries go to the database itself while none is healthy.
+     *
+     * @param primaryUrl the JDBC URL of the database written to
+     * @param replicaUrl the JDBC URL of the replica, its pool is created with the default settings if needed
+     */
+    public static void addReplica(String primaryUrl, String replicaUrl) {
+        ReplicaRouter.add(primaryUrl, replicaUrl);
+    }
+
+    /**
+     * Removes a read replica of a database
+     *
+     * @param primaryUrl the JDBC URL of the database written to
+     * @param replicaUrl the JDBC URL of the replica
+     * @return true if the replica was removed, otherwise false
+     */
+    public static boolean removeReplica(String primaryUrl, String replicaUrl) {
+        return ReplicaRouter.remove(primaryUrl, replicaUrl);
+    }
 
-        // Check whether there is not already a connection
-        if (conn == null || conn.isClosed()) {
-            conn = DriverManager.getConnection(jdbcUrl, JDBC_USER, JDBC_PASSWORD);
+    /**
+     * Sets how long a thread keeps reading from the database itself after writing to it, 5 seconds by default
+     * It should be longer than the replication lag so a thread always reads its own writes.
+     *
+     * @param millis the duration in milliseconds, 0 to always read from the replicas
+     */
+    public static void setReadYourWritesWindow(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Read-your-writes window must not be negative: " + millis);
         }
+        ReplicaRouter.setReadYourWritesWindow(millis);
     }
 
     /**
      * Executes a query with optional parameters and returns a ResultSet. Use for SELECT
+     * The query goes to a read replica of the database if any was added, see addReplica()
      *
      * @param sql the SQL query to execute
      * @param url the Url for the connection, should be one of the three predefined constants
      * @param params optional parameters for the query
-     * @return the ResultSet object resulting from the query
+     * @return the ResultSet object resulting from the query, scrollable and detached from the connection,
+     * getObject(column, type) converts the copied values, see DetachedResultSet
      * @throws SQLException if a database access error occurs
      */
     public static ResultSet executeQuery(String sql, String url, Object... params) throws SQLException {
-        connect(url);
+        ReplicaRouter.Replica replica = ReplicaRouter.choose(url);
+        if (replica == null) {
+            return query(sql, url, params);
+        }
+        try {
+            return query(sql, replica.url, params);
+        } catch (SQLException ex) {
+            if (!WriteJournal.isConnectionFailure(ex)) {
+                throw ex;
+            }
 
-        // Last 2 parameters make the ResultSet scrollable
-        pstmt = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
+            // Leave the replica out until it passes a health check and ask the database itself
+            replica.failed();
+            return query(sql, url, params);
+        } finally {
+            replica.finished();
+        }
+    }
 
-        // Set parameters, if any
-        for (int i = 0; i < params.length; i++) {
-            pstmt.setObject(i + 1, params[i]);
+    private static ResultSet query(String sql, String url, Object... params) throws SQLException {
+        ConnectionPool pool = getPool(url);
+        long start = System.nanoTime();
+        PoolEntry entry = borrow(pool, sql, params, start);
+        long acquired = System.nanoTime();
+        long rows = -1;
+        Throwable error = null;
+        try {
+            PreparedStatement pstmt = entry.prepare(sql);
+            bind(pstmt, params);
+
+            // Copy the rows so the connection can go back to the pool right away
+            try (ResultSet rs = pstmt.executeQuery()) {
+                CachedRowSet rowSet = ROW_SET_FACTORY.createCachedRowSet();
+                rowSet.populate(rs);
+                rows = rowSet.size();
+                return DetachedResultSet.wrap(rowSet);
+            }
+        } catch (SQLException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            pool.release(entry);
+            DBMetrics.record(sql, params, acquired - start, System.nanoTime() - acquired, rows, error);
+        }
+    }
+
+    /**
+     * Executes a query with optional parameters and returns its rows as a lazily populated Stream. Use for SELECT
+     * Rows are read through a forward-only cursor, fetchSize rows per round trip, so memory use does not
+     * depend on the size of the result. The connection is held until the Stream is exhausted or closed,
+     * so use it in a try-with-resources statement. The query goes to a read replica like executeQuery().
+     *
+     * @param sql the SQL query to execute
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param mapper creates an object from each row
+     * @param params optional parameters for the query
+     * @param <T> the type of object created from a row
+     * @return the Stream of mapped rows, errors while reading are thrown as RuntimeException
+     * @throws SQLException if a database access error occurs
+     */
+    public static <T> Stream<T> stream(String sql, String url, RowMapper<T> mapper,
+                                       Object... params) throws SQLException {
+        ReplicaRouter.Replica replica = ReplicaRouter.choose(url);
+        if (replica == null) {
+            return stream(sql, url, mapper, () -> {}, params);
+        }
+        try {
+            return stream(sql, replica.url, mapper, replica::finished, params);
+        } catch (SQLException ex) {
+            replica.finished();
+            if (!WriteJournal.isConnectionFailure(ex)) {
+                throw ex;
+            }
+            replica.failed();
+            return stream(sql, url, mapper, () -> {}, params);
+        } catch (RuntimeException ex) {
+            replica.finished();
+            throw ex;
+        }
+    }
+
+    /**
+     * Executes a query like stream() but always on the database itself, never on a read replica
+     * Use it for rows that are cached or that seed an in-memory index or snapshot: a replica lagging behind
+     * would put an old version back in the cache after the write that invalidated it, or miss a write made
+     * before the load, and it would stay there until the next write or expiry.
+     *
+     * @param sql the SQL query to execute
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param mapper creates an object from each row
+     * @param params optional parameters for the query
+     * @param <T> the type of object created from a row
+     * @return the Stream of mapped rows, errors while reading are thrown as RuntimeException
+     * @throws SQLException if a database access error occurs
+     */
+    public static <T> Stream<T> streamFromPrimary(String sql, String url, RowMapper<T> mapper,
+                                                  Object... params) throws SQLException {
+        return stream(sql, url, mapper, () -> {}, params);
+    }
+
+    /**
+     * Opens the Stream of stream() on one database
+     *
+     * @param onRelease run once the connection is given back, after the Stream is exhausted or closed
+     */
+    private static <T> Stream<T> stream(String sql, String url, RowMapper<T> mapper, Runnable onRelease,
+                                        Object... params) throws SQLException {
+        ConnectionPool pool = getPool(url);
+        long start = System.nanoTime();
+        PoolEntry entry = borrow(pool, sql, params, start);
+        long acquired = System.nanoTime();
+        ResultSet rs;
+        try {
+
+            // Drivers such as PostgreSQL only use a cursor inside a transaction
+            entry.connection.setAutoCommit(false);
+            PreparedStatement pstmt = entry.prepare(sql);
+            pstmt.setFetchSize(fetchSize);
+            bind(pstmt, params);
+            rs = pstmt.executeQuery();
+        } catch (SQLException | RuntimeException ex) {
+            pool.release(entry);
+            DBMetrics.record(sql, params, acquired - start, System.nanoTime() - acquired, -1, ex);
+            throw ex;
+        }
+
+        // Only the time to the first batch of rows is measured, reading the rest depends on the caller
+        DBMetrics.record(sql, params, acquired - start, System.nanoTime() - acquired, -1, null);
+
+        // Give the connection back once, whether the Stream is exhausted, fails or is closed early
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                try {
+                    rs.close();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                } finally {
+                    pool.release(entry);
+                    onRelease.run();
+                }
+            }
+        };
+
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (released.get()) {
+                    return false;
+                }
+                try {
+                    if (rs.next()) {
+                        action.accept(mapper.map(rs));
+                        return true;
+                    }
+                } catch (SQLException ex) {
+                    release.run();
+                    throw new RuntimeException(ex);
+                }
+                release.run();
+                return false;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(release);
+    }
+
+    /**
+     * Sets the number of rows fetched per round trip by stream()
+     *
+     * @param rows the number of rows, must be positive
+     */
+    public static void setFetchSize(int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + rows);
+        }
+        fetchSize = rows;
+    }
+
+    /**
+     * Reads one page of a query ordered by a date column then an id column. Use for listings
+     * Pages are found by seeking past the date and id of the last row of the previous page instead of
+     * skipping rows with OFFSET, so with an index on (dateColumn, idColumn) every page costs the same.
+     * Rows whose date is null are never returned.
+     *
+     * @param selectSql the SELECT statement without WHERE or ORDER BY clause
+     * @param dateColumn the date column sorted on first, such as date_added
+     * @param idColumn the unique id column sorted on second
+     * @param token the token of the previous page or null for the first page
+     * @param pageSize the maximum number of rows of the page, from 1 to 1000
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param mapper creates an object from each row
+     * @param <T> the type of object created from a row
+     * @return the page
+     * @throws SQLException if a database access error occurs
+     * @throws IllegalArgumentException if the token is not valid or the page size out of range
+     */
+    public static <T> Page<T> page(String selectSql, String dateColumn, String idColumn, String token,
+                                   int pageSize, String url, RowMapper<T> mapper) throws SQLException {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE + ": " + pageSize);
         }
 
-        return pstmt.executeQuery();
+        // Read one row more than asked to know whether there is a next page
+        Dialect dialect = Dialect.forUrl(url);
+        String order = " ORDER BY " + dateColumn + ", " + idColumn + dialect.limit();
+        String sql;
+        Object[] params;
+        if (token == null) {
+            sql = selectSql + " WHERE " + dateColumn + " IS NOT NULL" + order;
+            params = new Object[]{pageSize + 1};
+        } else {
+            sql = selectSql + " WHERE " + dialect.seek(dateColumn, idColumn) + order;
+            Object[] seek = dialect.seekParameters(Page.tokenDate(token), Page.tokenId(token));
+            params = Arrays.copyOf(seek, seek.length + 1);
+            params[seek.length] = pageSize + 1;
+        }
+
+        List<T> items = new ArrayList<>(pageSize);
+        OffsetDateTime lastDate = null;
+        int lastId = 0;
+        boolean more = false;
+        try (Stream<Object[]> rows = stream(sql, url, rs -> new Object[]{mapper.map(rs),
+                rs.getObject(dateColumn, OffsetDateTime.class), rs.getInt(idColumn)}, params)) {
+            Iterator<Object[]> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                if (items.size() == pageSize) {
+                    more = true;
+                    break;
+                }
+                @SuppressWarnings("unchecked")
+                T item = (T) row[0];
+                items.add(item);
+                lastDate = (OffsetDateTime) row[1];
+                lastId = (Integer) row[2];
+            }
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw ex;
+        }
+        return new Page<>(items, more ? Page.encodeToken(lastDate, lastId) : null);
+    }
+
+    /**
+     * Executes a query asynchronously. See executeQuery()
+     *
+     * @param sql the SQL query to execute
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param params optional parameters for the query
+     * @return a future completed with the detached ResultSet or with the SQLException
+     */
+    public static CompletableFuture<ResultSet> executeQueryAsync(String sql, String url, Object... params) {
+        return supplyAsync(() -> executeQuery(sql, url, params));
+    }
+
+    /**
+     * Executes an update, insert, or delete SQL statement asynchronously. See executeUpdate()
+     *
+     * @param sql the SQL statement to execute
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param params optional parameters for the query
+     * @return a future completed with the number of rows affected or with the SQLException
+     */
+    public static CompletableFuture<Integer> executeUpdateAsync(String sql, String url, Object... params) {
+        return supplyAsync(() -> executeUpdate(sql, url, params));
+    }
+
+    /**
+     * Runs a database task in the background without blocking the caller.
+     * Tasks run on virtual threads when the JVM supports them, otherwise on a fixed pool of threads,
+     * and no more of them touch the database at once than a connection pool can serve.
+     *
+     * @param task the task to run
+     * @param <T> the type of result of the task
+     * @return a future completed with the result of the task or with the exception it threw
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ASYNC_EXECUTOR.execute(() -> {
+            try {
+                ASYNC_PERMITS.acquire();
+                try {
+                    future.complete(task.call());
+                } finally {
+                    ASYNC_PERMITS.release();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(ex);
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Creates the executor of the asynchronous calls
+     *
+     * @return a virtual thread per task executor if available, otherwise a fixed pool of daemon threads
+     */
+    private static ExecutorService createAsyncExecutor() {
+        try {
+
+            // Virtual threads only exist from Java 21 on, the project still builds with Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(POOL_MAX_SIZE, r -> {
+                Thread thread = new Thread(r, "DBUtil-async");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
     }
 
     /**
@@ -69,27 +492,306 @@ public class DBUtil {
      * @throws SQLException if a database access error occurs
      */
     public static int executeUpdate(String sql, String url, Object... params) throws SQLException {
-        connect(url);
-        pstmt = conn.prepareStatement(sql);
+        ConnectionPool pool = getPool(url);
+        long start = System.nanoTime();
+        PoolEntry entry = borrow(pool, sql, params, start);
+        long acquired = System.nanoTime();
+        int rows = -1;
+        Throwable error = null;
+        try {
+            PreparedStatement pstmt = entry.prepare(sql);
+            bind(pstmt, params);
+
+            rows = pstmt.executeUpdate();
+            return rows;
+        } catch (SQLException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            ReplicaRouter.wrote(url);
+            pool.release(entry);
+            DBMetrics.record(sql, params, acquired - start, System.nanoTime() - acquired, rows, error);
+        }
+    }
+
+    /**
+     * Executes an insert SQL statement with optional parameters and returns the generated keys.
+     *
+     * @param sql the SQL statement to execute
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param keyColumns the names of the generated columns to return
+     * @param params optional parameters for the query
+     * @return the generated keys of the inserted row in the order of keyColumns or null if no row was inserted
+     * @throws SQLException if a database access error occurs
+     */
+    public static Object[] executeInsert(String sql, String url, String[] keyColumns,
+                                         Object... params) throws SQLException {
+        ConnectionPool pool = getPool(url);
+        long start = System.nanoTime();
+        PoolEntry entry = borrow(pool, sql, params, start);
+        long acquired = System.nanoTime();
+        int rows = -1;
+        Throwable error = null;
+        try {
+            PreparedStatement pstmt = entry.prepare(sql, keyColumns);
+            bind(pstmt, params);
+            rows = pstmt.executeUpdate();
+
+            List<Object[]> keys = new ArrayList<>(1);
+            readKeys(pstmt, keyColumns.length, keys);
+            return keys.isEmpty() ? null : keys.get(0);
+        } catch (SQLException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            ReplicaRouter.wrote(url);
+            pool.release(entry);
+            DBMetrics.record(sql, params, acquired - start, System.nanoTime() - acquired, rows, error);
+        }
+    }
+
+    /**
+     * Executes an insert, update or delete SQL statement once per row using JDBC batches.
+     * Rows are sent in chunks of the default batch size, each chunk in its own transaction.
+     *
+     * @param sql the SQL statement to execute
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param rows the parameters of each execution
+     * @param keyColumns the names of the generated columns to return, if any
+     * @return the generated keys of every row, in order, or an empty list if no key columns are given
+     * @throws SQLException if a database access error occurs, chunks committed before the error are kept
+     */
+    public static List<Object[]> executeBatch(String sql, String url, List<Object[]> rows,
+                                              String... keyColumns) throws SQLException {
+        return executeBatch(sql, url, rows, DEFAULT_BATCH_SIZE, keyColumns);
+    }
 
-        // Set parameters, if any
+    /**
+     * Executes an insert, update or delete SQL statement once per row using JDBC batches.
+     * Rows are sent in chunks of chunkSize, each chunk in its own transaction.
+     *
+     * @param sql the SQL statement to execute
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param rows the parameters of each execution
+     * @param chunkSize the number of rows sent and committed together
+     * @param keyColumns the names of the generated columns to return, if any
+     * @return the generated keys of every row, in order, or an empty list if no key columns are given
+     * @throws SQLException if a database access error occurs, chunks committed before the error are kept
+     */
+    public static List<Object[]> executeBatch(String sql, String url, List<Object[]> rows, int chunkSize,
+                                              String... keyColumns) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+
+        List<Object[]> keys = new ArrayList<>(keyColumns.length > 0 ? rows.size() : 0);
+        ConnectionPool pool = getPool(url);
+        long start = System.nanoTime();
+        PoolEntry entry = borrow(pool, sql, null, start);
+        long acquired = System.nanoTime();
+        long written = 0;
+        Throwable error = null;
+        try {
+            PreparedStatement pstmt = entry.prepare(sql, keyColumns);
+            entry.connection.setAutoCommit(false);
+
+            for (int from = 0; from < rows.size(); from += chunkSize) {
+                int end = Math.min(from + chunkSize, rows.size());
+                try {
+                    for (Object[] row : rows.subList(from, end)) {
+                        bind(pstmt, row);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    if (keyColumns.length > 0) {
+                        readKeys(pstmt, keyColumns.length, keys);
+                    }
+                    entry.connection.commit();
+                    written += end - from;
+                } catch (SQLException ex) {
+                    pstmt.clearBatch();
+                    entry.connection.rollback();
+                    throw ex;
+                }
+            }
+            return keys;
+        } catch (SQLException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            ReplicaRouter.wrote(url);
+            try {
+                entry.connection.setAutoCommit(true);
+            } finally {
+                pool.release(entry);
+                DBMetrics.record(sql, null, acquired - start, System.nanoTime() - acquired, written, error);
+            }
+        }
+    }
+
+    /**
+     * Inserts rows with multi-row INSERT statements, falling back to executeBatch() when the driver
+     * does not return the generated keys of every row of such a statement.
+     * Rows are sent in chunks of the default batch size, or fewer if the statement would take more
+     * parameters than the database accepts, each chunk in its own transaction.
+     *
+     * @param table the statements of the table
+     * @param url the Url for the connection, its dialect must be the one of the statements
+     * @param rows the values of the insert columns of each row
+     * @param keyColumns the names of the generated columns to return, if any
+     * @return the generated keys of every row, in order, or an empty list if no key columns are given
+     * @throws SQLException if a database access error occurs, chunks committed before the error are kept
+     */
+    public static List<Object[]> executeInsertRows(TableSql table, String url, List<Object[]> rows,
+                                                   String... keyColumns) throws SQLException {
+        if (!table.getDialect().hasMultiRowKeys() || rows.size() < 2) {
+            return executeBatch(table.insert(), url, rows, keyColumns);
+        }
+
+        int columnCount = table.columns().size();
+        int chunkSize = Math.max(1, Math.min(DEFAULT_BATCH_SIZE, table.getDialect().getMaxParameters() / columnCount));
+        List<Object[]> keys = new ArrayList<>(keyColumns.length > 0 ? rows.size() : 0);
+        for (int from = 0; from < rows.size(); from += chunkSize) {
+            List<Object[]> chunk = rows.subList(from, Math.min(from + chunkSize, rows.size()));
+            Object[] params = new Object[chunk.size() * columnCount];
+            int i = 0;
+            for (Object[] row : chunk) {
+                System.arraycopy(row, 0, params, i, columnCount);
+                i += columnCount;
+            }
+            keys.addAll(executeInsertChunk(table.insert(chunk.size()), url, keyColumns, params));
+        }
+        return keys;
+    }
+
+    private static List<Object[]> executeInsertChunk(String sql, String url, String[] keyColumns,
+                                                     Object[] params) throws SQLException {
+        ConnectionPool pool = getPool(url);
+        long start = System.nanoTime();
+        PoolEntry entry = borrow(pool, sql, params, start);
+        long acquired = System.nanoTime();
+        int rows = -1;
+        Throwable error = null;
+        try {
+            PreparedStatement pstmt = keyColumns.length > 0 ? entry.prepare(sql, keyColumns) : entry.prepare(sql);
+            bind(pstmt, params);
+            rows = pstmt.executeUpdate();
+
+            List<Object[]> keys = new ArrayList<>(keyColumns.length > 0 ? rows : 0);
+            if (keyColumns.length > 0) {
+                readKeys(pstmt, keyColumns.length, keys);
+            }
+            return keys;
+        } catch (SQLException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            ReplicaRouter.wrote(url);
+            pool.release(entry);
+            DBMetrics.record(sql, params, acquired - start, System.nanoTime() - acquired, rows, error);
+        }
+    }
+
+    /**
+     * Starts a transaction on a connection borrowed from the pool.
+     * The connection is held until the transaction is committed or closed.
+     *
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @return the new transaction, use it in a try-with-resources statement
+     * @throws SQLException if a database access error occurs
+     */
+    public static Transaction beginTransaction(String url) throws SQLException {
+        ConnectionPool pool = getPool(url);
+        PoolEntry entry = pool.borrow();
+        try {
+            return new Transaction(pool, entry);
+        } catch (SQLException | RuntimeException ex) {
+            pool.release(entry);
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the generated keys of the last execution of a statement
+     *
+     * @param pstmt the executed statement
+     * @param columnCount the number of key columns
+     * @param keys the list the key rows are added to
+     * @throws SQLException if a database access error occurs
+     */
+    static void readKeys(PreparedStatement pstmt, int columnCount, List<Object[]> keys) throws SQLException {
+        try (ResultSet rs = pstmt.getGeneratedKeys()) {
+
+            // MySQL and SQL Server only return the identity column, the other keys are left null
+            int returned = Math.min(columnCount, rs.getMetaData().getColumnCount());
+            while (rs.next()) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < returned; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                keys.add(row);
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, recording the statement as failed if none can be obtained
+     *
+     * @param pool the pool to borrow from
+     * @param sql the SQL statement about to run
+     * @param params the parameters of the statement
+     * @param start the time the statement started, from System.nanoTime()
+     * @return the borrowed connection
+     * @throws SQLException if no connection could be obtained
+     */
+    private static PoolEntry borrow(ConnectionPool pool, String sql, Object[] params, long start) throws SQLException {
+        try {
+            return pool.borrow();
+        } catch (SQLException | RuntimeException ex) {
+            DBMetrics.record(sql, params, System.nanoTime() - start, 0, -1, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the parameters of a prepared statement
+     *
+     * @param pstmt the statement to bind
+     * @param params the parameters, in order
+     * @throws SQLException if a database access error occurs
+     */
+    static void bind(PreparedStatement pstmt, Object... params) throws SQLException {
         for (int i = 0; i < params.length; i++) {
             pstmt.setObject(i + 1, params[i]);
         }
-
-        return pstmt.executeUpdate();
     }
 
     /**
-     * Closes the connection and statement.
+     * Closes every connection pool and the connections in them.
      */
     public static void close() {
-        try {
-            if (pstmt != null) pstmt.close();
-            if (conn != null) conn.close();
-        } catch (SQLException ex) {
-            ex.printStackTrace();
+        for (ConnectionPool pool : POOLS.values()) {
+            pool.close();
         }
+        POOLS.clear();
+    }
+
+    /**
+     * Retrieves the URL of the database used by the models, the db.url setting of DatabaseConfig
+     *
+     * @return the configured Database URL, PostgreSQL by default
+     */
+    public static String getURL() {
+        return JDBC_URL;
+    }
+
+    /**
+     * Retrieves the dialect of the database used by the models
+     *
+     * @return the dialect of getURL()
+     */
+    public static Dialect getDialect() {
+        return DIALECT;
     }
 
     /**
@@ -0,0 +1,99 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * The connection settings of the library, read once from a properties file outside of the code
+ * The file is named by the library.db.config system property, otherwise library-db.properties in the
+ * working directory is used if it exists. Any key may also be given as a system property of the same name,
+ * and the credentials as the LIBRARY_DB_USER and LIBRARY_DB_PASSWORD environment variables.
+ *
+ * Keys:
+ *   db.url                     JDBC URL of the database, PostgreSQL on localhost by default
+ *   db.user, db.password       credentials
+ *   db.replicas                comma separated JDBC URLs of read replicas, see DBUtil.addReplica()
+ *   pool.minSize, pool.maxSize, pool.borrowTimeoutMillis, pool.idleTimeoutMillis, pool.leakThresholdMillis
+ */
+public final class DatabaseConfig {
+
+    private static final String CONFIG_PROPERTY = "library.db.config";
+    private static final String DEFAULT_FILE = "library-db.properties";
+
+    private static final Properties PROPERTIES = load();
+
+    private DatabaseConfig() {
+    }
+
+    /**
+     * Retrieves a setting
+     *
+     * @param key the key of the setting
+     * @param defaultValue the value used if the setting is not given
+     * @return the value of the setting
+     */
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key, PROPERTIES.getProperty(key));
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Retrieves a numeric setting
+     *
+     * @param key the key of the setting
+     * @param defaultValue the value used if the setting is not given
+     * @return the value of the setting
+     * @throws IllegalArgumentException if the setting is not a number
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Setting " + key + " must be a number: " + value, ex);
+        }
+    }
+
+    /**
+     * Retrieves the user to connect as
+     *
+     * @return the user or null if none is configured
+     */
+    public static String getUser() {
+        String user = System.getenv("LIBRARY_DB_USER");
+        return user != null ? user : get("db.user", null);
+    }
+
+    /**
+     * Retrieves the password of the user
+     *
+     * @return the password or null if none is configured
+     */
+    public static String getPassword() {
+        String password = System.getenv("LIBRARY_DB_PASSWORD");
+        return password != null ? password : get("db.password", null);
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        String name = System.getProperty(CONFIG_PROPERTY);
+        Path file = Paths.get(name != null ? name : DEFAULT_FILE);
+        if (name == null && !Files.exists(file)) {
+            return properties;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read the database settings from " + file, ex);
+        }
+        return properties;
+    }
+}
@@ -1,8 +1,16 @@
 package Util;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class DateTimeUtil {
 
@@ -19,6 +27,16 @@ public class DateTimeUtil {
     private static final DateTimeFormatter CUSTOM_FORMATTER_2 = DateTimeFormatter.ofPattern(PATTERN_2);
     private static final DateTimeFormatter CUSTOM_FORMATTER_3 = DateTimeFormatter.ofPattern(PATTERN_3);
 
+    // Formatters compiled by parse(), keyed by pattern, at most MAX_CACHED_PATTERNS of them
+    private static final int MAX_CACHED_PATTERNS = 64;
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+
+    static {
+        FORMATTERS.put(PATTERN_1, CUSTOM_FORMATTER_1);
+        FORMATTERS.put(PATTERN_2, CUSTOM_FORMATTER_2);
+        FORMATTERS.put(PATTERN_3, CUSTOM_FORMATTER_3);
+    }
+
     /**
      * Format OffsetDateTime to ISO Offset Date Time String
      *
@@ -61,25 +79,192 @@ public class DateTimeUtil {
 
     /**
      * Parse a string to OffsetDateTime using a given pattern
+     * Each pattern is compiled once and its formatter reused by later calls
      *
      * @param dateTimeString the date-time string to parse
      * @param pattern the pattern to use for parsing. Should be one of the predefined constants
      * @return the parsed OffsetDateTime object
      * @throws DateTimeParseException if the text cannot be parsed
+     * @throws IllegalArgumentException if the pattern is invalid
      */
     public static OffsetDateTime parse(String dateTimeString, String pattern) throws DateTimeParseException {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
-        return OffsetDateTime.parse(dateTimeString, formatter);
+        return OffsetDateTime.parse(dateTimeString, getFormatter(pattern));
     }
 
     /**
      * Parse a string to OffsetDateTime using the ISO format
+     * Common strings such as 2024-05-01T10:15:30.123+02:00 are read directly, without a formatter
      *
      * @param dateTimeString the date-time string to parse
      * @return the parsed OffsetDateTime object
      * @throws DateTimeParseException if the text cannot be parsed
      */
     public static OffsetDateTime parseIso(String dateTimeString) throws DateTimeParseException {
+        OffsetDateTime result = parseIsoFast(dateTimeString);
+        if (result != null) {
+            return result;
+        }
+
+        // Let the formatter handle the less common forms and report errors
         return OffsetDateTime.parse(dateTimeString, ISO_FORMATTER);
     }
+
+    /**
+     * Retrieves the formatter of a pattern, compiling it on first use
+     *
+     * @param pattern the pattern of the formatter
+     * @return the formatter
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    private static DateTimeFormatter getFormatter(String pattern) {
+        DateTimeFormatter formatter = FORMATTERS.get(pattern);
+        if (formatter == null) {
+            formatter = DateTimeFormatter.ofPattern(pattern);
+
+            // Do not let arbitrary patterns grow the cache forever
+            if (FORMATTERS.size() < MAX_CACHED_PATTERNS) {
+                FORMATTERS.putIfAbsent(pattern, formatter);
+            }
+        }
+        return formatter;
+    }
+
+    /**
+     * Parse yyyy-MM-ddTHH:mm[:ss[.fraction]] followed by Z or +HH:MM[:SS] without going through a formatter
+     *
+     * @param text the date-time string to parse
+     * @return the parsed OffsetDateTime object or null if the text has another form or is invalid
+     */
+    private static OffsetDateTime parseIsoFast(CharSequence text) {
+        int length = text.length();
+        if (length < 17 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(13) != ':'
+                || (text.charAt(10) != 'T' && text.charAt(10) != 't')) {
+            return null;
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        if ((year | month | day | hour | minute) < 0) {
+            return null;
+        }
+
+        int pos = 16;
+        int second = 0;
+        int nano = 0;
+        if (pos < length && text.charAt(pos) == ':') {
+            second = digits(text, pos + 1, 2);
+            if (second < 0) {
+                return null;
+            }
+            pos += 3;
+
+            // Between 1 and 9 fraction digits
+            if (pos < length && text.charAt(pos) == '.') {
+                int start = ++pos;
+                while (pos < length && pos - start < 9 && isDigit(text.charAt(pos))) {
+                    nano = nano * 10 + (text.charAt(pos++) - '0');
+                }
+                if (pos == start) {
+                    return null;
+                }
+                for (int i = pos - start; i < 9; i++) {
+                    nano *= 10;
+                }
+            }
+        }
+
+        if (pos >= length) {
+            return null;
+        }
+        ZoneOffset offset;
+        char sign = text.charAt(pos);
+        if (sign == 'Z' || sign == 'z') {
+            offset = ZoneOffset.UTC;
+            pos++;
+        } else if ((sign == '+' || sign == '-') && pos + 6 <= length && text.charAt(pos + 3) == ':') {
+            int offsetHours = digits(text, pos + 1, 2);
+            int offsetMinutes = digits(text, pos + 4, 2);
+            int offsetSeconds = 0;
+            pos += 6;
+            if (pos < length && text.charAt(pos) == ':') {
+                offsetSeconds = digits(text, pos + 1, 2);
+                pos += 3;
+            }
+            if ((offsetHours | offsetMinutes | offsetSeconds) < 0 || offsetMinutes > 59 || offsetSeconds > 59) {
+                return null;
+            }
+            int totalSeconds = offsetHours * 3600 + offsetMinutes * 60 + offsetSeconds;
+
+            // ZoneOffset caches the usual quarter hour offsets, so this does not allocate
+            try {
+                offset = ZoneOffset.ofTotalSeconds(sign == '-' ? -totalSeconds : totalSeconds);
+            } catch (DateTimeException ex) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        if (pos != length) {
+            return null;
+        }
+
+        try {
+            return OffsetDateTime.of(year, month, day, hour, minute, second, nano, offset);
+        } catch (DateTimeException ex) {
+
+            // Out of range fields, the formatter produces the proper error
+            return null;
+        }
+    }
+
+    /**
+     * Reads a fixed number of decimal digits
+     *
+     * @param text the text to read from
+     * @param start the index of the first digit
+     * @param count the number of digits
+     * @return the value of the digits or -1 if they are missing or not all digits
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Convert a date-time value read from JDBC to OffsetDateTime
+     * Values without an offset are interpreted in the system default time zone
+     *
+     * @param value the value returned by the driver, may be null
+     * @return the OffsetDateTime object or null if value is null
+     * @throws IllegalArgumentException if the value is not a date-time
+     */
+    public static OffsetDateTime fromSqlValue(Object value) {
+        if (value == null || value instanceof OffsetDateTime) {
+            return (OffsetDateTime) value;
+        } else if (value instanceof Timestamp) {
+            return OffsetDateTime.ofInstant(((Timestamp) value).toInstant(), ZoneId.systemDefault());
+        } else if (value instanceof Instant) {
+            return OffsetDateTime.ofInstant((Instant) value, ZoneId.systemDefault());
+        } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(ZoneId.systemDefault()).toOffsetDateTime();
+        }
+        throw new IllegalArgumentException("Not a date-time value: " + value.getClass().getName());
+    }
 }
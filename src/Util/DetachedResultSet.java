@@ -0,0 +1,96 @@
+package Util;
+
+import javax.sql.rowset.CachedRowSet;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+
+/**
+ * The rows of a query copied by DBUtil.executeQuery(), readable once the connection went back to the pool
+ * A CachedRowSet does not support getObject(column, type), so this ResultSet converts the copied values
+ * itself: date-times come back from the copy as java.sql types or as the type the driver returned.
+ * Every other call is answered by the CachedRowSet.
+ */
+final class DetachedResultSet {
+
+    private DetachedResultSet() {
+    }
+
+    /**
+     * Wraps the copied rows
+     *
+     * @param rows the rows, populated from the ResultSet of a query
+     * @return a scrollable ResultSet over the rows
+     */
+    static ResultSet wrap(CachedRowSet rows) {
+        return (ResultSet) Proxy.newProxyInstance(DetachedResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    if (isTypedGetObject(method)) {
+                        Object value = (args[0] instanceof Integer) ? rows.getObject((Integer) args[0])
+                                : rows.getObject((String) args[0]);
+                        return convert(value, (Class<?>) args[1]);
+                    }
+                    try {
+                        return method.invoke(rows, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+
+    private static boolean isTypedGetObject(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        return method.getName().equals("getObject") && types.length == 2 && types[1] == Class.class;
+    }
+
+    /**
+     * Converts a copied value to the type asked for, as the drivers do
+     *
+     * @param value the copied value, null for SQL NULL
+     * @param type the type asked for
+     * @param <T> the type asked for
+     * @return the value as that type, null for SQL NULL
+     * @throws SQLException if the value cannot be converted
+     */
+    static <T> T convert(Object value, Class<T> type) throws SQLException {
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        }
+        try {
+            if (type == OffsetDateTime.class) {
+                return type.cast(DateTimeUtil.fromSqlValue(value));
+            } else if (type == Instant.class) {
+                return type.cast(DateTimeUtil.fromSqlValue(value).toInstant());
+            } else if (type == LocalDateTime.class) {
+                return type.cast((value instanceof Timestamp) ? ((Timestamp) value).toLocalDateTime()
+                        : DateTimeUtil.fromSqlValue(value).toLocalDateTime());
+            } else if (type == LocalDate.class && value instanceof Date) {
+                return type.cast(((Date) value).toLocalDate());
+            } else if (type == LocalTime.class && value instanceof Time) {
+                return type.cast(((Time) value).toLocalTime());
+            } else if (value instanceof Number) {
+                Number number = (Number) value;
+                if (type == Integer.class) return type.cast(number.intValue());
+                if (type == Long.class) return type.cast(number.longValue());
+                if (type == Double.class) return type.cast(number.doubleValue());
+                if (type == BigDecimal.class) return type.cast(new BigDecimal(number.toString()));
+            } else if (type == String.class) {
+                return type.cast(value.toString());
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException("Cannot convert " + value.getClass().getName() + " to " + type.getName(), ex);
+        }
+        throw new SQLException("Cannot convert " + value.getClass().getName() + " to " + type.getName());
+    }
+}
@@ -0,0 +1,214 @@
+package Util;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The SQL differences between the supported databases
+ * Only the statements the library needs are covered: table names, row limits, keyset seeks,
+ * multi-row inserts and inserts skipping an existing key. Everything else is written in the SQL the
+ * three databases share.
+ * There is no upsert overwriting an existing row: the ids of every table are generated by the database, so
+ * a row is only ever updated by an id the database returned. The one write that may meet an existing key,
+ * the journal recording an applied entry, uses the native forms of insertIfAbsent(): ON CONFLICT DO NOTHING,
+ * INSERT IGNORE and MERGE. An upsert would also need IDENTITY_INSERT on SQL Server to write a known id.
+ */
+public enum Dialect {
+
+    POSTGRESQL("jdbc:postgresql:", "public", "\"", "\"", 32_767, true),
+    MYSQL("jdbc:mysql:", null, "`", "`", 65_535, true),
+    SQLSERVER("jdbc:sqlserver:", "dbo", "[", "]", 2_100, false);
+
+    private final String urlPrefix;
+    private final String schema;
+    private final String openQuote;
+    private final String closeQuote;
+    private final int maxParameters;
+    private final boolean multiRowKeys;
+
+    Dialect(String urlPrefix, String schema, String openQuote, String closeQuote, int maxParameters,
+            boolean multiRowKeys) {
+        this.urlPrefix = urlPrefix;
+        this.schema = schema;
+        this.openQuote = openQuote;
+        this.closeQuote = closeQuote;
+        this.maxParameters = maxParameters;
+        this.multiRowKeys = multiRowKeys;
+    }
+
+    /**
+     * Finds the dialect of a database from its JDBC URL
+     * An H2 URL gets the dialect of its MODE setting, such as MODE=PostgreSQL
+     *
+     * @param jdbcUrl the JDBC URL of the database
+     * @return the dialect
+     * @throws IllegalArgumentException if the database is not supported
+     */
+    public static Dialect forUrl(String jdbcUrl) {
+
+        // H2 runs the tests and benchmarks, in the compatibility mode of the database it stands in for
+        if (jdbcUrl.startsWith("jdbc:h2:")) {
+            String url = jdbcUrl.toUpperCase(Locale.ROOT);
+            if (url.contains(";MODE=POSTGRESQL")) return POSTGRESQL;
+            if (url.contains(";MODE=MYSQL")) return MYSQL;
+            if (url.contains(";MODE=MSSQLSERVER")) return SQLSERVER;
+        }
+        for (Dialect dialect : values()) {
+            if (jdbcUrl.startsWith(dialect.urlPrefix)) {
+                return dialect;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported database: " + jdbcUrl);
+    }
+
+    /**
+     * Quotes an identifier, so names such as user can be used as table names
+     *
+     * @param identifier the table or column name
+     * @return the quoted identifier
+     */
+    public String quote(String identifier) {
+        return openQuote + identifier + closeQuote;
+    }
+
+    /**
+     * Builds the qualified and quoted name of a table
+     *
+     * @param table the name of the table
+     * @return the name to use in statements, such as public."book"
+     */
+    public String table(String table) {
+        return schema == null ? quote(table) : schema + "." + quote(table);
+    }
+
+    /**
+     * Retrieves the maximum number of parameters of one statement
+     *
+     * @return the maximum number of parameters
+     */
+    public int getMaxParameters() {
+        return maxParameters;
+    }
+
+    /**
+     * Checks whether the driver returns the generated keys of every row of a multi-row insert
+     *
+     * @return true if it does, otherwise only a JDBC batch gives the key of every row
+     */
+    public boolean hasMultiRowKeys() {
+        return multiRowKeys;
+    }
+
+    /**
+     * Builds the clause appended after ORDER BY to keep the first rows, the limit is its only parameter
+     *
+     * @return the clause, such as " LIMIT ?"
+     */
+    public String limit() {
+        return this == SQLSERVER ? " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY" : " LIMIT ?";
+    }
+
+    /**
+     * Builds the condition keeping the rows after a (date, id) position, see seekParameters()
+     * SQL Server has no row value comparison so the condition is spelled out.
+     *
+     * @param dateColumn the column sorted on first
+     * @param idColumn the unique column sorted on second
+     * @return the condition
+     */
+    public String seek(String dateColumn, String idColumn) {
+        if (this == SQLSERVER) {
+            return dateColumn + " >= ? AND (" + dateColumn + " > ? OR " + idColumn + " > ?)";
+        }
+        return "(" + dateColumn + ", " + idColumn + ") > (?, ?)";
+    }
+
+    /**
+     * Builds the parameters of the condition built by seek()
+     *
+     * @param date the date of the last row read
+     * @param id the id of the last row read
+     * @return the parameters, in order
+     */
+    public Object[] seekParameters(Object date, int id) {
+        if (this == SQLSERVER) {
+            return new Object[]{date, date, id};
+        }
+        return new Object[]{date, id};
+    }
+
+    /**
+     * Builds an INSERT statement of several rows
+     *
+     * @param table the qualified table name
+     * @param columns the columns written
+     * @param rowCount the number of rows
+     * @return the statement taking the values of every row, row after row
+     */
+    public String insert(String table, List<String> columns, int rowCount) {
+        String row = "(" + "?, ".repeat(columns.size() - 1) + "?)";
+        StringBuilder sql = new StringBuilder(64 + rowCount * (row.length() + 2))
+                .append("INSERT INTO ").append(table).append(" (").append(String.join(", ", columns))
+                .append(") VALUES ").append(row);
+        for (int i = 1; i < rowCount; i++) {
+            sql.append(", ").append(row);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Builds a statement inserting a row unless a row with the same key exists
+     *
+     * @param table the qualified table name
+     * @param keyColumn the unique column identifying the row
+     * @param columns the columns written, including the key column
+     * @return the statement taking the values of the columns in order, it affects no row if the key exists
+     */
+    public String insertIfAbsent(String table, String keyColumn, List<String> columns) {
+        switch (this) {
+            case POSTGRESQL:
+
+                // No conflict target: the key is the only unique column, and H2 only accepts this form
+                return insert(table, columns, 1) + " ON CONFLICT DO NOTHING";
+            case MYSQL:
+                return "INSERT IGNORE" + insert(table, columns, 1).substring("INSERT".length());
+            default:
+                String names = String.join(", ", columns);
+                return "MERGE INTO " + table + " AS target USING (VALUES (" + "?, ".repeat(columns.size() - 1) +
+                        "?)) AS source (" + names + ") ON target." + keyColumn + " = source." + keyColumn +
+                        " WHEN NOT MATCHED THEN INSERT (" + names + ") VALUES (source." +
+                        String.join(", source.", columns) + ");";
+        }
+    }
+
+    /**
+     * Builds a CREATE TABLE statement doing nothing if the table already exists
+     *
+     * @param table the qualified table name
+     * @param definition the column definitions, without parentheses
+     * @return the statement
+     */
+    public String createTableIfAbsent(String table, String definition) {
+        if (this == SQLSERVER) {
+            return "IF OBJECT_ID('" + table.replace("[", "").replace("]", "") + "', 'U') IS NULL " +
+                    "CREATE TABLE " + table + " (" + definition + ")";
+        }
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" + definition + ")";
+    }
+
+    /**
+     * Retrieves the type of a column holding a date, a time and a time zone offset
+     *
+     * @return the SQL type
+     */
+    public String timestampType() {
+        switch (this) {
+            case MYSQL:
+                return "DATETIME(6)";
+            case SQLSERVER:
+                return "DATETIMEOFFSET";
+            default:
+                return "TIMESTAMP WITH TIME ZONE";
+        }
+    }
+}
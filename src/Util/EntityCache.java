@@ -0,0 +1,257 @@
+package Util;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * A size bounded read-through cache of entities keyed by primary key
+ * Least recently used entries are evicted first and every entry expires after a fixed time to live
+ * Entities are mutable, so the cache keeps its own copy and every lookup gets a copy of it.
+ * A value loaded while its key was invalidated or put is dropped instead of cached, so a load
+ * racing a write never brings back the row as it was before the write.
+ *
+ * @param <V> the type of entity cached
+ */
+public class EntityCache<V> {
+
+    /**
+     * Loads an entity from the database on a cache miss
+     *
+     * @param <V> the type of entity loaded
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+
+        /**
+         * Loads the entity with the given primary key
+         *
+         * @param key the primary key of the entity
+         * @return the entity or null if there is none with that key
+         * @throws SQLException if a database access error occurs
+         */
+        V load(int key) throws SQLException;
+    }
+
+    // A cached value and the time it expires at
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // The loads in flight for a key and the generation of the key, bumped when the key is invalidated or put
+    private static final class Load {
+        long generation;
+        int loaders;
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final UnaryOperator<V> copier;
+
+    // Access ordered so the eldest entry is the least recently used one, guarded by itself
+    private final LinkedHashMap<Integer, Entry<V>> entries;
+
+    // Keys being loaded, only kept while a load is in flight, guarded by entries
+    private final Map<Integer, Load> loads = new HashMap<>();
+
+    // Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Instantiates an EntityCache
+     *
+     * @param maxSize the maximum number of entities kept
+     * @param ttl how long an entity stays in the cache after it was loaded
+     * @param copier creates an independent copy of an entity
+     */
+    public EntityCache(int maxSize, Duration ttl, UnaryOperator<V> copier) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.copier = copier;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry<V>> eldest) {
+                if (size() > EntityCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the entity with the given key, loading and caching it on a miss
+     * Entities that do not exist are not cached
+     *
+     * @param key the primary key of the entity
+     * @param loader loads the entity from the database on a miss
+     * @return a copy of the entity owned by the caller or null if there is none with that key
+     * @throws SQLException if a database access error occurs
+     */
+    public V get(int key, Loader<V> loader) throws SQLException {
+        long now = System.nanoTime();
+        Load load;
+        long generation;
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAt < 0) {
+                    hits.increment();
+                    return copier.apply(entry.value);
+                }
+                entries.remove(key);
+                evictions.increment();
+            }
+            load = loads.computeIfAbsent(key, k -> new Load());
+            load.loaders++;
+            generation = load.generation;
+        }
+
+        // Load outside the lock so a slow query does not block other lookups
+        misses.increment();
+        V value = null;
+        try {
+            value = loader.load(key);
+        } finally {
+            synchronized (entries) {
+
+                // Keep the value only if no write invalidated or replaced the key since the load started
+                if (value != null && load.generation == generation) {
+                    entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+                }
+                if (--load.loaders == 0) {
+                    loads.remove(key);
+                }
+            }
+        }
+        return value == null ? null : copier.apply(value);
+    }
+
+    /**
+     * Stores a copy of an entity in the cache, replacing any previous entry
+     *
+     * @param key the primary key of the entity
+     * @param value the entity
+     */
+    public void put(int key, V value) {
+        Entry<V> entry = new Entry<>(copier.apply(value), System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.put(key, entry);
+            bump(key);
+        }
+    }
+
+    /**
+     * Removes the entity with the given key from the cache
+     * A load of the key in flight is not cached when it completes
+     *
+     * @param key the primary key of the entity
+     */
+    public void invalidate(int key) {
+        synchronized (entries) {
+            entries.remove(key);
+            bump(key);
+        }
+    }
+
+    /**
+     * Removes every entity from the cache
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            for (Load load : loads.values()) {
+                load.generation++;
+            }
+        }
+    }
+
+    // Called with the lock on entries held
+    private void bump(int key) {
+        Load load = loads.get(key);
+        if (load != null) {
+            load.generation++;
+        }
+    }
+
+    /**
+     * Retrieves the number of entities currently cached
+     *
+     * @return the number of cached entities
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Retrieves the number of lookups answered from the cache
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the number of lookups that had to go to the database
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the number of entities removed because the cache was full or they expired
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Retrieves the share of lookups answered from the cache
+     *
+     * @return the hit rate between 0 and 1, 0 if there was no lookup yet
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return (total == 0) ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns a string representation of the cache statistics
+     *
+     * @return a string representation of the cache statistics
+     */
+    @Override
+    public String toString() {
+        return "EntityCache{" +
+                "size = " + size() +
+                ", max_size = " + maxSize +
+                ", hits = " + getHitCount() +
+                ", misses = " + getMissCount() +
+                ", evictions = " + getEvictionCount() +
+                '}';
+    }
+}
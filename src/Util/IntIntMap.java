@@ -0,0 +1,213 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A map from int to int backed by two primitive arrays
+ * Uses open addressing with linear probing, so no object is created per entry
+ * Not thread-safe, callers must synchronize concurrent access
+ */
+public class IntIntMap {
+
+    /**
+     * Receives the entries of the map
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        /**
+         * Called once per entry
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry
+         */
+        void accept(int key, int value);
+    }
+
+    // Marks a free slot, the key 0 itself is stored outside the arrays
+    private static final int FREE_KEY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int threshold;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Instantiates an IntIntMap sized for the expected number of entries
+     *
+     * @param expectedSize the number of entries expected
+     */
+    public IntIntMap(int expectedSize) {
+        allocate(Math.max(8, Integer.highestOneBit((int) (Math.max(1, expectedSize) / LOAD_FACTOR)) << 1));
+    }
+
+    /**
+     * Instantiates an empty IntIntMap
+     */
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * Retrieves the value of a key
+     *
+     * @param key the key
+     * @param defaultValue the value returned if the key is absent
+     * @return the value of the key or defaultValue if it is absent
+     */
+    public int get(int key, int defaultValue) {
+        if (key == FREE_KEY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+            if (keys[i] == FREE_KEY) return defaultValue;
+        }
+    }
+
+    /**
+     * Checks whether a key is present
+     *
+     * @param key the key
+     * @return true if the key is present, otherwise false
+     */
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return hasZeroKey;
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) return true;
+            if (keys[i] == FREE_KEY) return false;
+        }
+    }
+
+    /**
+     * Sets the value of a key
+     *
+     * @param key the key
+     * @param value the new value
+     */
+    public void put(int key, int value) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != FREE_KEY) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key the key
+     * @return true if the key was present, otherwise false
+     */
+    public boolean remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) return false;
+            hasZeroKey = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == FREE_KEY) return false;
+            i = (i + 1) & mask;
+        }
+
+        // Shift the following entries of the probe sequence back instead of leaving a tombstone
+        int free = i;
+        for (int j = (i + 1) & mask; keys[j] != FREE_KEY; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        keys[free] = FREE_KEY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Retrieves the number of entries
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the consumer for every entry, in no particular order
+     * The map must not be modified while iterating
+     *
+     * @param consumer receives each entry
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(FREE_KEY, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = hasZeroKey ? 1 : 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(int key) {
+
+        // Spread sequential ids over the table
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
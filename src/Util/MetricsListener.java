@@ -0,0 +1,22 @@
+package Util;
+
+/**
+ * Receives a callback for every statement executed through DBUtil
+ * Implementations are registered with DBMetrics.addListener() or found through
+ * java.util.ServiceLoader, and are called on the thread that ran the statement,
+ * so they must be fast and thread-safe
+ */
+public interface MetricsListener {
+
+    /**
+     * Called once a statement finished, successfully or not
+     *
+     * @param sql the SQL text of the statement
+     * @param params the parameters of the statement, must not be modified, null for batches
+     * @param poolWaitNanos the time spent waiting for a connection
+     * @param executeNanos the time spent executing the statement
+     * @param rows the number of rows affected or returned, -1 if unknown
+     * @param error the exception thrown by the statement or null if it succeeded
+     */
+    void onStatement(String sql, Object[] params, long poolWaitNanos, long executeNanos, long rows, Throwable error);
+}
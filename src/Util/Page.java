@@ -0,0 +1,123 @@
+package Util;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of rows read by DBUtil.page()
+ * The next page is requested with the continuation token of this one, the token is opaque
+ * to the caller and holds the sort key of the last row, so any page costs as much as the first
+ */
+public class Page<T> {
+
+    // Layout of a token: version, epoch seconds and nanoseconds of the date, id
+    private static final byte TOKEN_VERSION = 1;
+    private static final int TOKEN_BYTES = 1 + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final List<T> items;
+    private final String nextToken;
+
+    /**
+     * Instantiates a Page
+     *
+     * @param items the rows of the page
+     * @param nextToken the token of the next page or null if this is the last page
+     */
+    Page(List<T> items, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Retrieves the rows of the page
+     *
+     * @return the rows, in sort order
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Retrieves the token to pass to DBUtil.page() to read the next page
+     *
+     * @return the token or null if this is the last page
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * Checks whether there are rows after this page
+     *
+     * @return true if there is a next page, otherwise false
+     */
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    /**
+     * Creates the token positioned after a row
+     *
+     * @param date the date of the row
+     * @param id the id of the row
+     * @return the URL-safe token
+     */
+    static String encodeToken(OffsetDateTime date, int id) {
+        Instant instant = date.toInstant();
+        ByteBuffer buffer = ByteBuffer.allocate(TOKEN_BYTES)
+                .put(TOKEN_VERSION)
+                .putLong(instant.getEpochSecond())
+                .putInt(instant.getNano())
+                .putInt(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Reads the date of the row a token is positioned after
+     *
+     * @param token a token created by encodeToken()
+     * @return the date of the row, in UTC
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    static OffsetDateTime tokenDate(String token) {
+        ByteBuffer buffer = decode(token);
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(buffer.getLong(1), buffer.getInt(9)), ZoneOffset.UTC);
+    }
+
+    /**
+     * Reads the id of the row a token is positioned after
+     *
+     * @param token a token created by encodeToken()
+     * @return the id of the row
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    static int tokenId(String token) {
+        return decode(token).getInt(13);
+    }
+
+    private static ByteBuffer decode(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != TOKEN_BYTES || bytes[0] != TOKEN_VERSION) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Returns a string representation of the page
+     *
+     * @return a string representation of the page
+     */
+    @Override
+    public String toString() {
+        return "Page{" +
+                "items = " + items.size() +
+                ", nextToken = " + nextToken +
+                '}';
+    }
+}
@@ -0,0 +1,129 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A physical connection owned by a ConnectionPool together with its bookkeeping
+ */
+class PoolEntry {
+
+    // Maximum number of prepared statements kept open per connection
+    static final int STATEMENT_CACHE_SIZE = 64;
+
+    final Connection connection;
+
+    // Prepared statements keyed by SQL text, least recently used first
+    // Only the thread that borrowed the connection touches the cache
+    private final Map<String, PreparedStatement> statements =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    // Whether the connection is to SQL Server, looked up on first use
+    private Boolean sqlServer;
+
+    // Bookkeeping used by the pool for validation, eviction and leak detection
+    volatile long lastUsed;
+    volatile long borrowedAt;
+    volatile Throwable borrowTrace;
+    volatile boolean leakReported;
+
+    /**
+     * Instantiates a PoolEntry wrapping an open connection
+     *
+     * @param connection the physical connection
+     */
+    PoolEntry(Connection connection) {
+        this.connection = connection;
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Retrieves the cached prepared statement for the SQL, preparing it on a cache miss
+     * The statement belongs to the cache and must not be closed by the caller
+     *
+     * @param sql the SQL statement to prepare
+     * @return a prepared statement with its parameters cleared
+     * @throws SQLException if a database access error occurs
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt == null || pstmt.isClosed()) {
+            pstmt = connection.prepareStatement(sql);
+            statements.put(sql, pstmt);
+        } else {
+            pstmt.clearParameters();
+        }
+        return pstmt;
+    }
+
+    /**
+     * Retrieves the cached prepared statement for the SQL that returns the given generated key columns
+     * The statement belongs to the cache and must not be closed by the caller
+     *
+     * @param sql the SQL statement to prepare
+     * @param keyColumns the names of the columns to return as generated keys, the first is the identity column
+     * @return a prepared statement with its parameters cleared
+     * @throws SQLException if a database access error occurs
+     */
+    PreparedStatement prepare(String sql, String[] keyColumns) throws SQLException {
+        if (keyColumns.length == 0) {
+            return prepare(sql);
+        }
+
+        String key = sql + '\0' + String.join(",", keyColumns);
+        PreparedStatement pstmt = statements.get(key);
+        if (pstmt == null || pstmt.isClosed()) {
+
+            // SQL Server rejects more than one key column and only returns the identity anyway,
+            // the other keys are read back as null and the caller keeps the values it inserted
+            String[] requested = (keyColumns.length > 1 && isSqlServer()) ? new String[]{keyColumns[0]} : keyColumns;
+            pstmt = connection.prepareStatement(sql, requested);
+            statements.put(key, pstmt);
+        } else {
+            pstmt.clearParameters();
+        }
+        return pstmt;
+    }
+
+    private boolean isSqlServer() throws SQLException {
+        if (sqlServer == null) {
+            sqlServer = connection.getMetaData().getDatabaseProductName().startsWith("Microsoft SQL Server");
+        }
+        return sqlServer;
+    }
+
+    /**
+     * Closes the cached statements and the physical connection
+     */
+    void close() {
+        for (PreparedStatement pstmt : statements.values()) {
+            closeQuietly(pstmt);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package Util;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the database a query is sent to: one of the read replicas of the primary or the primary itself
+ * The healthy replica with the fewest queries in flight is chosen. A thread that wrote to a primary
+ * reads from that primary for a while afterwards, so it always sees its own writes.
+ * Replicas are checked in the background and left out while they cannot be reached.
+ */
+class ReplicaRouter {
+
+    private static final long HEALTH_CHECK_PERIOD_MILLIS = 5_000;
+    private static final int HEALTH_CHECK_TIMEOUT_SECONDS = 2;
+
+    /**
+     * A read replica of a primary
+     */
+    static final class Replica {
+        final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        Replica(String url) {
+            this.url = url;
+        }
+
+        /**
+         * Called once the query sent to the replica is done
+         */
+        void finished() {
+            outstanding.decrementAndGet();
+        }
+
+        /**
+         * Called when the replica could not be reached, it is left out until the next health check passes
+         */
+        void failed() {
+            healthy = false;
+        }
+    }
+
+    // Replicas of each primary URL
+    private static final Map<String, List<Replica>> REPLICAS = new ConcurrentHashMap<>();
+
+    // Time of the last write of the current thread to each primary URL
+    private static final ThreadLocal<Map<String, Long>> LAST_WRITE = ThreadLocal.withInitial(HashMap::new);
+    private static volatile long readYourWritesNanos = TimeUnit.SECONDS.toNanos(5);
+
+    private static ScheduledExecutorService healthChecker;
+
+    private ReplicaRouter() {
+    }
+
+    /**
+     * Adds a read replica to a primary and starts the health checks if needed
+     *
+     * @param primaryUrl the JDBC URL of the primary
+     * @param replicaUrl the JDBC URL of the replica
+     */
+    static synchronized void add(String primaryUrl, String replicaUrl) {
+        List<Replica> replicas = REPLICAS.computeIfAbsent(primaryUrl, url -> new CopyOnWriteArrayList<>());
+        for (Replica replica : replicas) {
+            if (replica.url.equals(replicaUrl)) return;
+        }
+        replicas.add(new Replica(replicaUrl));
+
+        if (healthChecker == null) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "DBUtil-replica-health");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecker.scheduleWithFixedDelay(ReplicaRouter::checkHealth, HEALTH_CHECK_PERIOD_MILLIS,
+                    HEALTH_CHECK_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes a read replica from a primary, queries in flight finish normally
+     *
+     * @param primaryUrl the JDBC URL of the primary
+     * @param replicaUrl the JDBC URL of the replica
+     * @return true if the replica was removed, otherwise false
+     */
+    static synchronized boolean remove(String primaryUrl, String replicaUrl) {
+        List<Replica> replicas = REPLICAS.get(primaryUrl);
+        return replicas != null && replicas.removeIf(replica -> replica.url.equals(replicaUrl));
+    }
+
+    /**
+     * Sets how long a thread keeps reading from the primary after writing to it
+     *
+     * @param millis the duration in milliseconds, 0 to always read from the replicas
+     */
+    static void setReadYourWritesWindow(long millis) {
+        readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Records that the current thread wrote to a primary
+     *
+     * @param primaryUrl the JDBC URL written to
+     */
+    static void wrote(String primaryUrl) {
+        if (REPLICAS.containsKey(primaryUrl)) {
+            LAST_WRITE.get().put(primaryUrl, System.nanoTime());
+        }
+    }
+
+    /**
+     * Chooses the replica a query for a primary is sent to
+     * The caller must call finished() on the replica once the query is done
+     *
+     * @param primaryUrl the JDBC URL named by the caller
+     * @return the replica or null to query the primary
+     */
+    static Replica choose(String primaryUrl) {
+        List<Replica> replicas = REPLICAS.get(primaryUrl);
+        if (replicas == null || replicas.isEmpty()) {
+            return null;
+        }
+
+        Long lastWrite = LAST_WRITE.get().get(primaryUrl);
+        if (lastWrite != null) {
+            if (System.nanoTime() - lastWrite < readYourWritesNanos) {
+                return null;
+            }
+            LAST_WRITE.get().remove(primaryUrl);
+        }
+
+        // Least outstanding requests, starting at a random replica so ties are spread
+        Replica best = null;
+        int size = replicas.size();
+        int first = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((first + i) % size);
+            if (replica.healthy && (best == null || replica.outstanding.get() < best.outstanding.get())) {
+                best = replica;
+            }
+        }
+        if (best != null) {
+            best.outstanding.incrementAndGet();
+        }
+        return best;
+    }
+
+    private static void checkHealth() {
+        for (List<Replica> replicas : REPLICAS.values()) {
+            for (Replica replica : replicas) {
+                replica.healthy = isReachable(replica.url);
+            }
+        }
+    }
+
+    private static boolean isReachable(String url) {
+        ConnectionPool pool = DBUtil.getPool(url);
+        PoolEntry entry;
+        try {
+            entry = pool.borrow();
+        } catch (SQLException ex) {
+            return false;
+        }
+        try {
+            return entry.connection.isValid(HEALTH_CHECK_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        } finally {
+            pool.release(entry);
+        }
+    }
+}
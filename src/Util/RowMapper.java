@@ -0,0 +1,22 @@
+package Util;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a ResultSet to an object
+ *
+ * @param <T> the type of object created from a row
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Creates an object from the current row, must not move the cursor
+     *
+     * @param rs the ResultSet positioned on the row to map
+     * @return the object created from the row
+     * @throws SQLException if a database access error occurs
+     */
+    T map(ResultSet rs) throws SQLException;
+}
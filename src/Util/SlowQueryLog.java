@@ -0,0 +1,256 @@
+package Util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the statements slower than a threshold to a rolling log file
+ * Slow statements are put in a lock-free ring buffer by the thread that ran them
+ * and written to disk by a background thread, so the hot path never waits on the file
+ * If the writer falls behind the oldest entries are overwritten and counted as dropped
+ */
+public class SlowQueryLog implements MetricsListener, AutoCloseable {
+
+    private static final long FLUSH_PERIOD_MILLIS = 1_000;
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    // A slow statement
+    private static final class Entry {
+        final long sequence;
+        final long timestamp;
+        final String sql;
+        final String paramShapes;
+        final long poolWaitNanos;
+        final long executeNanos;
+        final long rows;
+        final String caller;
+        final String error;
+
+        Entry(long sequence, long timestamp, String sql, String paramShapes, long poolWaitNanos,
+              long executeNanos, long rows, String caller, String error) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.paramShapes = paramShapes;
+            this.poolWaitNanos = poolWaitNanos;
+            this.executeNanos = executeNanos;
+            this.rows = rows;
+            this.caller = caller;
+            this.error = error;
+        }
+    }
+
+    private final long thresholdNanos;
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    // Ring buffer, the capacity is a power of two
+    private final AtomicReferenceArray<Entry> ring;
+    private final int mask;
+    private final AtomicLong writeSequence = new AtomicLong();
+    private long readSequence;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final ScheduledExecutorService writer;
+
+    /**
+     * Instantiates a SlowQueryLog and registers it with DBMetrics
+     *
+     * @param file the log file, rolled over to file.1, file.2, ... when full
+     * @param threshold statements taking longer than this, connection wait included, are logged
+     * @param bufferCapacity the number of entries the ring buffer holds, rounded up to a power of two
+     * @param maxFileBytes the size at which the log file is rolled over
+     * @param maxFiles the number of rolled over files kept
+     */
+    public SlowQueryLog(Path file, Duration threshold, int bufferCapacity, long maxFileBytes, int maxFiles) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferCapacity - 1)) << 1;
+        this.thresholdNanos = threshold.toNanos();
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SlowQueryLog-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer.scheduleWithFixedDelay(this::flush, FLUSH_PERIOD_MILLIS, FLUSH_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+        DBMetrics.addListener(this);
+    }
+
+    /**
+     * Instantiates a SlowQueryLog with a 4096 entry buffer and five 10 MB log files
+     *
+     * @param file the log file
+     * @param threshold statements taking longer than this, connection wait included, are logged
+     */
+    public SlowQueryLog(Path file, Duration threshold) {
+        this(file, threshold, 4_096, 10L * 1024 * 1024, 5);
+    }
+
+    /**
+     * Puts the statement in the ring buffer if it was slower than the threshold
+     *
+     * @param sql the SQL text of the statement
+     * @param params the parameters of the statement
+     * @param poolWaitNanos the time spent waiting for a connection
+     * @param executeNanos the time spent executing the statement
+     * @param rows the number of rows affected or returned, -1 if unknown
+     * @param error the exception thrown by the statement or null if it succeeded
+     */
+    @Override
+    public void onStatement(String sql, Object[] params, long poolWaitNanos, long executeNanos, long rows,
+                            Throwable error) {
+        if (poolWaitNanos + executeNanos < thresholdNanos) {
+            return;
+        }
+
+        long sequence = writeSequence.getAndIncrement();
+        ring.set((int) (sequence & mask), new Entry(sequence, System.currentTimeMillis(), sql,
+                shapesOf(params), poolWaitNanos, executeNanos, rows, findCaller(),
+                (error == null) ? null : error.toString()));
+    }
+
+    /**
+     * Retrieves the number of slow statements lost because the writer fell behind
+     *
+     * @return the number of dropped entries
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Unregisters the log, writes the remaining entries and stops the writer
+     */
+    @Override
+    public void close() {
+        DBMetrics.removeListener(this);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Writes the buffered entries to the log file, only ever run by one thread at a time
+     */
+    private synchronized void flush() {
+        long end = writeSequence.get();
+        if (readSequence == end) {
+            return;
+        }
+
+        // Entries older than one lap of the ring were overwritten
+        if (end - readSequence > ring.length()) {
+            dropped.addAndGet(end - ring.length() - readSequence);
+            readSequence = end - ring.length();
+        }
+
+        try {
+            rollOverIfFull();
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                while (readSequence < end) {
+                    Entry entry = ring.get((int) (readSequence & mask));
+                    if (entry == null || entry.sequence < readSequence) {
+
+                        // Claimed but not published yet, read it on the next run
+                        break;
+                    }
+                    if (entry.sequence > readSequence) {
+
+                        // Overwritten before it could be written out
+                        dropped.addAndGet(entry.sequence - readSequence);
+                        readSequence = entry.sequence;
+                    }
+                    out.write(format(entry));
+                    out.newLine();
+                    readSequence++;
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void rollOverIfFull() throws IOException {
+        if (!Files.exists(file) || Files.size(file) < maxFileBytes) {
+            return;
+        }
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = rolledFile(i);
+            if (Files.exists(source)) {
+                Files.move(source, rolledFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolledFile(1), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(rolledFile(maxFiles + 1));
+    }
+
+    private Path rolledFile(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private static String format(Entry entry) {
+        return Instant.ofEpochMilli(entry.timestamp) +
+                " total_ms=" + (entry.poolWaitNanos + entry.executeNanos) / 1_000_000.0 +
+                " pool_wait_ms=" + entry.poolWaitNanos / 1_000_000.0 +
+                " execute_ms=" + entry.executeNanos / 1_000_000.0 +
+                " rows=" + entry.rows +
+                " caller=" + entry.caller +
+                " params=" + entry.paramShapes +
+                ((entry.error != null) ? " error=\"" + entry.error.replace('\n', ' ') + '"' : "") +
+                " sql=\"" + entry.sql.replace('\n', ' ') + '"';
+    }
+
+    /**
+     * Describes the types of the parameters without their values, which may be personal data
+     *
+     * @param params the parameters of the statement, may be null
+     * @return the simple class names of the parameters, such as [String, Integer, null]
+     */
+    private static String shapesOf(Object[] params) {
+        if (params == null) {
+            return "batch";
+        }
+        StringBuilder shapes = new StringBuilder("[");
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) shapes.append(", ");
+            shapes.append((params[i] == null) ? "null" : params[i].getClass().getSimpleName());
+        }
+        return shapes.append(']').toString();
+    }
+
+    /**
+     * Finds the model method that issued the statement, only done for slow statements
+     *
+     * @return the caller such as Borrow.returnBook or unknown if it was not called from a model
+     */
+    private static String findCaller() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith("model."))
+                .findFirst()
+                .map(frame -> frame.getClassName().substring("model.".length()) + "." + frame.getMethodName())
+                .orElse("unknown"));
+    }
+}
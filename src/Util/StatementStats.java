@@ -0,0 +1,158 @@
+package Util;
+
+/**
+ * A snapshot of the metrics of one SQL statement
+ */
+public class StatementStats {
+
+    // Attributes of a snapshot
+    private final String sql;
+    private final long calls;
+    private final long errors;
+    private final long rows;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+    private final double poolWaitP99Millis;
+
+    /**
+     * Instantiates a StatementStats object with all properties set to parameters
+     *
+     * @param sql the SQL text of the statement
+     * @param calls the number of executions
+     * @param errors the number of executions that failed
+     * @param rows the number of rows affected or returned
+     * @param meanMillis the mean execution time
+     * @param p50Millis the median execution time
+     * @param p95Millis the 95th percentile of the execution time
+     * @param p99Millis the 99th percentile of the execution time
+     * @param maxMillis the longest execution time
+     * @param poolWaitP99Millis the 99th percentile of the time spent waiting for a connection
+     */
+    public StatementStats(String sql, long calls, long errors, long rows, double meanMillis, double p50Millis,
+                          double p95Millis, double p99Millis, double maxMillis, double poolWaitP99Millis) {
+        this.sql = sql;
+        this.calls = calls;
+        this.errors = errors;
+        this.rows = rows;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+        this.poolWaitP99Millis = poolWaitP99Millis;
+    }
+
+    /**
+     * Retrieves the SQL text of the statement
+     *
+     * @return the SQL text of the statement
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Retrieves the number of executions
+     *
+     * @return the number of executions
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Retrieves the number of executions that failed
+     *
+     * @return the number of executions that failed
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Retrieves the number of rows affected or returned
+     *
+     * @return the number of rows affected or returned
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Retrieves the mean execution time in milliseconds
+     *
+     * @return the mean execution time in milliseconds
+     */
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    /**
+     * Retrieves the median execution time in milliseconds
+     *
+     * @return the median execution time in milliseconds
+     */
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    /**
+     * Retrieves the 95th percentile of the execution time in milliseconds
+     *
+     * @return the 95th percentile of the execution time in milliseconds
+     */
+    public double getP95Millis() {
+        return p95Millis;
+    }
+
+    /**
+     * Retrieves the 99th percentile of the execution time in milliseconds
+     *
+     * @return the 99th percentile of the execution time in milliseconds
+     */
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    /**
+     * Retrieves the longest execution time in milliseconds
+     *
+     * @return the longest execution time in milliseconds
+     */
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * Retrieves the 99th percentile of the time spent waiting for a connection in milliseconds
+     *
+     * @return the 99th percentile of the time spent waiting for a connection in milliseconds
+     */
+    public double getPoolWaitP99Millis() {
+        return poolWaitP99Millis;
+    }
+
+    /**
+     * Returns a string representation of the snapshot
+     *
+     * @return a string representation of the snapshot
+     */
+    @Override
+    public String toString() {
+        return "StatementStats{" +
+                "sql = '" + sql + '\'' +
+                ", calls = " + calls +
+                ", errors = " + errors +
+                ", rows = " + rows +
+                ", mean_ms = " + meanMillis +
+                ", p50_ms = " + p50Millis +
+                ", p95_ms = " + p95Millis +
+                ", p99_ms = " + p99Millis +
+                ", max_ms = " + maxMillis +
+                ", pool_wait_p99_ms = " + poolWaitP99Millis +
+                '}';
+    }
+}
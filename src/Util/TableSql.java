@@ -0,0 +1,156 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The statements reading and writing one table, generated once for a dialect
+ * The INSERT, SELECT and DELETE statements are built when the model class is loaded.
+ * UPDATE statements of each set of modified columns and multi-row INSERT statements of each
+ * row count are built on first use and cached.
+ */
+public final class TableSql {
+
+    private final Dialect dialect;
+    private final String table;
+    private final String idColumn;
+    private final List<String> columns;
+    private final List<String> allColumns;
+
+    private final String insert;
+    private final String select;
+    private final String delete;
+
+    private final Map<String, String> updates = new ConcurrentHashMap<>();
+    private final Map<Integer, String> inserts = new ConcurrentHashMap<>();
+
+    /**
+     * Generates the statements of a table whose id is generated by the database
+     *
+     * @param dialect the dialect of the database
+     * @param table the unqualified table name
+     * @param idColumn the id column, generated on insert
+     * @param columns the other columns, in the order of the insert parameters
+     */
+    public TableSql(Dialect dialect, String table, String idColumn, String... columns) {
+        this(dialect, table, idColumn, columns, new String[0]);
+    }
+
+    /**
+     * Generates the statements of a table with columns that are read but left out of inserts
+     *
+     * @param dialect the dialect of the database
+     * @param table the unqualified table name
+     * @param idColumn the id column, generated on insert
+     * @param columns the columns written on insert, in the order of the insert parameters
+     * @param laterColumns the columns only written by updates, read after the others
+     */
+    public TableSql(Dialect dialect, String table, String idColumn, String[] columns, String... laterColumns) {
+        this.dialect = dialect;
+        this.table = dialect.table(table);
+        this.idColumn = idColumn;
+        this.columns = List.of(columns);
+
+        List<String> all = new ArrayList<>(1 + columns.length + laterColumns.length);
+        all.add(idColumn);
+        all.addAll(this.columns);
+        all.addAll(List.of(laterColumns));
+        this.allColumns = Collections.unmodifiableList(all);
+
+        this.insert = dialect.insert(this.table, this.columns, 1);
+        this.select = "SELECT " + String.join(", ", all) + " FROM " + this.table;
+        this.delete = "DELETE FROM " + this.table + " WHERE " + idColumn + " = ?";
+    }
+
+    /**
+     * Retrieves the dialect the statements were generated for
+     *
+     * @return the dialect
+     */
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Retrieves the qualified table name, to write other statements on the table
+     *
+     * @return the table name, such as public."book"
+     */
+    public String table() {
+        return table;
+    }
+
+    /**
+     * Retrieves the columns written on insert
+     *
+     * @return the columns other than the id
+     */
+    public List<String> columns() {
+        return columns;
+    }
+
+    /**
+     * Retrieves every column in the order select() reads them
+     *
+     * @return the id, the insert columns then the columns only written by updates
+     */
+    public List<String> allColumns() {
+        return allColumns;
+    }
+
+    /**
+     * Retrieves the statement inserting a row
+     *
+     * @return the statement taking the values of columns() in order
+     */
+    public String insert() {
+        return insert;
+    }
+
+    /**
+     * Retrieves the statement inserting several rows at once
+     *
+     * @param rowCount the number of rows
+     * @return the statement taking the values of columns() of every row, row after row
+     */
+    public String insert(int rowCount) {
+        if (rowCount == 1) {
+            return insert;
+        }
+        return inserts.computeIfAbsent(rowCount, count -> dialect.insert(table, columns, count));
+    }
+
+    /**
+     * Retrieves the statement reading every column, filters and ordering may be appended
+     *
+     * @return the statement reading allColumns()
+     */
+    public String select() {
+        return select;
+    }
+
+    /**
+     * Retrieves the statement deleting a row
+     *
+     * @return the statement taking the id
+     */
+    public String delete() {
+        return delete;
+    }
+
+    /**
+     * Retrieves the statement updating some columns of a row
+     *
+     * @param modified the columns written, in the order of the parameters
+     * @return the statement taking the new values then the id
+     */
+    public String update(Collection<String> modified) {
+        String key = String.join(",", modified);
+        return updates.computeIfAbsent(key, k -> "UPDATE " + table + " SET " + String.join(" = ?, ", modified) +
+                " = ? WHERE " + idColumn + " = ?");
+    }
+}
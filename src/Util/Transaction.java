@@ -0,0 +1,168 @@
+package Util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs several statements on one pooled connection and commits them together
+ * Use in a try-with-resources statement, closing without commit() rolls everything back
+ */
+public class Transaction implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final PoolEntry entry;
+    private boolean finished;
+
+    /**
+     * Instantiates a Transaction on a connection borrowed from the pool
+     *
+     * @param pool the pool the connection is returned to
+     * @param entry the borrowed connection
+     * @throws SQLException if a database access error occurs
+     */
+    Transaction(ConnectionPool pool, PoolEntry entry) throws SQLException {
+        this.pool = pool;
+        this.entry = entry;
+        entry.connection.setAutoCommit(false);
+    }
+
+    /**
+     * Executes an update, insert, or delete SQL statement with optional parameters.
+     *
+     * @param sql the SQL statement to execute
+     * @param params optional parameters for the query
+     * @return the number of rows affected
+     * @throws SQLException if a database access error occurs
+     */
+    public int executeUpdate(String sql, Object... params) throws SQLException {
+        long start = System.nanoTime();
+        int rows = -1;
+        Throwable error = null;
+        try {
+            PreparedStatement pstmt = entry.prepare(sql);
+            DBUtil.bind(pstmt, params);
+            rows = pstmt.executeUpdate();
+            return rows;
+        } catch (SQLException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            DBMetrics.record(sql, params, 0, System.nanoTime() - start, rows, error);
+        }
+    }
+
+    /**
+     * Executes an insert, update or delete SQL statement once per row as a single JDBC batch.
+     *
+     * @param sql the SQL statement to execute
+     * @param rows the parameters of each execution
+     * @param keyColumns the names of the generated columns to return, if any
+     * @return the generated keys of every row, in order, or an empty list if no key columns are given
+     * @throws SQLException if a database access error occurs
+     */
+    public List<Object[]> executeBatch(String sql, List<Object[]> rows, String... keyColumns) throws SQLException {
+        List<Object[]> keys = new ArrayList<>(keyColumns.length > 0 ? rows.size() : 0);
+        batch(sql, rows, keyColumns, keys);
+        return keys;
+    }
+
+    /**
+     * Executes an update or delete SQL statement once per row as a single JDBC batch.
+     *
+     * @param sql the SQL statement to execute
+     * @param rows the parameters of each execution
+     * @return the number of rows affected by each execution, in order, Statement.SUCCESS_NO_INFO if the
+     *         driver did not tell
+     * @throws SQLException if a database access error occurs
+     */
+    public int[] executeBatchCounts(String sql, List<Object[]> rows) throws SQLException {
+        return batch(sql, rows, new String[0], null);
+    }
+
+    private int[] batch(String sql, List<Object[]> rows, String[] keyColumns, List<Object[]> keys)
+            throws SQLException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+
+        long start = System.nanoTime();
+        long affected = -1;
+        Throwable error = null;
+        try {
+            PreparedStatement pstmt = entry.prepare(sql, keyColumns);
+            int[] counts;
+            try {
+                for (Object[] row : rows) {
+                    DBUtil.bind(pstmt, row);
+                    pstmt.addBatch();
+                }
+                counts = pstmt.executeBatch();
+            } catch (SQLException ex) {
+                pstmt.clearBatch();
+                throw ex;
+            }
+            if (keyColumns.length > 0) {
+                DBUtil.readKeys(pstmt, keyColumns.length, keys);
+            }
+            affected = affectedRows(counts);
+            return counts;
+        } catch (SQLException | RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            DBMetrics.record(sql, null, 0, System.nanoTime() - start, affected, error);
+        }
+    }
+
+    /**
+     * Adds up the counts of a batch, an execution the driver gave no count for is counted as one row
+     *
+     * @param counts the counts returned by executeBatch()
+     * @return the number of rows affected
+     */
+    public static long affectedRows(int[] counts) {
+        long rows = 0;
+        for (int count : counts) {
+            if (count > 0) rows += count;
+            else if (count == Statement.SUCCESS_NO_INFO) rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * Commits every statement executed so far and gives the connection back to the pool
+     *
+     * @throws SQLException if a database access error occurs, the transaction is then rolled back
+     */
+    public void commit() throws SQLException {
+        if (finished) {
+            throw new SQLException("Transaction already finished");
+        }
+        try {
+            entry.connection.commit();
+        } finally {
+            ReplicaRouter.wrote(pool.getJdbcUrl());
+            finish();
+        }
+    }
+
+    /**
+     * Rolls back the transaction if it was not committed and gives the connection back to the pool
+     */
+    @Override
+    public void close() {
+        if (!finished) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        finished = true;
+
+        // The pool rolls back anything left uncommitted before reusing the connection
+        pool.release(entry);
+    }
+}
@@ -0,0 +1,753 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A local write-ahead journal of SQL writes, used while the database cannot be reached
+ * Writes are appended to a file and forced to disk before append() returns; concurrent appends are
+ * forced together by whichever thread gets there first (group commit), so one fsync covers many writes.
+ * A background drainer replays the journal in order, in batches of one transaction each. Every entry
+ * has an idempotency key recorded in the journal_applied table in the same transaction, so an entry
+ * replayed again after a crash is skipped. The keys are deleted once the journal file is emptied.
+ * The models use the installed journal: while it holds entries their writes are journaled too, so the
+ * database sees the writes in the order they were made. A journaled write leaves the model as it was,
+ * an inserted model keeps the id -1 and its modified columns stay recorded. Once a write is replayed the
+ * replay listeners are told which row it wrote, so caches, indexes and change listeners catch up.
+ * An insert is only journaled if it never reached the database: after a failure mid-statement it may have
+ * been committed, and replaying it would store the row twice under a new generated id.
+ * The applied keys are recorded with Dialect.insertIfAbsent(), so replay works on the three databases.
+ */
+public class WriteJournal implements AutoCloseable {
+
+    /**
+     * Returned by the models instead of a number of rows when their write was journaled
+     */
+    public static final String QUEUED = "queued";
+
+    // Parameter type tags
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte DATE_TIME = 6;
+
+    // The journal used by the models, null if none is installed
+    private static volatile WriteJournal installed;
+
+    private static final List<ReplayListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Told about every journaled write once its replay is committed
+     */
+    @FunctionalInterface
+    public interface ReplayListener {
+
+        /**
+         * Called on the drainer thread once a replayed write changed a row
+         *
+         * @param table the table given when the write was journaled
+         * @param id the id of the row, generated by the database for an insert
+         * @param sql the SQL statement that was replayed
+         * @throws SQLException if a database access error occurs
+         */
+        void replayed(String table, int id, String sql) throws SQLException;
+    }
+
+    // A journaled write, table is empty and id -1 for a write appended with append()
+    private static final class Entry {
+        final String key;
+        final String sql;
+        final Object[] params;
+        final String table;
+        final int id;
+
+        // The generated id column of an insert, null for any other write
+        final String keyColumn;
+        final long end;
+
+        Entry(String key, String sql, Object[] params, String table, int id, String keyColumn, long end) {
+            this.key = key;
+            this.sql = sql;
+            this.params = params;
+            this.table = table;
+            this.id = id;
+            this.keyColumn = keyColumn;
+            this.end = end;
+        }
+    }
+
+    private final Path file;
+    private final Path checkpointFile;
+    private final String url;
+    private final int batchSize;
+
+    // Statements of the table recording the applied entries, in the dialect of url
+    private final String createAppliedSql;
+    private final String markAppliedSql;
+    private final String deleteAppliedSql;
+    private final FileChannel channel;
+
+    // Group commit state, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition forced = lock.newCondition();
+    private List<byte[]> unforced = new ArrayList<>();
+    private long appendedSequence;
+    private long forcedSequence;
+    private long failedSequence;
+    private IOException failure;
+    private boolean forcing;
+    private long durableSize;
+
+    // Drain state, position only moved by the drainer, pendingCount only changed under lock
+    private volatile long drainedPosition;
+    private volatile int pendingCount;
+    private boolean tableCreated;
+
+    // Keys of the entries dropped by compact(), deleted from journal_applied by the drainer
+    private final List<String> droppedKeys = new ArrayList<>();
+
+    private final ScheduledExecutorService drainer;
+
+    /**
+     * Opens or creates a journal and starts draining it to the database
+     *
+     * @param file the journal file, its checkpoint is kept in file.pos
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @param batchSize the maximum number of entries replayed in one transaction
+     * @param drainPeriodMillis the time between two attempts to drain the journal
+     * @throws IOException if the journal cannot be read or written
+     */
+    public WriteJournal(Path file, String url, int batchSize, long drainPeriodMillis) throws IOException {
+        this.file = file;
+        this.checkpointFile = file.resolveSibling(file.getFileName() + ".pos");
+        this.url = url;
+        this.batchSize = batchSize;
+
+        Dialect dialect = Dialect.forUrl(url);
+        String applied = dialect.table("journal_applied");
+        this.createAppliedSql = dialect.createTableIfAbsent(applied, "entry_key VARCHAR(36) PRIMARY KEY, " +
+                "applied_at " + dialect.timestampType() + " NOT NULL");
+        this.markAppliedSql = dialect.insertIfAbsent(applied, "entry_key", List.of("entry_key", "applied_at"));
+        this.deleteAppliedSql = "DELETE FROM " + applied + " WHERE entry_key = ?";
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        // Cut a record torn by a crash and count what is left to replay
+        this.drainedPosition = Files.exists(checkpointFile) ?
+                ByteBuffer.wrap(Files.readAllBytes(checkpointFile)).getLong() : 0;
+        long end = drainedPosition;
+        int count = 0;
+        for (Entry entry = readEntry(end); entry != null; entry = readEntry(end)) {
+            end = entry.end;
+            count++;
+        }
+        this.channel.truncate(end);
+        this.durableSize = end;
+        this.pendingCount = count;
+
+        this.drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WriteJournal-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.drainer.scheduleWithFixedDelay(this::drain, 0, drainPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens or creates a journal replaying up to 500 entries per transaction every second
+     *
+     * @param file the journal file
+     * @param url the Url for the connection, should be one of the three predefined constants
+     * @throws IOException if the journal cannot be read or written
+     */
+    public WriteJournal(Path file, String url) throws IOException {
+        this(file, url, 500, 1_000);
+    }
+
+    /**
+     * Makes the models journal their writes while the database cannot be reached
+     *
+     * @param journal the journal to use or null to stop journaling
+     */
+    public static void install(WriteJournal journal) {
+        installed = journal;
+    }
+
+    /**
+     * Registers a listener told about every replayed write
+     * Entries left by an earlier run are replayed as soon as a journal is opened, register first
+     *
+     * @param listener the listener to add
+     */
+    public static void addReplayListener(ReplayListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a replay listener
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeReplayListener(ReplayListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Checks whether the installed journal still holds writes, later writes must then be journaled too
+     *
+     * @return true if writes are waiting to be replayed, otherwise false
+     */
+    public static boolean isBacklogged() {
+        WriteJournal journal = installed;
+        return journal != null && journal.getPendingCount() > 0;
+    }
+
+    /**
+     * Checks whether a write failed because the database cannot be reached and a journal is installed
+     *
+     * @param ex the exception thrown by the write
+     * @return true if the write should be journaled, otherwise false
+     */
+    public static boolean isOffline(Exception ex) {
+        return installed != null && isConnectionFailure(ex);
+    }
+
+    /**
+     * Appends an update or a delete of a row to the installed journal
+     *
+     * @param table the table of the row, handed to the replay listeners
+     * @param id the id of the row
+     * @param sql the SQL statement to replay
+     * @param params the parameters of the statement
+     * @return QUEUED or the error message if the write could not be journaled
+     */
+    public static String enqueue(String table, int id, String sql, Object... params) {
+        return enqueue(table, id, null, sql, params);
+    }
+
+    /**
+     * Appends an insert to the installed journal, the id generated on replay goes to the replay listeners
+     *
+     * @param table the table of the row
+     * @param keyColumn the generated id column
+     * @param sql the SQL statement to replay
+     * @param params the parameters of the statement
+     * @return QUEUED or the error message if the write could not be journaled
+     */
+    public static String enqueueInsert(String table, String keyColumn, String sql, Object... params) {
+        return enqueue(table, -1, keyColumn, sql, params);
+    }
+
+    /**
+     * Journals an update or a delete that failed because the database cannot be reached, used in the catch
+     * blocks of the models. Replaying them is safe even if the failed attempt was committed
+     *
+     * @param ex the exception thrown by the write
+     * @param table the table of the row
+     * @param id the id of the row
+     * @param sql the SQL statement of the write
+     * @param params the parameters of the statement
+     * @return QUEUED if the write was journaled, otherwise the error message of the exception
+     */
+    public static String enqueueIfOffline(Exception ex, String table, int id, String sql, Object... params) {
+        if (!isOffline(ex)) {
+            return ex.getMessage();
+        }
+        return enqueue(table, id, sql, params);
+    }
+
+    /**
+     * Journals an insert that failed because no connection could be opened, used in the catch blocks of
+     * the models. An insert that failed once sent may have been committed and is not journaled
+     *
+     * @param ex the exception thrown by the insert
+     * @param table the table of the row
+     * @param keyColumn the generated id column
+     * @param sql the SQL statement of the insert
+     * @param params the parameters of the statement
+     * @return QUEUED if the insert was journaled, otherwise the error message of the exception
+     */
+    public static String enqueueInsertIfOffline(Exception ex, String table, String keyColumn, String sql,
+                                                Object... params) {
+        if (!isOffline(ex) || !isNotSent(ex)) {
+            return ex.getMessage();
+        }
+        return enqueueInsert(table, keyColumn, sql, params);
+    }
+
+    private static String enqueue(String table, int id, String keyColumn, String sql, Object... params) {
+        WriteJournal journal = installed;
+        if (journal == null) {
+            return "No write journal installed";
+        }
+        try {
+            journal.append(encode(UUID.randomUUID().toString(), sql, params, table, id, keyColumn));
+            return QUEUED;
+        } catch (IOException | RuntimeException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    /**
+     * Checks whether a write failed before its statement was sent, see ConnectionUnavailableException
+     *
+     * @param ex the exception thrown by the write
+     * @return true if the database cannot have applied the write, otherwise false
+     */
+    public static boolean isNotSent(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectionUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether an exception means the database cannot be reached, SQLState class 08
+     *
+     * @param ex the exception
+     * @return true for a connection failure, otherwise false
+     */
+    public static boolean isConnectionFailure(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends a write and waits until it is on disk
+     *
+     * @param sql the SQL statement to replay
+     * @param params the parameters of the statement, of type String, Integer, Long, Boolean, Double or
+     *               OffsetDateTime
+     * @return the idempotency key of the entry
+     * @throws IOException if the journal cannot be written
+     */
+    public String append(String sql, Object... params) throws IOException {
+        String key = UUID.randomUUID().toString();
+        append(encode(key, sql, params, "", -1, null));
+        return key;
+    }
+
+    /**
+     * Appends an encoded record and waits until it is on disk, forcing it together with concurrent appends
+     */
+    private void append(byte[] record) throws IOException {
+        lock.lock();
+        try {
+            unforced.add(record);
+            long sequence = ++appendedSequence;
+
+            // Counted right away, so a write made while this one is forced is journaled behind it
+            pendingCount++;
+            while (forcedSequence < sequence) {
+                if (failure != null && failedSequence >= sequence) {
+                    throw new IOException("Write journal could not be forced to disk", failure);
+                }
+                if (forcing) {
+                    forced.awaitUninterruptibly();
+                    continue;
+                }
+
+                // Lead this group: write every waiting record and force them with one call
+                forcing = true;
+                List<byte[]> group = unforced;
+                unforced = new ArrayList<>();
+                long groupEnd = appendedSequence;
+                long position = durableSize;
+                lock.unlock();
+                IOException error = null;
+                try {
+                    for (byte[] bytes : group) {
+                        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                        while (buffer.hasRemaining()) {
+                            position += channel.write(buffer, position);
+                        }
+                    }
+                    channel.force(false);
+                } catch (IOException ex) {
+                    error = ex;
+                } finally {
+                    lock.lock();
+                    forcing = false;
+                }
+                if (error == null) {
+                    durableSize = position;
+                    forcedSequence = groupEnd;
+                } else {
+                    pendingCount -= group.size();
+                    failure = error;
+                    failedSequence = groupEnd;
+                }
+                forced.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of writes waiting to be replayed, including those still being forced to disk
+     *
+     * @return the number of journaled writes not yet in the database
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Stops the drainer and closes the journal, entries left are replayed when it is opened again
+     */
+    @Override
+    public void close() {
+        if (installed == this) {
+            installed = null;
+        }
+        drainer.shutdown();
+        try {
+            drainer.awaitTermination(30, TimeUnit.SECONDS);
+            channel.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Replays the journal until it is empty or the database cannot be reached
+     */
+    private void drain() {
+        try {
+            if (pendingCount == 0) {
+                compact();
+                forgetDroppedKeys();
+                return;
+            }
+            if (!tableCreated) {
+                DBUtil.executeUpdate(createAppliedSql, url);
+                tableCreated = true;
+            }
+
+            while (true) {
+                List<Entry> batch = new ArrayList<>(batchSize);
+                long position = drainedPosition;
+                long end = durableEnd();
+                while (batch.size() < batchSize && position < end) {
+                    Entry entry = readEntry(position);
+                    if (entry == null) break;
+                    batch.add(entry);
+                    position = entry.end;
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                try {
+                    apply(batch);
+                } catch (SQLException ex) {
+                    if (isConnectionFailure(ex)) {
+                        return;
+                    }
+
+                    // One entry is refused by the database, replay one by one to set it aside
+                    for (Entry entry : batch) {
+                        try {
+                            apply(List.of(entry));
+                        } catch (SQLException entryEx) {
+                            if (isConnectionFailure(entryEx)) {
+                                return;
+                            }
+                            reject(entry, entryEx);
+                        }
+                        advance(entry.end, 1);
+                    }
+                    continue;
+                }
+                advance(position, batch.size());
+            }
+        } catch (SQLException ex) {
+            if (!isConnectionFailure(ex)) ex.printStackTrace();
+        } catch (IOException | RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Replays entries in one transaction, skipping those already applied, then tells the replay listeners
+     */
+    private void apply(List<Entry> batch) throws SQLException {
+        List<Entry> written = new ArrayList<>(batch.size());
+        List<Integer> ids = new ArrayList<>(batch.size());
+        try (Transaction tx = DBUtil.beginTransaction(url)) {
+            OffsetDateTime now = OffsetDateTime.now();
+            for (Entry entry : batch) {
+                if (tx.executeUpdate(markAppliedSql, entry.key, now) == 0) {
+                    continue;
+                }
+                if (entry.keyColumn != null) {
+                    List<Object[]> keys = tx.executeBatch(entry.sql, Collections.singletonList(entry.params),
+                            entry.keyColumn);
+                    if (!keys.isEmpty()) {
+                        written.add(entry);
+                        ids.add(((Number) keys.get(0)[0]).intValue());
+                    }
+                } else if (tx.executeUpdate(entry.sql, entry.params) > 0) {
+                    written.add(entry);
+                    ids.add(entry.id);
+                }
+            }
+            tx.commit();
+        }
+
+        for (int i = 0; i < written.size(); i++) {
+            Entry entry = written.get(i);
+            if (entry.table.isEmpty()) continue;
+            for (ReplayListener listener : LISTENERS) {
+                try {
+                    listener.replayed(entry.table, ids.get(i), entry.sql);
+                } catch (SQLException | RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void reject(Entry entry, SQLException ex) throws IOException {
+        System.err.println("WriteJournal: entry " + entry.key + " refused by the database, moved to " +
+                file.getFileName() + ".rejected: " + ex.getMessage());
+        Files.write(file.resolveSibling(file.getFileName() + ".rejected"),
+                (entry.key + '\t' + entry.sql + '\t' + Arrays.toString(entry.params) + '\n').getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void advance(long position, int entries) throws IOException {
+        writeCheckpoint(position);
+        drainedPosition = position;
+        lock.lock();
+        try {
+            pendingCount -= entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long durableEnd() {
+        lock.lock();
+        try {
+            return durableSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties the journal file once every entry was replayed, their keys go to droppedKeys
+     */
+    private void compact() throws IOException {
+        lock.lock();
+        try {
+            if (forcing || !unforced.isEmpty() || drainedPosition != durableSize || durableSize == 0) {
+                return;
+            }
+            List<String> keys = new ArrayList<>();
+            long position = 0;
+            while (position < durableSize) {
+                Entry entry = readEntry(position);
+                if (entry == null) break;
+                keys.add(entry.key);
+                position = entry.end;
+            }
+
+            // Reset the checkpoint first, entries replayed again after a crash are skipped by their key
+            writeCheckpoint(0);
+            drainedPosition = 0;
+            channel.truncate(0);
+            channel.force(true);
+            durableSize = 0;
+            droppedKeys.addAll(keys);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the idempotency keys of the entries no longer in the journal, which cannot be replayed again
+     * Kept for the next drain if the database cannot be reached
+     */
+    private void forgetDroppedKeys() throws SQLException {
+        if (droppedKeys.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(droppedKeys.size());
+        for (String key : droppedKeys) {
+            rows.add(new Object[]{key});
+        }
+        DBUtil.executeBatch(deleteAppliedSql, url, rows);
+        droppedKeys.clear();
+    }
+
+    private void writeCheckpoint(long position) throws IOException {
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(temp, ByteBuffer.allocate(Long.BYTES).putLong(position).array());
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Encodes a record: length, CRC32 of the body, then key, statement, typed parameters, table, id and
+     * key column, empty for a write that is not an insert
+     */
+    private static byte[] encode(String key, String sql, Object[] params, String table, int id,
+                                 String keyColumn) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(body);
+        writeString(out, key);
+        writeString(out, sql);
+        out.writeShort(params.length);
+        for (Object param : params) {
+            if (param == null) {
+                out.writeByte(NULL);
+            } else if (param instanceof String) {
+                out.writeByte(STRING);
+                writeString(out, (String) param);
+            } else if (param instanceof Integer) {
+                out.writeByte(INT);
+                out.writeInt((Integer) param);
+            } else if (param instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) param);
+            } else if (param instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) param);
+            } else if (param instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) param);
+            } else if (param instanceof OffsetDateTime) {
+                OffsetDateTime date = (OffsetDateTime) param;
+                out.writeByte(DATE_TIME);
+                out.writeLong(date.toEpochSecond());
+                out.writeInt(date.getNano());
+                out.writeInt(date.getOffset().getTotalSeconds());
+            } else {
+                throw new IllegalArgumentException("Cannot journal a parameter of type " +
+                        param.getClass().getName());
+            }
+        }
+        writeString(out, table);
+        out.writeInt(id);
+        writeString(out, (keyColumn == null) ? "" : keyColumn);
+
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + body.size());
+        record.putInt(body.size()).putInt((int) crc.getValue()).put(body.toByteArray());
+        return record.array();
+    }
+
+    /**
+     * Reads the record at a position of the journal file
+     *
+     * @return the entry or null at the end of the file or at a torn record
+     */
+    private Entry readEntry(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 2);
+        if (channel.read(header, position) < header.capacity()) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || position + header.capacity() + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        while (body.hasRemaining()) {
+            if (channel.read(body, position + header.capacity() + body.position()) < 0) return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+        String key = readString(in);
+        String sql = readString(in);
+        Object[] params = new Object[in.readShort()];
+        for (int i = 0; i < params.length; i++) {
+            byte type = in.readByte();
+            switch (type) {
+                case STRING: params[i] = readString(in); break;
+                case INT: params[i] = in.readInt(); break;
+                case LONG: params[i] = in.readLong(); break;
+                case BOOLEAN: params[i] = in.readBoolean(); break;
+                case DOUBLE: params[i] = in.readDouble(); break;
+                case DATE_TIME:
+                    Instant instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                    params[i] = OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(in.readInt()));
+                    break;
+                default: params[i] = null;
+            }
+        }
+
+        String table = readString(in);
+        int id = in.readInt();
+        String keyColumn = readString(in);
+        return new Entry(key, sql, params, table, id, keyColumn.isEmpty() ? null : keyColumn,
+                position + header.capacity() + length);
+    }
+
+    // Strings are written as a length and UTF-8 bytes, writeUTF() is limited to 64 KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,21 +1,65 @@
 package model;
 
+import Util.BulkLoader;
 import Util.DBUtil;
 import Util.DateTimeUtil;
+import Util.EntityCache;
+import Util.TableSql;
+import Util.WriteJournal;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Represents an Author
  */
 public class Author {
 
+    // Name of the table, used in change events
+    static final String TABLE = "author";
+
+    // Columns generated by the database on insert
+    static final String[] KEY_COLUMNS = {"author_id", "date_added"};
+
+    // Statements of the table, generated once for the dialect of the configured database
+    static final TableSql SQL = new TableSql(DBUtil.getDialect(), TABLE, "author_id", "first_name", "last_name",
+            "date_added");
+
+    // SQL used to insert an author
+    static final String INSERT_SQL = SQL.insert();
+
+    // SQL used to read authors, filters are appended by the finders
+    static final String SELECT_SQL = SQL.select();
+
+    // SQL used to delete an author
+    static final String DELETE_SQL = SQL.delete();
+
+    // Read-through cache used by findById()
+    private static final EntityCache<Author> CACHE = new EntityCache<>(10_000, Duration.ofMinutes(10),
+            Author::copy);
+
+    // Replayed writes of the write journal reach the caches, indexes and change listeners
+    static {
+        JournalReplay.register();
+    }
+
     // Attributes of an author object
-    private final int author_id;
+    private int author_id;
     private String first_name;
     private String last_name;
     private OffsetDateTime date_added;
 
+    // Columns modified by the setters since the last load or save
+    private final ChangeTracker changes = new ChangeTracker();
+
     /**
      * Instantiates an Author object with all properties set to parameters
      *
@@ -34,7 +78,7 @@ public class Author {
     /**
      * Instantiates an Author object with minimum parameters to create a new author
      * Sets author_id to -1 as dummy data
-     * author_id is set automatically by the database
+     * author_id is set automatically by the database and filled in by addToDatabase()
      * date_added is set to null, will be the date and time it actually gets stored in the database
      *
      * @param first_name the first name of the new author
@@ -69,6 +113,7 @@ public class Author {
      */
     public void setFirst_name(String first_name) {
         this.first_name = first_name;
+        changes.record("first_name", first_name);
     }
 
     /**
@@ -87,6 +132,7 @@ public class Author {
      */
     public void setLast_name(String last_name) {
         this.last_name = last_name;
+        changes.record("last_name", last_name);
     }
 
     /**
@@ -100,65 +146,391 @@ public class Author {
 
     /**
      * Adds the author to the database
+     * Sets author_id and date_added to the values stored by the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String addToDatabase() {
-        String sql = "INSERT INTO public.author (first_name, last_name, date_added) " +
-                "VALUES (?, ?, ?)";
 
         // Set the date added to the current time
         this.date_added = OffsetDateTime.now();
 
         try {
 
-            // Use executeUpdate() method from DBUtil to save the author in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.first_name,
-                    this.last_name, this.date_added));
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueueInsert(TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+            }
+
+            // Use executeInsert() method from DBUtil to save the author and read back the generated keys
+            Object[] keys = DBUtil.executeInsert(INSERT_SQL, DBUtil.getURL(), KEY_COLUMNS,
+                    insertParams());
+            if (keys == null) {
+                return "0";
+            }
+            applyKeys(keys);
+            changes.clear();
+            ChangeBus.publish(ChangeEvent.inserted(TABLE, this.author_id));
+            return "1";
+
+        } catch (Exception ex) {
+            return WriteJournal.enqueueInsertIfOffline(ex, TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+        }
+    }
+
+    /**
+     * Adds the author to the database without blocking the caller. See addToDatabase()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> addToDatabaseAsync() {
+        return DBUtil.supplyAsync(this::addToDatabase);
+    }
+
+    /**
+     * Adds many authors to the database using batched inserts
+     * Every author in a chunk is committed together and gets its generated author_id and date_added
+     *
+     * @param authors the authors to add
+     * @return the number of rows affected or the error message if any occurs
+     */
+    public static String addAllToDatabase(Collection<Author> authors) {
+        List<Object[]> rows = new ArrayList<>(authors.size());
+
+        // Set the date added of every author to the current time
+        OffsetDateTime now = OffsetDateTime.now();
+        for (Author author : authors) {
+            author.date_added = now;
+            rows.add(author.insertParams());
+        }
+
+        try {
+
+            // Use executeInsertRows() method from DBUtil to save the authors in the database
+            List<Object[]> keys = DBUtil.executeInsertRows(SQL, DBUtil.getURL(), rows, KEY_COLUMNS);
+
+            // Keys come back in the order the rows were inserted
+            Iterator<Object[]> iterator = keys.iterator();
+            for (Author author : authors) {
+                if (!iterator.hasNext()) break;
+                author.applyKeys(iterator.next());
+                author.changes.clear();
+                ChangeBus.publish(ChangeEvent.inserted(TABLE, author.author_id));
+            }
+            return String.valueOf(keys.size());
+
+        } catch (Exception ex) {
+            return ex.getMessage();
+        }
+    }
+
+    /**
+     * Loads many authors at once, streaming them into COPY on PostgreSQL, see BulkLoader
+     * Authors without a date added get the current time. The new rows are then read back, so the catalogue
+     * snapshot and the change listeners learn about them, see imported()
+     *
+     * @param authors the authors to load, must be closed by the caller
+     * @param chunkRows the number of authors committed together
+     * @param listener told about the outcome of every chunk or null to only print the errors
+     * @return the number of rows loaded or the error message if any occurs
+     */
+    public static String importAll(Stream<Author> authors, int chunkRows, BulkLoader.ChunkListener listener) {
+        OffsetDateTime now = OffsetDateTime.now();
+        Iterator<Object[]> rows = authors.map(author -> {
+            if (author.date_added == null) author.date_added = now;
+            return author.insertParams();
+        }).iterator();
+
+        try {
+            int lastId = lastId();
+            long loaded = BulkLoader.load(SQL, DBUtil.getURL(), rows, chunkRows, listener);
+            imported(lastId);
+            return String.valueOf(loaded);
 
         } catch (Exception ex) {
             return ex.getMessage();
         }
     }
 
+    /**
+     * Reports the authors loaded by importAll() to the catalogue snapshot and the change listeners
+     * COPY does not return the generated ids, the new rows are the ones after the last id stored before the
+     * import. A author inserted by another writer while the import runs is reported a second time.
+     *
+     * @param lastId the greatest author_id stored before the import
+     * @throws SQLException if a database access error occurs
+     */
+    private static void imported(int lastId) throws SQLException {
+        try (Stream<Author> authors = DBUtil.streamFromPrimary(SELECT_SQL + " WHERE author_id > ? ORDER BY author_id",
+                DBUtil.getURL(), Author::fromResultSet, lastId)) {
+            authors.forEach(author -> {
+                CatalogueSnapshot.changed(CatalogueSnapshot.AUTHOR, author.author_id);
+                ChangeBus.publish(ChangeEvent.inserted(TABLE, author.author_id));
+            });
+        }
+    }
+
+    /**
+     * Reads the greatest author_id stored
+     *
+     * @return the id or 0 if the table is empty
+     * @throws SQLException if a database access error occurs
+     */
+    private static int lastId() throws SQLException {
+        try (Stream<Integer> ids = DBUtil.streamFromPrimary("SELECT MAX(author_id) FROM " + SQL.table(),
+                DBUtil.getURL(), rs -> rs.getInt(1))) {
+            return ids.findFirst().orElse(0);
+        }
+    }
+
+    /**
+     * Sets the author_id and date_added generated by the database
+     *
+     * @param keys the values of KEY_COLUMNS returned by the database
+     */
+    void applyKeys(Object[] keys) {
+        this.author_id = ((Number) keys[0]).intValue();
+        if (keys[1] != null) {
+            this.date_added = DateTimeUtil.fromSqlValue(keys[1]);
+        }
+    }
+
+    /**
+     * Builds the UPDATE statement writing the columns modified since the last load or save
+     *
+     * @return the SQL statement or null if nothing was modified
+     */
+    String updateSql() {
+        if (changes.isEmpty()) {
+            return null;
+        }
+        return SQL.update(changes.columns());
+    }
+
+    /**
+     * Creates the change event of the statement built by updateSql(), before it is committed
+     *
+     * @return the event naming the modified columns
+     */
+    ChangeEvent updateEvent() {
+        return ChangeEvent.updated(TABLE, this.author_id, changes.columns());
+    }
+
+    /**
+     * Retrieves the parameters of the statement built by updateSql()
+     *
+     * @return the new values of the modified columns followed by the id
+     */
+    Object[] updateParams() {
+        return changes.parameters(this.author_id);
+    }
+
+    /**
+     * Forgets the recorded modifications and drops the cached copy, called once a write was committed
+     */
+    void afterWrite() {
+        changes.clear();
+        CACHE.invalidate(this.author_id);
+        CatalogueSnapshot.changed(CatalogueSnapshot.AUTHOR, this.author_id);
+    }
+
+    /**
+     * Catches up with a journaled write of an author once the write journal replayed it
+     * The modified columns are not journaled, the event of a replayed update names every column
+     *
+     * @param author_id the id of the author
+     * @param sql the statement that was replayed
+     * @throws SQLException if a database access error occurs
+     */
+    static void replayed(int author_id, String sql) throws SQLException {
+        CACHE.invalidate(author_id);
+        CatalogueSnapshot.changed(CatalogueSnapshot.AUTHOR, author_id);
+        if (sql.equals(DELETE_SQL)) {
+            ChangeBus.publish(ChangeEvent.deleted(TABLE, author_id));
+        } else {
+            ChangeBus.publish(sql.equals(INSERT_SQL) ? ChangeEvent.inserted(TABLE, author_id) :
+                    ChangeEvent.updated(TABLE, author_id, SQL.columns()));
+        }
+    }
+
+    /**
+     * Sets the date added of an author about to be inserted
+     *
+     * @param now the date and time the author is stored
+     */
+    void stamp(OffsetDateTime now) {
+        this.date_added = now;
+    }
+
+    /**
+     * Retrieves the parameters of INSERT_SQL for this author
+     *
+     * @return the values to insert, in column order
+     */
+    Object[] insertParams() {
+        return new Object[]{this.first_name, this.last_name, this.date_added};
+    }
+
     /**
      * Save the changes made to the author in the database
+     * Only the columns modified since the last load or save are written
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String saveChanges() {
-        String sql = "UPDATE public.author SET " +
-                "first_name = ?, " +
-                "last_name = ? " +
-                "WHERE author_id = ?";
+
+        // Skip the round trip if no setter was called since the last load or save
+        if (changes.isEmpty()) {
+            return "0";
+        }
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.author_id < 0) {
+            return "The author is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.author_id, updateSql(), updateParams());
+            }
+
             // Use executeUpdate() method from DBUtil to save the changes in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.first_name,
-                    this.last_name, this.author_id));
+            int rows = DBUtil.executeUpdate(updateSql(), DBUtil.getURL(), updateParams());
+            if (rows > 0) ChangeBus.publish(updateEvent());
+            changes.clear();
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.author_id, updateSql(), updateParams());
+        } finally {
+
+            // Drop the cached copy so the next lookup reads the stored row
+            CACHE.invalidate(this.author_id);
+            CatalogueSnapshot.changed(CatalogueSnapshot.AUTHOR, this.author_id);
         }
     }
 
+    /**
+     * Save the changes made to the author in the database without blocking the caller. See saveChanges()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> saveChangesAsync() {
+        return DBUtil.supplyAsync(this::saveChanges);
+    }
+
     /**
      * Delete the author from the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String delete() {
-        String sql = "DELETE FROM public.author WHERE author_id = ?";
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.author_id < 0) {
+            return "The author is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.author_id, DELETE_SQL, this.author_id);
+            }
+
             // Use executeUpdate() method from DBUtil to delete the author from the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.author_id));
+            int rows = DBUtil.executeUpdate(DELETE_SQL, DBUtil.getURL(), this.author_id);
+            if (rows > 0) ChangeBus.publish(ChangeEvent.deleted(TABLE, this.author_id));
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.author_id, DELETE_SQL, this.author_id);
+        } finally {
+
+            // Drop the cached copy so the next lookup reads the stored row
+            CACHE.invalidate(this.author_id);
+            CatalogueSnapshot.changed(CatalogueSnapshot.AUTHOR, this.author_id);
         }
     }
 
+    /**
+     * Delete the author from the database without blocking the caller. See delete()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> deleteAsync() {
+        return DBUtil.supplyAsync(this::delete);
+    }
+
+    /**
+     * Retrieves the author with the given id, from the cache if it was read recently
+     * Every call returns its own copy, modifying it does not change the cached one until saveChanges()
+     *
+     * @param author_id the id of the author
+     * @return the author or null if there is none with that id
+     * @throws SQLException if a database access error occurs
+     */
+    public static Author findById(int author_id) throws SQLException {
+        return CACHE.get(author_id, Author::loadById);
+    }
+
+    /**
+     * Retrieves the cache used by findById(), to read its statistics or clear it
+     *
+     * @return the author cache
+     */
+    public static EntityCache<Author> getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Creates a copy of the author with the same values and no unsaved change, for the cache
+     *
+     * @return the copy
+     */
+    private Author copy() {
+        return new Author(author_id, first_name, last_name, date_added);
+    }
+
+    /**
+     * Reads the author with the given id from the database itself, a replica could hand an old row to the cache
+     *
+     * @param author_id the id of the author
+     * @return the author or null if there is none with that id
+     * @throws SQLException if a database access error occurs
+     */
+    private static Author loadById(int author_id) throws SQLException {
+        try (Stream<Author> authors = DBUtil.streamFromPrimary(SELECT_SQL + " WHERE author_id = ?",
+                DBUtil.getURL(), Author::fromResultSet, author_id)) {
+            return authors.findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * Retrieves every author in the database
+     * Rows are read lazily so the whole table is never held in memory
+     *
+     * @return a Stream of the authors, must be closed after use
+     * @throws SQLException if a database access error occurs
+     */
+    public static Stream<Author> findAll() throws SQLException {
+        return DBUtil.stream(SELECT_SQL + " ORDER BY author_id", DBUtil.getURL(), Author::fromResultSet);
+    }
+
+    /**
+     * Creates an author from the current row of a ResultSet read with SELECT_SQL
+     *
+     * @param rs the ResultSet positioned on the row
+     * @return the author
+     * @throws SQLException if a database access error occurs
+     */
+    static Author fromResultSet(ResultSet rs) throws SQLException {
+        return new Author(rs.getInt("author_id"), rs.getString("first_name"), rs.getString("last_name"),
+                rs.getObject("date_added", OffsetDateTime.class));
+    }
+
     /**
      * Returns a string representation of the author
      *
@@ -0,0 +1,267 @@
+package model;
+
+import Util.DBUtil;
+import Util.IntIntMap;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps in memory which books are currently on loan and who holds them
+ * Loaded once with load() and kept current by Borrow.addToDatabase(), returnBook(),
+ * saveChanges() and delete(), so availability checks never go to the database
+ */
+public class AvailabilityIndex {
+
+    private static final int NONE = -1;
+
+    // Open loans, guarded by LOCK
+    private static Loans loans = new Loans();
+
+    // Changes made while load() reads the database, replayed on the new index, null when not loading
+    private static List<int[]> pending;
+
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+    private static final Object LOAD_LOCK = new Object();
+    private static volatile boolean loaded;
+
+    private AvailabilityIndex() {
+    }
+
+    /**
+     * Reads every open loan from the database with a single streaming query and replaces the index
+     * Loans opened or closed while the query runs are applied to the new index before it is used
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    public static void load() throws SQLException {
+        synchronized (LOAD_LOCK) {
+            LOCK.writeLock().lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                LOCK.writeLock().unlock();
+            }
+
+            Loans newLoans = new Loans();
+            try {
+                try (Stream<int[]> rows = DBUtil.streamFromPrimary("SELECT borrowing_id, book_id, user_id FROM " +
+                                Borrow.SQL.table() + " WHERE actual_return_date IS NULL", DBUtil.getURL(),
+                        rs -> new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3)})) {
+                    rows.forEach(loan -> newLoans.add(loan[0], loan[1], loan[2]));
+                }
+            } catch (SQLException | RuntimeException ex) {
+                LOCK.writeLock().lock();
+                try {
+                    pending = null;
+                } finally {
+                    LOCK.writeLock().unlock();
+                }
+                throw ex;
+            }
+
+            LOCK.writeLock().lock();
+            try {
+
+                // The query may or may not have seen these changes, replaying them gives the same result either way
+                for (int[] change : pending) {
+                    newLoans.remove(change[0]);
+                    if (change[1] != NONE) newLoans.add(change[0], change[1], change[2]);
+                }
+                pending = null;
+                loans = newLoans;
+                loaded = true;
+            } finally {
+                LOCK.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Checks whether load() was called
+     *
+     * @return true if the index reflects the database, otherwise false
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Checks whether a book can be borrowed
+     *
+     * @param book_id the id of the book
+     * @return true if the book is not on loan, otherwise false
+     */
+    public static boolean isAvailable(int book_id) {
+        LOCK.readLock().lock();
+        try {
+            return book_id < 0 || !loans.onLoan.get(book_id);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the user currently holding a book
+     *
+     * @param book_id the id of the book
+     * @return the id of the user or -1 if the book is not on loan
+     */
+    public static int getHolder(int book_id) {
+        LOCK.readLock().lock();
+        try {
+            return loans.holder(book_id);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the books a user currently holds
+     *
+     * @param user_id the id of the user
+     * @return the ids of the books, once per open loan, empty if the user holds none
+     */
+    public static int[] getBooksHeldBy(int user_id) {
+        LOCK.readLock().lock();
+        try {
+            int[] books = new int[4];
+            int count = 0;
+            for (int loan = loans.firstLoan.get(user_id, NONE); loan != NONE; loan = loans.nextLoan.get(loan, NONE)) {
+                if (count == books.length) books = Arrays.copyOf(books, count * 2);
+                books[count++] = loans.loanBook.get(loan, NONE);
+            }
+            return Arrays.copyOf(books, count);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of open loans
+     *
+     * @return the number of books on loan
+     */
+    public static int getLoanCount() {
+        LOCK.readLock().lock();
+        try {
+            return loans.loanBook.size();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records that a loan is open, replacing what was known about it
+     *
+     * @param borrowing_id the id of the borrow object
+     * @param book_id the id of the borrowed book
+     * @param user_id the id of the user holding the book
+     */
+    static void opened(int borrowing_id, int book_id, int user_id) {
+        LOCK.writeLock().lock();
+        try {
+            loans.remove(borrowing_id);
+            loans.add(borrowing_id, book_id, user_id);
+            if (pending != null) pending.add(new int[]{borrowing_id, book_id, user_id});
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records that a loan ended because the book was returned or the loan deleted
+     *
+     * @param borrowing_id the id of the borrow object
+     */
+    static void closed(int borrowing_id) {
+        LOCK.writeLock().lock();
+        try {
+            loans.remove(borrowing_id);
+            if (pending != null) pending.add(new int[]{borrowing_id, NONE, NONE});
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The open loans, with the loans of each user and of each book as linked lists of borrowing ids
+     * Keying the lists by loan keeps two loans of the same book, or of a book moving between users, apart
+     */
+    private static final class Loans {
+        final BitSet onLoan = new BitSet();
+        final IntIntMap loanBook = new IntIntMap();
+        final IntIntMap loanUser = new IntIntMap();
+
+        // First loan of each user, then next loan of the same user
+        final IntIntMap firstLoan = new IntIntMap();
+        final IntIntMap nextLoan = new IntIntMap();
+
+        // Latest loan of each book, its user is the holder, then the loan of the same book opened before
+        final IntIntMap firstBookLoan = new IntIntMap();
+        final IntIntMap nextBookLoan = new IntIntMap();
+
+        int holder(int book_id) {
+            int loan = firstBookLoan.get(book_id, NONE);
+            return (loan == NONE) ? NONE : loanUser.get(loan, NONE);
+        }
+
+        void add(int borrowing_id, int book_id, int user_id) {
+            if (book_id < 0) {
+                return;
+            }
+            onLoan.set(book_id);
+            loanBook.put(borrowing_id, book_id);
+            loanUser.put(borrowing_id, user_id);
+            nextLoan.put(borrowing_id, firstLoan.get(user_id, NONE));
+            firstLoan.put(user_id, borrowing_id);
+            nextBookLoan.put(borrowing_id, firstBookLoan.get(book_id, NONE));
+            firstBookLoan.put(book_id, borrowing_id);
+        }
+
+        void remove(int borrowing_id) {
+            int book = loanBook.get(borrowing_id, NONE);
+            if (book == NONE) {
+                return;
+            }
+            int user = loanUser.get(borrowing_id, NONE);
+            loanBook.remove(borrowing_id);
+            loanUser.remove(borrowing_id);
+            unlink(firstLoan, nextLoan, user, borrowing_id);
+
+            // The book stays on loan while another open loan holds it, the holder is then that loan's user
+            unlink(firstBookLoan, nextBookLoan, book, borrowing_id);
+            if (!firstBookLoan.containsKey(book)) {
+                onLoan.clear(book);
+            }
+        }
+
+        /**
+         * Removes a loan from the list of its user or book, a user or book only has a few open loans
+         */
+        private static void unlink(IntIntMap first, IntIntMap next, int owner, int borrowing_id) {
+            int following = next.get(borrowing_id, NONE);
+            next.remove(borrowing_id);
+            int current = first.get(owner, NONE);
+            if (current == borrowing_id) {
+                if (following == NONE) first.remove(owner);
+                else first.put(owner, following);
+                return;
+            }
+            while (current != NONE) {
+                int after = next.get(current, NONE);
+                if (after == borrowing_id) {
+                    if (following == NONE) next.remove(current);
+                    else next.put(current, following);
+                    return;
+                }
+                current = after;
+            }
+        }
+    }
+}
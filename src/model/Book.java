@@ -1,17 +1,59 @@
 package model;
 
+import Util.BulkLoader;
 import Util.DBUtil;
 import Util.DateTimeUtil;
+import Util.EntityCache;
+import Util.Page;
+import Util.TableSql;
+import Util.WriteJournal;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Represents a Book
  */
 public class Book {
 
+    // Name of the table, used in change events
+    static final String TABLE = "book";
+
+    // Columns generated by the database on insert
+    static final String[] KEY_COLUMNS = {"book_id", "date_added"};
+
+    // Statements of the table, generated once for the dialect of the configured database
+    static final TableSql SQL = new TableSql(DBUtil.getDialect(), TABLE, "book_id", "title", "description",
+            "number_of_pages", "date_added", "genre", "author_id");
+
+    // SQL used to insert a book
+    static final String INSERT_SQL = SQL.insert();
+
+    // SQL used to read books, filters are appended by the finders
+    static final String SELECT_SQL = SQL.select();
+
+    // SQL used to delete a book
+    static final String DELETE_SQL = SQL.delete();
+
+    // Read-through cache used by findById()
+    private static final EntityCache<Book> CACHE = new EntityCache<>(10_000, Duration.ofMinutes(10),
+            Book::copy);
+
+    // Replayed writes of the write journal reach the caches, indexes and change listeners
+    static {
+        JournalReplay.register();
+    }
+
     // Attributes of a book object
-    private final int book_id;
+    private int book_id;
     private String title;
     private String description;
     private int number_of_pages;
@@ -19,6 +61,9 @@ public class Book {
     private String genre;
     private int author_id;
 
+    // Columns modified by the setters since the last load or save
+    private final ChangeTracker changes = new ChangeTracker();
+
     /**
      * Instantiates a Book object with all properties set to parameters
      *
@@ -44,7 +89,7 @@ public class Book {
     /**
      * Instantiates a Book object with minimum parameters to create a new book
      * Sets book_id to -1 as dummy data
-     * book_id is set automatically by the database
+     * book_id is set automatically by the database and filled in by addToDatabase()
      * date_added is set to null, will be the date and time it actually gets stored in the database
      *
      * @param title title of the new book
@@ -83,6 +128,7 @@ public class Book {
      */
     public void setTitle(String title) {
         this.title = title;
+        changes.record("title", title);
     }
 
     /**
@@ -101,6 +147,7 @@ public class Book {
      */
     public void setDescription(String description) {
         this.description = description;
+        changes.record("description", description);
     }
 
     /**
@@ -119,6 +166,7 @@ public class Book {
      */
     public void setNumber_of_pages(int number_of_pages) {
         this.number_of_pages = number_of_pages;
+        changes.record("number_of_pages", number_of_pages);
     }
 
     /**
@@ -146,6 +194,7 @@ public class Book {
      */
     public void setGenre(String genre) {
         this.genre = genre;
+        changes.record("genre", genre);
     }
 
     /**
@@ -164,72 +213,465 @@ public class Book {
      */
     public void setAuthor_id(int author_id) {
         this.author_id = author_id;
+        changes.record("author_id", author_id);
     }
 
     /**
      * Adds the book to the database
+     * Sets book_id and date_added to the values stored by the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String addToDatabase() {
-        String sql = "INSERT INTO public.book (title, description, number_of_pages, date_added, " +
-                "genre, author_id) VALUES (?, ?, ?, ?, ?, ?)";
 
         // Set the date added to the current time
         this.date_added = OffsetDateTime.now();
 
         try {
 
-            // Use executeUpdate() method from DBUtil to save the book in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.title,
-                    this.description, this.number_of_pages, this.date_added, this.genre, this.author_id));
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueueInsert(TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+            }
+
+            // Use executeInsert() method from DBUtil to save the book and read back the generated keys
+            Object[] keys = DBUtil.executeInsert(INSERT_SQL, DBUtil.getURL(), KEY_COLUMNS,
+                    insertParams());
+            if (keys == null) {
+                return "0";
+            }
+            applyKeys(keys);
+            changes.clear();
+            ChangeBus.publish(ChangeEvent.inserted(TABLE, this.book_id));
+            reindex();
+            return "1";
+
+        } catch (Exception ex) {
+            return WriteJournal.enqueueInsertIfOffline(ex, TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+        }
+    }
+
+    /**
+     * Adds the book to the database without blocking the caller. See addToDatabase()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> addToDatabaseAsync() {
+        return DBUtil.supplyAsync(this::addToDatabase);
+    }
+
+    /**
+     * Adds many books to the database using batched inserts
+     * Every book in a chunk is committed together and gets its generated book_id and date_added
+     *
+     * @param books the books to add
+     * @return the number of rows affected or the error message if any occurs
+     */
+    public static String addAllToDatabase(Collection<Book> books) {
+        List<Object[]> rows = new ArrayList<>(books.size());
+
+        // Set the date added of every book to the current time
+        OffsetDateTime now = OffsetDateTime.now();
+        for (Book book : books) {
+            book.date_added = now;
+            rows.add(book.insertParams());
+        }
+
+        try {
+
+            // Use executeInsertRows() method from DBUtil to save the books in the database
+            List<Object[]> keys = DBUtil.executeInsertRows(SQL, DBUtil.getURL(), rows, KEY_COLUMNS);
+
+            // Keys come back in the order the rows were inserted
+            Iterator<Object[]> iterator = keys.iterator();
+            for (Book book : books) {
+                if (!iterator.hasNext()) break;
+                book.applyKeys(iterator.next());
+                book.changes.clear();
+                ChangeBus.publish(ChangeEvent.inserted(TABLE, book.book_id));
+                book.reindex();
+            }
+            return String.valueOf(keys.size());
+
+        } catch (Exception ex) {
+            return ex.getMessage();
+        }
+    }
+
+    /**
+     * Loads many books at once, streaming them into COPY on PostgreSQL, see BulkLoader
+     * Books without a date added get the current time. The new rows are then read back, so the built indexes,
+     * the catalogue snapshot and the change listeners learn about them, see imported()
+     *
+     * @param books the books to load, must be closed by the caller
+     * @param chunkRows the number of books committed together
+     * @param listener told about the outcome of every chunk or null to only print the errors
+     * @return the number of rows loaded or the error message if any occurs
+     */
+    public static String importAll(Stream<Book> books, int chunkRows, BulkLoader.ChunkListener listener) {
+        OffsetDateTime now = OffsetDateTime.now();
+        Iterator<Object[]> rows = books.map(book -> {
+            if (book.date_added == null) book.date_added = now;
+            return book.insertParams();
+        }).iterator();
+
+        try {
+            int lastId = lastId();
+            long loaded = BulkLoader.load(SQL, DBUtil.getURL(), rows, chunkRows, listener);
+            imported(lastId);
+            return String.valueOf(loaded);
 
         } catch (Exception ex) {
             return ex.getMessage();
         }
     }
 
+    /**
+     * Reports the books loaded by importAll() to the built indexes, the catalogue snapshot and the change listeners
+     * COPY does not return the generated ids, the new rows are the ones after the last id stored before the
+     * import. A book inserted by another writer while the import runs is reported a second time.
+     *
+     * @param lastId the greatest book_id stored before the import
+     * @throws SQLException if a database access error occurs
+     */
+    private static void imported(int lastId) throws SQLException {
+        boolean searchIndexed = BookSearchIndex.size() > 0;
+        boolean attributesIndexed = BookAttributeIndex.isLoaded();
+        try (Stream<Book> books = DBUtil.streamFromPrimary(SELECT_SQL + " WHERE book_id > ? ORDER BY book_id",
+                DBUtil.getURL(), Book::fromResultSet, lastId)) {
+            books.forEach(book -> {
+                if (searchIndexed) BookSearchIndex.index(book);
+                if (attributesIndexed) BookAttributeIndex.index(book);
+                CatalogueSnapshot.changed(CatalogueSnapshot.BOOK, book.book_id);
+                ChangeBus.publish(ChangeEvent.inserted(TABLE, book.book_id));
+            });
+        }
+    }
+
+    /**
+     * Reads the greatest book_id stored
+     *
+     * @return the id or 0 if the table is empty
+     * @throws SQLException if a database access error occurs
+     */
+    private static int lastId() throws SQLException {
+        try (Stream<Integer> ids = DBUtil.streamFromPrimary("SELECT MAX(book_id) FROM " + SQL.table(),
+                DBUtil.getURL(), rs -> rs.getInt(1))) {
+            return ids.findFirst().orElse(0);
+        }
+    }
+
+    /**
+     * Sets the book_id and date_added generated by the database
+     *
+     * @param keys the values of KEY_COLUMNS returned by the database
+     */
+    void applyKeys(Object[] keys) {
+        this.book_id = ((Number) keys[0]).intValue();
+        if (keys[1] != null) {
+            this.date_added = DateTimeUtil.fromSqlValue(keys[1]);
+        }
+    }
+
+    /**
+     * Builds the UPDATE statement writing the columns modified since the last load or save
+     *
+     * @return the SQL statement or null if nothing was modified
+     */
+    String updateSql() {
+        if (changes.isEmpty()) {
+            return null;
+        }
+        return SQL.update(changes.columns());
+    }
+
+    /**
+     * Creates the change event of the statement built by updateSql(), before it is committed
+     *
+     * @return the event naming the modified columns
+     */
+    ChangeEvent updateEvent() {
+        return ChangeEvent.updated(TABLE, this.book_id, changes.columns());
+    }
+
+    /**
+     * Retrieves the parameters of the statement built by updateSql()
+     *
+     * @return the new values of the modified columns followed by the id
+     */
+    Object[] updateParams() {
+        return changes.parameters(this.book_id);
+    }
+
+    /**
+     * Forgets the recorded modifications and drops the cached copy, called once a write was committed
+     */
+    void afterWrite() {
+        changes.clear();
+        CACHE.invalidate(this.book_id);
+        CatalogueSnapshot.changed(CatalogueSnapshot.BOOK, this.book_id);
+    }
+
+    /**
+     * Adds the stored version of the book to the search and attribute indexes
+     */
+    void reindex() {
+        BookSearchIndex.index(this);
+        BookAttributeIndex.index(this);
+    }
+
+    /**
+     * Removes the book from the search and attribute indexes, called once it was deleted
+     */
+    void unindex() {
+        BookSearchIndex.remove(this.book_id);
+        BookAttributeIndex.remove(this.book_id);
+    }
+
+    /**
+     * Catches up with a journaled write of a book once the write journal replayed it
+     * The modified columns are not journaled, the event of a replayed update names every column
+     *
+     * @param book_id the id of the book
+     * @param sql the statement that was replayed
+     * @throws SQLException if a database access error occurs
+     */
+    static void replayed(int book_id, String sql) throws SQLException {
+        CACHE.invalidate(book_id);
+        CatalogueSnapshot.changed(CatalogueSnapshot.BOOK, book_id);
+        if (sql.equals(DELETE_SQL)) {
+            BookSearchIndex.remove(book_id);
+            BookAttributeIndex.remove(book_id);
+            ChangeBus.publish(ChangeEvent.deleted(TABLE, book_id));
+            return;
+        }
+
+        // A later journaled delete may already have removed the row, it unindexes the book itself
+        Book stored = loadById(book_id);
+        if (stored != null) stored.reindex();
+        ChangeBus.publish(sql.equals(INSERT_SQL) ? ChangeEvent.inserted(TABLE, book_id) :
+                ChangeEvent.updated(TABLE, book_id, SQL.columns()));
+    }
+
+    /**
+     * Retrieves the ids of the books best matching a query. See BookSearchIndex.search()
+     *
+     * @param query the words to search for, a word ending with * matches every word starting with it
+     * @param limit the maximum number of results
+     * @return the ids of the matching books, best match first
+     */
+    public static int[] search(String query, int limit) {
+        return BookSearchIndex.search(query, limit);
+    }
+
+    /**
+     * Sets the date added of a book about to be inserted
+     *
+     * @param now the date and time the book is stored
+     */
+    void stamp(OffsetDateTime now) {
+        this.date_added = now;
+    }
+
+    /**
+     * Retrieves the parameters of INSERT_SQL for this book
+     *
+     * @return the values to insert, in column order
+     */
+    Object[] insertParams() {
+        return new Object[]{this.title, this.description, this.number_of_pages, this.date_added, this.genre,
+                this.author_id};
+    }
+
     /**
      * Save the changes made to the book in the database
+     * Only the columns modified since the last load or save are written
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String saveChanges() {
-        String sql = "UPDATE public.book SET " +
-                "title = ?, " +
-                "description = ?, " +
-                "number_of_pages = ?, " +
-                "genre = ?, " +
-                "author_id = ? " +
-                "WHERE book_id = ?";
+
+        // Skip the round trip if no setter was called since the last load or save
+        if (changes.isEmpty()) {
+            return "0";
+        }
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.book_id < 0) {
+            return "The book is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.book_id, updateSql(), updateParams());
+            }
+
             // Use executeUpdate() method from DBUtil to save the changes in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.title,
-                    this.description, this.number_of_pages, this.genre, this.author_id, this.book_id));
+            int rows = DBUtil.executeUpdate(updateSql(), DBUtil.getURL(), updateParams());
+            if (rows > 0) ChangeBus.publish(updateEvent());
+            changes.clear();
+            reindex();
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.book_id, updateSql(), updateParams());
+        } finally {
+
+            // Drop the cached copy so the next lookup reads the stored row
+            CACHE.invalidate(this.book_id);
+            CatalogueSnapshot.changed(CatalogueSnapshot.BOOK, this.book_id);
         }
     }
 
+    /**
+     * Save the changes made to the book in the database without blocking the caller. See saveChanges()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> saveChangesAsync() {
+        return DBUtil.supplyAsync(this::saveChanges);
+    }
+
     /**
      * Delete the book from the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String delete() {
-        String sql = "DELETE FROM public.book WHERE book_id = ?";
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.book_id < 0) {
+            return "The book is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.book_id, DELETE_SQL, this.book_id);
+            }
+
             // Use executeUpdate() method from DBUtil to delete the book from the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.book_id));
+            int rows = DBUtil.executeUpdate(DELETE_SQL, DBUtil.getURL(), this.book_id);
+            if (rows > 0) ChangeBus.publish(ChangeEvent.deleted(TABLE, this.book_id));
+            unindex();
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.book_id, DELETE_SQL, this.book_id);
+        } finally {
+
+            // Drop the cached copy so the next lookup reads the stored row
+            CACHE.invalidate(this.book_id);
+            CatalogueSnapshot.changed(CatalogueSnapshot.BOOK, this.book_id);
         }
     }
 
+    /**
+     * Delete the book from the database without blocking the caller. See delete()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> deleteAsync() {
+        return DBUtil.supplyAsync(this::delete);
+    }
+
+    /**
+     * Retrieves the book with the given id, from the cache if it was read recently
+     * Every call returns its own copy, modifying it does not change the cached one until saveChanges()
+     *
+     * @param book_id the id of the book
+     * @return the book or null if there is none with that id
+     * @throws SQLException if a database access error occurs
+     */
+    public static Book findById(int book_id) throws SQLException {
+        return CACHE.get(book_id, Book::loadById);
+    }
+
+    /**
+     * Retrieves the cache used by findById(), to read its statistics or clear it
+     *
+     * @return the book cache
+     */
+    public static EntityCache<Book> getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Creates a copy of the book with the same values and no unsaved change, for the cache
+     *
+     * @return the copy
+     */
+    private Book copy() {
+        return new Book(book_id, title, description, number_of_pages, date_added, genre, author_id);
+    }
+
+    /**
+     * Reads the book with the given id from the database itself, a replica could hand an old row to the cache
+     *
+     * @param book_id the id of the book
+     * @return the book or null if there is none with that id
+     * @throws SQLException if a database access error occurs
+     */
+    private static Book loadById(int book_id) throws SQLException {
+        try (Stream<Book> books = DBUtil.streamFromPrimary(SELECT_SQL + " WHERE book_id = ?",
+                DBUtil.getURL(), Book::fromResultSet, book_id)) {
+            return books.findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * Retrieves every book written by an author
+     *
+     * @param author_id the id of the author
+     * @return a Stream of the books, must be closed after use
+     * @throws SQLException if a database access error occurs
+     */
+    public static Stream<Book> findByAuthor(int author_id) throws SQLException {
+        return DBUtil.stream(SELECT_SQL + " WHERE author_id = ? ORDER BY book_id", DBUtil.getURL(),
+                Book::fromResultSet, author_id);
+    }
+
+    /**
+     * Retrieves every book in the database
+     * Rows are read lazily so the whole table is never held in memory
+     *
+     * @return a Stream of the books, must be closed after use
+     * @throws SQLException if a database access error occurs
+     */
+    public static Stream<Book> findAll() throws SQLException {
+        return DBUtil.stream(SELECT_SQL + " ORDER BY book_id", DBUtil.getURL(), Book::fromResultSet);
+    }
+
+    /**
+     * Retrieves one page of the books ordered by the date they were added then id
+     *
+     * @param token the token of the previous page or null for the first page
+     * @param pageSize the maximum number of books of the page, from 1 to 1000
+     * @return the page
+     * @throws SQLException if a database access error occurs
+     * @throws IllegalArgumentException if the token is not valid or the page size out of range
+     */
+    public static Page<Book> findPage(String token, int pageSize) throws SQLException {
+        return DBUtil.page(SELECT_SQL, "date_added", "book_id", token, pageSize, DBUtil.getURL(),
+                Book::fromResultSet);
+    }
+
+    /**
+     * Creates a book from the current row of a ResultSet read with SELECT_SQL
+     *
+     * @param rs the ResultSet positioned on the row
+     * @return the book
+     * @throws SQLException if a database access error occurs
+     */
+    static Book fromResultSet(ResultSet rs) throws SQLException {
+        return new Book(rs.getInt("book_id"), rs.getString("title"), rs.getString("description"),
+                rs.getInt("number_of_pages"), rs.getObject("date_added", OffsetDateTime.class),
+                rs.getString("genre"), rs.getInt("author_id"));
+    }
+
     /**
      * Returns a string representation of the book
      *
@@ -0,0 +1,281 @@
+package model;
+
+import Util.DBUtil;
+import Util.IntIntMap;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps in memory which books belong to each author and to each genre
+ * Posting lists are bitmaps of book ids, so author AND genre is answered by intersecting
+ * two bitmaps without reading or creating any Book object
+ * Loaded once with load() and kept current by Book.addToDatabase(), saveChanges() and delete()
+ */
+public class BookAttributeIndex {
+
+    private static final int NONE = -1;
+
+    // The index, guarded by LOCK
+    private static Attributes attributes = new Attributes();
+
+    // Books indexed or removed while load() reads the database, replayed on the new index, null when not loading
+    private static List<Change> pending;
+
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+    private static final Object LOAD_LOCK = new Object();
+    private static volatile boolean loaded;
+
+    private BookAttributeIndex() {
+    }
+
+    /**
+     * Reads the author and genre of every book with a single streaming query and replaces the index
+     * Books changed while the query runs are applied to the new index before it is used
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    public static void load() throws SQLException {
+        synchronized (LOAD_LOCK) {
+            LOCK.writeLock().lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                LOCK.writeLock().unlock();
+            }
+
+            Attributes newAttributes = new Attributes();
+            try {
+                try (Stream<Object[]> books = DBUtil.streamFromPrimary("SELECT book_id, author_id, genre FROM " +
+                                Book.SQL.table(), DBUtil.getURL(),
+                        rs -> new Object[]{rs.getInt(1), rs.getInt(2), rs.getString(3)})) {
+                    books.forEach(book -> newAttributes.add((Integer) book[0], (Integer) book[1], (String) book[2]));
+                }
+            } catch (SQLException | RuntimeException ex) {
+                LOCK.writeLock().lock();
+                try {
+                    pending = null;
+                } finally {
+                    LOCK.writeLock().unlock();
+                }
+                throw ex;
+            }
+
+            LOCK.writeLock().lock();
+            try {
+
+                // The query may or may not have seen these changes, replaying them gives the same result either way
+                for (Change change : pending) {
+                    newAttributes.remove(change.book_id);
+                    if (!change.removed) newAttributes.add(change.book_id, change.author_id, change.genre);
+                }
+                pending = null;
+                attributes = newAttributes;
+                loaded = true;
+            } finally {
+                LOCK.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Checks whether load() was called
+     *
+     * @return true if the index reflects the database, otherwise false
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Retrieves the books written by an author
+     *
+     * @param author_id the id of the author
+     * @return the ids of the books in ascending order, empty if there is none
+     */
+    public static int[] getBooksByAuthor(int author_id) {
+        LOCK.readLock().lock();
+        try {
+            BitSet books = attributes.byAuthor.get(author_id);
+            return (books == null) ? new int[0] : books.stream().toArray();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the books of a genre
+     *
+     * @param genre the genre, compared exactly
+     * @return the ids of the books in ascending order, empty if there is none
+     */
+    public static int[] getBooksByGenre(String genre) {
+        LOCK.readLock().lock();
+        try {
+            Integer code = attributes.genreCodes.get(genre);
+            return (code == null) ? new int[0] : attributes.byGenre.get(code).stream().toArray();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the books of a genre written by an author
+     *
+     * @param author_id the id of the author
+     * @param genre the genre, compared exactly
+     * @return the ids of the books in ascending order, empty if there is none
+     */
+    public static int[] getBooksByAuthorAndGenre(int author_id, String genre) {
+        LOCK.readLock().lock();
+        try {
+            BitSet books = attributes.byAuthor.get(author_id);
+            Integer code = attributes.genreCodes.get(genre);
+            if (books == null || code == null) {
+                return new int[0];
+            }
+            BitSet both = (BitSet) books.clone();
+            both.and(attributes.byGenre.get(code));
+            return both.stream().toArray();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the genres having at least one book
+     *
+     * @return the genres, in the order they were first seen
+     */
+    public static List<String> getGenres() {
+        LOCK.readLock().lock();
+        try {
+            List<String> genres = new ArrayList<>();
+            for (int code = 0; code < attributes.genreNames.size(); code++) {
+                if (!attributes.byGenre.get(code).isEmpty()) genres.add(attributes.genreNames.get(code));
+            }
+            return genres;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the stored author and genre of a book, replacing what was known about it
+     *
+     * @param book the book
+     */
+    static void index(Book book) {
+        LOCK.writeLock().lock();
+        try {
+            if (book.getBook_id() < 0) {
+                return;
+            }
+            attributes.remove(book.getBook_id());
+            attributes.add(book.getBook_id(), book.getAuthor_id(), book.getGenre());
+            if (pending != null) {
+                pending.add(new Change(book.getBook_id(), book.getAuthor_id(), book.getGenre(), false));
+            }
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets a book that was deleted
+     *
+     * @param book_id the id of the book
+     */
+    static void remove(int book_id) {
+        LOCK.writeLock().lock();
+        try {
+            attributes.remove(book_id);
+            if (pending != null) pending.add(new Change(book_id, NONE, null, true));
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A book indexed or removed during a load
+     */
+    private static final class Change {
+        final int book_id;
+        final int author_id;
+        final String genre;
+        final boolean removed;
+
+        Change(int book_id, int author_id, String genre, boolean removed) {
+            this.book_id = book_id;
+            this.author_id = author_id;
+            this.genre = genre;
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * The posting lists of the authors and genres and what each book is filed under
+     */
+    private static final class Attributes {
+
+        // Book id -> author id and book id -> genre code, used to move a book when it changes
+        final IntIntMap bookAuthor = new IntIntMap();
+        final IntIntMap bookGenre = new IntIntMap();
+
+        // Author id -> books of the author
+        final Map<Integer, BitSet> byAuthor = new HashMap<>();
+
+        // Genres are interned: each distinct genre gets a code, the index of its name and its books
+        final Map<String, Integer> genreCodes = new HashMap<>();
+        final List<String> genreNames = new ArrayList<>();
+        final List<BitSet> byGenre = new ArrayList<>();
+
+        void add(int book_id, int author_id, String genre) {
+            bookAuthor.put(book_id, author_id);
+            byAuthor.computeIfAbsent(author_id, key -> new BitSet()).set(book_id);
+            if (genre != null) {
+                int code = intern(genre);
+                bookGenre.put(book_id, code);
+                byGenre.get(code).set(book_id);
+            }
+        }
+
+        void remove(int book_id) {
+            if (book_id < 0) {
+                return;
+            }
+            int author = bookAuthor.get(book_id, NONE);
+            if (bookAuthor.remove(book_id)) {
+                BitSet books = byAuthor.get(author);
+                books.clear(book_id);
+                if (books.isEmpty()) byAuthor.remove(author);
+            }
+            int code = bookGenre.get(book_id, NONE);
+            if (code != NONE) {
+                bookGenre.remove(book_id);
+                byGenre.get(code).clear(book_id);
+            }
+        }
+
+        /**
+         * Retrieves the code of a genre, assigning the next one if the genre was never seen
+         * Codes are never reused, the number of genres stays small
+         */
+        private int intern(String genre) {
+            Integer code = genreCodes.get(genre);
+            if (code == null) {
+                code = genreNames.size();
+                genreCodes.put(genre, code);
+                genreNames.add(genre);
+                byGenre.add(new BitSet());
+            }
+            return code;
+        }
+    }
+}
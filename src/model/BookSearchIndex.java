@@ -0,0 +1,887 @@
+package model;
+
+import Util.DBUtil;
+import Util.IntIntMap;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * An in-memory inverted index over the title, description and genre of the books
+ * Results are ranked with BM25 and a query term ending with * matches every term starting with it
+ * The index is kept current by Book.addToDatabase(), saveChanges() and delete()
+ * and can be saved to a segment file that is memory-mapped when loaded again.
+ * The postings of a loaded segment are read in place from the mapping; only the books indexed or removed
+ * since then are held on the heap, and masked in the segment. catchUp() brings a loaded segment up to date:
+ * books added since its watermark are found with date_added, books changed by this process through a change
+ * file written next to the segment while start() is running.
+ */
+public class BookSearchIndex {
+
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Longer tokens are cut, they are almost never searched for
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    // Segment file layout version
+    private static final int MAGIC = 0x424B5349;
+    private static final int VERSION = 2;
+
+    // Header: magic, version, watermark, total length, book count, term count, then the offsets of the
+    // books, terms, postings and term heap sections
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4 * 4;
+
+    // Book record: id, length. Term record: heap offset, byte length, first posting, posting count.
+    // Posting: book id, term frequency. Books are sorted by id and terms by their UTF-8 bytes.
+    private static final int BOOK_RECORD = 4 + 4;
+    private static final int TERM_RECORD = 4 + 4 + 4 + 4;
+    private static final int POSTING = 4 + 4;
+
+    // Books added while the index is built or with a clock ahead of ours are read again by catchUp()
+    private static final long WATERMARK_MARGIN_MILLIS = 60_000;
+
+    // Largest number of ids in one catch-up query
+    private static final int CATCH_UP_CHUNK = 500;
+
+    // Change file entry: book id, time of the change in epoch milliseconds
+    private static final int CHANGE_BYTES = 4 + 8;
+
+    // Time between two writes of the buffered changes to the change file
+    private static final long CHANGE_FLUSH_MILLIS = 1_000;
+
+    // Segment loaded by load(), null if the index was built from the database, guarded by LOCK
+    private static Segment segment;
+
+    // Books of the segment removed or indexed again since it was loaded, guarded by LOCK
+    private static final BitSet MASKED = new BitSet();
+    private static int maskedCount;
+
+    // Term -> (book id -> term frequency) of the books indexed since the segment, sorted so prefix queries
+    // are a range scan
+    private static final TreeMap<String, IntIntMap> POSTINGS = new TreeMap<>();
+
+    // Book id -> distinct terms of the book, used to remove a book before reindexing it
+    private static final Map<Integer, String[]> TERMS_OF_BOOK = new HashMap<>();
+    private static final IntIntMap BOOK_LENGTH = new IntIntMap();
+
+    // Total length of the live books, of the segment and of the heap
+    private static long totalLength;
+
+    // Time in epoch milliseconds the index reflects every book added up to, 0 if never built
+    private static long watermark;
+
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+
+    // Periodic writer and the change file it maintains, guarded by the class lock
+    private static ScheduledExecutorService writer;
+    private static Path changeFile;
+    private static OutputStream changes;
+
+    private BookSearchIndex() {
+    }
+
+    /**
+     * Retrieves the books best matching a query
+     * Every term of the query adds to the score, terms ending with * match by prefix
+     *
+     * @param query the words to search for
+     * @param limit the maximum number of results
+     * @return the ids of the matching books, best match first
+     */
+    public static int[] search(String query, int limit) {
+        List<String> terms = tokenize(query, true);
+        if (terms.isEmpty() || limit < 1) {
+            return new int[0];
+        }
+
+        Map<Integer, Double> scores = new HashMap<>();
+        LOCK.readLock().lock();
+        try {
+            int bookCount = sizeLocked();
+            double averageLength = (bookCount == 0) ? 1 : (double) totalLength / bookCount;
+            for (String term : terms) {
+                if (term.endsWith("*")) {
+                    String prefix = term.substring(0, term.length() - 1);
+
+                    // A term may be both in the segment and on the heap, it is scored once
+                    Set<String> matches = new TreeSet<>(
+                            POSTINGS.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+                    if (segment != null) {
+                        segment.addTermsStartingWith(prefix.getBytes(StandardCharsets.UTF_8), matches);
+                    }
+                    for (String match : matches) {
+                        score(match, bookCount, averageLength, scores);
+                    }
+                } else {
+                    score(term, bookCount, averageLength, scores);
+                }
+            }
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+        // Keep the best results in a min-heap of size limit
+        PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > limit) best.poll();
+        }
+        int[] books = new int[best.size()];
+        for (int i = books.length - 1; i >= 0; i--) {
+            books[i] = best.poll().getKey();
+        }
+        return books;
+    }
+
+    /**
+     * Retrieves the number of indexed books
+     *
+     * @return the number of indexed books
+     */
+    public static int size() {
+        LOCK.readLock().lock();
+        try {
+            return sizeLocked();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the time the index is current up to, saved with the segment
+     *
+     * @return the watermark in epoch milliseconds, 0 if the index was never built or loaded
+     */
+    public static long getWatermark() {
+        LOCK.readLock().lock();
+        try {
+            return watermark;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the index from every book in the database
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    public static void rebuild() throws SQLException {
+        long started = System.currentTimeMillis();
+        clear();
+        try (Stream<Book> books = DBUtil.streamFromPrimary(Book.SELECT_SQL + " ORDER BY book_id", DBUtil.getURL(),
+                Book::fromResultSet)) {
+            books.forEach(BookSearchIndex::add);
+        }
+        LOCK.writeLock().lock();
+        try {
+            watermark = started - WATERMARK_MARGIN_MILLIS;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the index to a segment file, replacing it atomically
+     * The postings are streamed to the file term by term and the header is written last.
+     * Changes older than the new segment are then dropped from the change file.
+     *
+     * @param file the segment file
+     * @throws IOException if the file cannot be written or the segment would exceed 2 GB
+     */
+    public static void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        // Copy the heap, which only holds the books changed since the segment, and write without the lock
+        // so the models are not held up while the segment is streamed to the file
+        long savedWatermark;
+        long savedLength;
+        Segment source;
+        BitSet masked;
+        IntIntMap heapLengths = new IntIntMap();
+        TreeMap<String, IntIntMap> heapTerms = new TreeMap<>();
+        LOCK.readLock().lock();
+        try {
+            savedWatermark = watermark;
+            savedLength = totalLength;
+            source = segment;
+            masked = (BitSet) MASKED.clone();
+            BOOK_LENGTH.forEach(heapLengths::put);
+            for (Map.Entry<String, IntIntMap> entry : POSTINGS.entrySet()) {
+                IntIntMap postings = new IntIntMap(entry.getValue().size());
+                entry.getValue().forEach(postings::put);
+                heapTerms.put(entry.getKey(), postings);
+            }
+        } finally {
+            LOCK.readLock().unlock();
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            out.skip(HEADER_BYTES);
+
+            // Books of both sources are disjoint, a book indexed again is masked in the segment
+            int[] heapBooks = new int[heapLengths.size()];
+            int[] count = new int[1];
+            heapLengths.forEach((book, length) -> heapBooks[count[0]++] = book);
+            Arrays.sort(heapBooks);
+            int booksOffset = offset(out);
+            int bookCount = 0;
+            int segmentBookCount = source == null ? 0 : source.bookCount;
+            int i = 0;
+            int j = 0;
+            while (i < segmentBookCount || j < heapBooks.length) {
+                int segmentBook = i < segmentBookCount ? source.bookId(i) : Integer.MAX_VALUE;
+                if (j < heapBooks.length && heapBooks[j] < segmentBook) {
+                    out.putInt(heapBooks[j]).putInt(heapLengths.get(heapBooks[j], 0));
+                    j++;
+                    bookCount++;
+                } else {
+                    if (!masked.get(segmentBook)) {
+                        out.putInt(segmentBook).putInt(source.bookLength(i));
+                        bookCount++;
+                    }
+                    i++;
+                }
+            }
+
+            // Postings of every term in order, the term records and strings are kept until the postings are done
+            int postingsOffset = offset(out);
+            ByteBuffer termRecords = ByteBuffer.allocate(TERM_RECORD * 1024);
+            ByteArrayOutputStream heap = new ByteArrayOutputStream();
+            int termCount = 0;
+            int postingCount = 0;
+            int segmentTermCount = source == null ? 0 : source.termCount;
+            Map.Entry<String, IntIntMap> heapTerm = heapTerms.firstEntry();
+            i = 0;
+            while (i < segmentTermCount || heapTerm != null) {
+                int segmentTerm = -1;
+                String heapKey = null;
+                IntIntMap heapPostings = null;
+                int order = (i >= segmentTermCount) ? 1 : (heapTerm == null) ? -1
+                        : source.compareTerm(i, heapTerm.getKey().getBytes(StandardCharsets.UTF_8));
+                if (order <= 0) {
+                    segmentTerm = i++;
+                }
+                if (order >= 0) {
+                    heapPostings = heapTerm.getValue();
+                    heapKey = heapTerm.getKey();
+                    heapTerm = heapTerms.higherEntry(heapKey);
+                }
+
+                int first = postingCount;
+                if (segmentTerm >= 0) {
+                    int at = source.firstPosting(segmentTerm);
+                    for (int p = 0; p < source.postingCount(segmentTerm); p++, at += POSTING) {
+                        int book = source.buffer.getInt(at);
+                        if (!masked.get(book)) {
+                            out.putInt(book).putInt(source.buffer.getInt(at + 4));
+                            postingCount++;
+                        }
+                    }
+                }
+                if (heapPostings != null) {
+                    int[] written = new int[1];
+                    heapPostings.forEach((book, frequency) -> {
+                        out.putInt(book).putInt(frequency);
+                        written[0]++;
+                    });
+                    postingCount += written[0];
+                }
+                if (postingCount == first) {
+                    continue;
+                }
+
+                byte[] bytes = segmentTerm >= 0 ? source.termBytes(segmentTerm)
+                        : heapKey.getBytes(StandardCharsets.UTF_8);
+                if (termRecords.remaining() < TERM_RECORD) {
+                    termRecords = ByteBuffer.allocate(termRecords.capacity() * 2).put(termRecords.flip());
+                }
+                termRecords.putInt(heap.size()).putInt(bytes.length).putInt(first).putInt(postingCount - first);
+                heap.write(bytes, 0, bytes.length);
+                termCount++;
+            }
+            int termsOffset = offset(out);
+            out.put(termRecords.array(), 0, termRecords.position());
+            int heapOffset = offset(out);
+            out.put(heap.toByteArray(), 0, heap.size());
+            offset(out);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(savedWatermark).putLong(savedLength)
+                    .putInt(bookCount).putInt(termCount)
+                    .putInt(booksOffset).putInt(termsOffset).putInt(postingsOffset).putInt(heapOffset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        compactChanges(changeFileOf(file), savedWatermark);
+    }
+
+    /**
+     * Replaces the index with a segment file written by save()
+     * The file is memory-mapped and its postings are read from the mapping, a segment holds at most 2 GB
+     *
+     * @param file the segment file
+     * @throws IOException if the file cannot be read or is not a segment file
+     */
+    public static void load(Path file) throws IOException {
+        Segment loaded;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            // The mapping stays valid once the channel is closed
+            loaded = new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        }
+        LOCK.writeLock().lock();
+        try {
+            clearLocked();
+            segment = loaded;
+            totalLength = loaded.totalLength;
+            watermark = loaded.watermark;
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the books added since the watermark and the books this process changed since then
+     * Call it after load() so the index reflects the database
+     *
+     * @param file the segment file the index was loaded from, used to find the change file
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if the change file cannot be read
+     */
+    public static void catchUp(Path file) throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        long since = getWatermark();
+        flushChanges();
+
+        Set<Integer> found = new HashSet<>();
+        read(Book.SELECT_SQL + " WHERE date_added >= ?", found,
+                OffsetDateTime.ofInstant(Instant.ofEpochMilli(since), ZoneOffset.UTC));
+
+        // Books changed or deleted since the watermark are read again by id, the ids not found were deleted
+        Set<Integer> changed = new LinkedHashSet<>();
+        Path changes = changeFileOf(file);
+        if (Files.exists(changes)) {
+            ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(changes));
+            while (entries.remaining() >= CHANGE_BYTES) {
+                int id = entries.getInt();
+                if (entries.getLong() >= since && !found.contains(id)) changed.add(id);
+            }
+        }
+        List<Integer> pending = new ArrayList<>(changed);
+        for (int from = 0; from < pending.size(); from += CATCH_UP_CHUNK) {
+            List<Integer> chunk = pending.subList(from, Math.min(from + CATCH_UP_CHUNK, pending.size()));
+            Set<Integer> read = new HashSet<>();
+            read(Book.SELECT_SQL + " WHERE book_id IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")", read, chunk.toArray());
+            for (int id : chunk) {
+                if (!read.contains(id)) remove(id);
+            }
+        }
+
+        LOCK.writeLock().lock();
+        try {
+            watermark = Math.max(watermark, started - WATERMARK_MARGIN_MILLIS);
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the index periodically and records the books changed by the models in the meantime
+     * Changes are buffered and written to the change file every second, a crash loses at most the last second
+     *
+     * @param file the segment file
+     * @param period the time between two saves
+     * @throws IOException if the change file cannot be opened
+     */
+    public static synchronized void start(Path file, Duration period) throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("BookSearchIndex already started");
+        }
+        changeFile = changeFileOf(file);
+        changes = new BufferedOutputStream(Files.newOutputStream(changeFile, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "BookSearchIndex-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                save(file);
+            } catch (IOException | RuntimeException ex) {
+
+                // Keep the schedule going, the next run may succeed
+                ex.printStackTrace();
+            }
+        }, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+        writer.scheduleWithFixedDelay(BookSearchIndex::flushChanges, CHANGE_FLUSH_MILLIS, CHANGE_FLUSH_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops saving the index and recording changes
+     */
+    public static synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdownNow();
+        writer = null;
+        try {
+            changes.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        changes = null;
+        changeFile = null;
+    }
+
+    /**
+     * Adds a book to the index, replacing its previous version, and records the change
+     *
+     * @param book the book to index
+     */
+    static void index(Book book) {
+        add(book);
+        changed(book.getBook_id());
+    }
+
+    /**
+     * Removes a book from the index and records the change
+     *
+     * @param book_id the id of the book
+     */
+    static void remove(int book_id) {
+        LOCK.writeLock().lock();
+        try {
+            removeLocked(book_id);
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        changed(book_id);
+    }
+
+    /**
+     * Adds a book to the index, replacing its previous version
+     */
+    private static void add(Book book) {
+        List<String> tokens = new ArrayList<>();
+        tokens.addAll(tokenize(book.getTitle(), false));
+        tokens.addAll(tokenize(book.getDescription(), false));
+        tokens.addAll(tokenize(book.getGenre(), false));
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+
+        LOCK.writeLock().lock();
+        try {
+            removeLocked(book.getBook_id());
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                POSTINGS.computeIfAbsent(entry.getKey(), key -> new IntIntMap(4))
+                        .put(book.getBook_id(), entry.getValue());
+            }
+            TERMS_OF_BOOK.put(book.getBook_id(), frequencies.keySet().toArray(new String[0]));
+            BOOK_LENGTH.put(book.getBook_id(), tokens.size());
+            totalLength += tokens.size();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the books read by a catch-up query
+     */
+    private static void read(String sql, Set<Integer> found, Object... params) throws SQLException {
+        try (Stream<Book> books = DBUtil.streamFromPrimary(sql, DBUtil.getURL(), Book::fromResultSet, params)) {
+            books.forEach(book -> {
+                add(book);
+                found.add(book.getBook_id());
+            });
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Records that a book was indexed or removed, ignored unless start() was called
+     * The change is buffered, flushChanges() writes it
+     */
+    private static synchronized void changed(int book_id) {
+        if (changes == null) {
+            return;
+        }
+        try {
+            changes.write(ByteBuffer.allocate(CHANGE_BYTES).putInt(book_id).putLong(System.currentTimeMillis())
+                    .array());
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the buffered changes to the change file, done by the periodic writer
+     */
+    private static synchronized void flushChanges() {
+        if (changes == null) {
+            return;
+        }
+        try {
+            changes.flush();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Retrieves the position of a segment being written, as the int offsets of the format
+     */
+    private static int offset(ChannelWriter out) throws IOException {
+        if (out.position() > Integer.MAX_VALUE) {
+            throw new IOException("Book search segment larger than 2 GB");
+        }
+        return (int) out.position();
+    }
+
+    private static Path changeFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".changes");
+    }
+
+    /**
+     * Drops the changes older than a saved segment from the change file
+     */
+    private static synchronized void compactChanges(Path file, long watermark) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        if (changes != null && file.equals(changeFile)) {
+            changes.flush();
+        }
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(file));
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        byte[] entry = new byte[CHANGE_BYTES];
+        while (entries.remaining() >= CHANGE_BYTES) {
+            entries.get(entry);
+            if (ByteBuffer.wrap(entry).getLong(4) >= watermark) {
+                kept.write(entry);
+            }
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, kept.toByteArray());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Appends must go to the new file
+        if (changes != null && file.equals(changeFile)) {
+            changes.close();
+            changes = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND));
+        }
+    }
+
+    private static int sizeLocked() {
+        int segmentBooks = (segment == null) ? 0 : segment.bookCount - maskedCount;
+        return segmentBooks + BOOK_LENGTH.size();
+    }
+
+    private static void clear() {
+        LOCK.writeLock().lock();
+        try {
+            clearLocked();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    private static void clearLocked() {
+        segment = null;
+        MASKED.clear();
+        maskedCount = 0;
+        POSTINGS.clear();
+        TERMS_OF_BOOK.clear();
+        BOOK_LENGTH.clear();
+        totalLength = 0;
+        watermark = 0;
+    }
+
+    private static void removeLocked(int book_id) {
+        String[] terms = TERMS_OF_BOOK.remove(book_id);
+        if (terms != null) {
+            for (String term : terms) {
+                IntIntMap postings = POSTINGS.get(term);
+                if (postings != null) {
+                    postings.remove(book_id);
+                    if (postings.size() == 0) POSTINGS.remove(term);
+                }
+            }
+            totalLength -= BOOK_LENGTH.get(book_id, 0);
+            BOOK_LENGTH.remove(book_id);
+            return;
+        }
+
+        // Only a book still live in the segment is masked, once
+        if (segment != null && book_id >= 0 && !MASKED.get(book_id)) {
+            int index = segment.findBook(book_id);
+            if (index >= 0) {
+                MASKED.set(book_id);
+                maskedCount++;
+                totalLength -= segment.bookLength(index);
+            }
+        }
+    }
+
+    /**
+     * Adds the BM25 score of one term to the score of every book containing it
+     */
+    private static void score(String term, int bookCount, double averageLength, Map<Integer, Double> scores) {
+        IntIntMap heapPostings = POSTINGS.get(term);
+        int segmentTerm = (segment == null) ? -1 : segment.findTerm(term.getBytes(StandardCharsets.UTF_8));
+
+        // Masked books of the segment do not count towards the document frequency
+        int documentFrequency = (heapPostings == null) ? 0 : heapPostings.size();
+        if (segmentTerm >= 0) {
+            int at = segment.firstPosting(segmentTerm);
+            for (int p = 0; p < segment.postingCount(segmentTerm); p++, at += POSTING) {
+                if (maskedCount == 0 || !MASKED.get(segment.buffer.getInt(at))) documentFrequency++;
+            }
+        }
+        if (documentFrequency == 0) {
+            return;
+        }
+        double idf = Math.log(1 + (bookCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+        if (segmentTerm >= 0) {
+            int at = segment.firstPosting(segmentTerm);
+            for (int p = 0; p < segment.postingCount(segmentTerm); p++, at += POSTING) {
+                int book = segment.buffer.getInt(at);
+                if (maskedCount == 0 || !MASKED.get(book)) {
+                    int index = segment.findBook(book);
+                    score(book, segment.buffer.getInt(at + 4), segment.bookLength(index), idf, averageLength, scores);
+                }
+            }
+        }
+        if (heapPostings != null) {
+            heapPostings.forEach((book, frequency) ->
+                    score(book, frequency, BOOK_LENGTH.get(book, 0), idf, averageLength, scores));
+        }
+    }
+
+    private static void score(int book, int frequency, double length, double idf, double averageLength,
+                              Map<Integer, Double> scores) {
+        double score = idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+        scores.merge(book, score, Double::sum);
+    }
+
+    /**
+     * Splits text into lower case words made of letters and digits
+     *
+     * @param text the text to split, may be null
+     * @param keepWildcard true to keep a * ending a word, used for queries
+     * @return the words in order, repeated words included
+     */
+    private static List<String> tokenize(String text, boolean keepWildcard) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                int end = Math.min(i, start + MAX_TOKEN_LENGTH);
+                boolean wildcard = keepWildcard && i < lower.length() && lower.charAt(i) == '*';
+                tokens.add(lower.substring(start, end) + (wildcard ? "*" : ""));
+                start = -1;
+            }
+        }
+        if (keepWildcard) {
+
+            // Only count each query term once
+            Set<String> distinct = new LinkedHashSet<>(tokens);
+            return new ArrayList<>(distinct);
+        }
+        return tokens;
+    }
+
+    /**
+     * A segment file mapped in memory, read in place with absolute gets so readers can share it
+     * Tokens hold no surrogate characters, so the UTF-8 byte order of the terms is their String order.
+     */
+    private static final class Segment {
+        final MappedByteBuffer buffer;
+        final long watermark;
+        final long totalLength;
+        final int bookCount;
+        final int termCount;
+        final int booksOffset;
+        final int termsOffset;
+        final int postingsOffset;
+        final int heapOffset;
+
+        Segment(MappedByteBuffer buffer, Path file) throws IOException {
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a book search segment: " + file);
+            }
+            this.buffer = buffer;
+            this.watermark = buffer.getLong(8);
+            this.totalLength = buffer.getLong(16);
+            this.bookCount = buffer.getInt(24);
+            this.termCount = buffer.getInt(28);
+            this.booksOffset = buffer.getInt(32);
+            this.termsOffset = buffer.getInt(36);
+            this.postingsOffset = buffer.getInt(40);
+            this.heapOffset = buffer.getInt(44);
+        }
+
+        int bookId(int index) {
+            return buffer.getInt(booksOffset + index * BOOK_RECORD);
+        }
+
+        int bookLength(int index) {
+            return buffer.getInt(booksOffset + index * BOOK_RECORD + 4);
+        }
+
+        /**
+         * Finds a book by id
+         *
+         * @return the index of the book or -1 if the segment does not hold it
+         */
+        int findBook(int book_id) {
+            int low = 0;
+            int high = bookCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int middleId = bookId(middle);
+                if (middleId < book_id) low = middle + 1;
+                else if (middleId > book_id) high = middle - 1;
+                else return middle;
+            }
+            return -1;
+        }
+
+        int firstPosting(int term) {
+            return postingsOffset + buffer.getInt(termsOffset + term * TERM_RECORD + 8) * POSTING;
+        }
+
+        int postingCount(int term) {
+            return buffer.getInt(termsOffset + term * TERM_RECORD + 12);
+        }
+
+        byte[] termBytes(int term) {
+            int at = termsOffset + term * TERM_RECORD;
+            byte[] bytes = new byte[buffer.getInt(at + 4)];
+            buffer.get(heapOffset + buffer.getInt(at), bytes);
+            return bytes;
+        }
+
+        /**
+         * Compares the bytes of a term of the segment with other bytes, as unsigned bytes
+         *
+         * @param prefixOnly true to only compare the first other.length bytes
+         */
+        int compareTerm(int term, byte[] other, boolean prefixOnly) {
+            int at = termsOffset + term * TERM_RECORD;
+            int from = heapOffset + buffer.getInt(at);
+            int length = buffer.getInt(at + 4);
+            int common = Math.min(length, other.length);
+            for (int i = 0; i < common; i++) {
+                int difference = (buffer.get(from + i) & 0xFF) - (other[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            if (prefixOnly && length >= other.length) {
+                return 0;
+            }
+            return length - other.length;
+        }
+
+        int compareTerm(int term, byte[] other) {
+            return compareTerm(term, other, false);
+        }
+
+        /**
+         * Finds the first term not before some bytes
+         *
+         * @return the index of the term, termCount if every term is before
+         */
+        int lowerBound(byte[] bytes) {
+            int low = 0;
+            int high = termCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareTerm(middle, bytes) < 0) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        /**
+         * Finds a term
+         *
+         * @return the index of the term or -1 if the segment does not hold it
+         */
+        int findTerm(byte[] bytes) {
+            int index = lowerBound(bytes);
+            return (index < termCount && compareTerm(index, bytes) == 0) ? index : -1;
+        }
+
+        void addTermsStartingWith(byte[] prefix, Set<String> terms) {
+            for (int i = lowerBound(prefix); i < termCount && compareTerm(i, prefix, true) == 0; i++) {
+                terms.add(new String(termBytes(i), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -2,22 +2,61 @@ package model;
 
 import Util.DBUtil;
 import Util.DateTimeUtil;
+import Util.Page;
+import Util.TableSql;
+import Util.WriteJournal;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Embodies the action of a user borrowing a book
  */
 public class Borrow {
 
+    // Name of the table, used in change events
+    static final String TABLE = "borrow";
+
+    // Columns generated by the database on insert
+    static final String[] KEY_COLUMNS = {"borrowing_id", "borrowing_date"};
+
+    // Statements of the table, generated once for the dialect of the configured database
+    static final TableSql SQL = new TableSql(DBUtil.getDialect(), TABLE, "borrowing_id",
+            new String[]{"book_id", "user_id", "borrowing_date", "expected_return_date"}, "actual_return_date");
+
+    // SQL used to insert a borrow object
+    static final String INSERT_SQL = SQL.insert();
+
+    // SQL used to read borrow objects, filters are appended by the finders
+    static final String SELECT_SQL = SQL.select();
+
+    // SQL used to delete a borrow object
+    static final String DELETE_SQL = SQL.delete();
+
+    // Replayed writes of the write journal reach the caches, indexes and change listeners
+    static {
+        JournalReplay.register();
+    }
+
     // Attributes of a borrow object
-    private final int borrowing_id;
+    private int borrowing_id;
     private int book_id;
     private int user_id;
     private OffsetDateTime borrowing_date;
     private OffsetDateTime expected_return_date;
     private OffsetDateTime actual_return_date;
 
+    // Columns modified by the setters since the last load or save
+    private final ChangeTracker changes = new ChangeTracker();
+
     /**
      * Instantiates a Borrow object with all properties set to parameters
      *
@@ -41,7 +80,7 @@ public class Borrow {
     /**
      * Instantiates a Borrow object with minimum parameters to create a new borrow
      * Sets borrowing_id to -1 as dummy data
-     * borrowing_id is set automatically by the database
+     * borrowing_id is set automatically by the database and filled in by addToDatabase()
      * borrowing_date is set to null, will be the date and time it actually gets stored in the database
      * actual_return_date is set to null, will be the date and time it actually gets returned
      *
@@ -79,6 +118,7 @@ public class Borrow {
      */
     public void setBook_id(int book_id) {
         this.book_id = book_id;
+        changes.record("book_id", book_id);
     }
 
     /**
@@ -97,6 +137,7 @@ public class Borrow {
      */
     public void setUser_id(int user_id) {
         this.user_id = user_id;
+        changes.record("user_id", user_id);
     }
 
     /**
@@ -124,6 +165,7 @@ public class Borrow {
      */
     public void setExpected_return_date(OffsetDateTime expected_return_date) {
         this.expected_return_date = expected_return_date;
+        changes.record("expected_return_date", expected_return_date);
     }
 
     /**
@@ -137,85 +179,409 @@ public class Borrow {
 
     /**
      * Adds the borrow object to the database
+     * Sets borrowing_id and borrowing_date to the values stored by the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String addToDatabase() {
-        String sql = "INSERT INTO public.borrow (book_id, user_id, borrowing_date, " +
-                "expected_return_date) VALUES (?, ?, ?, ?)";
 
         // Set the date added to the current time
         this.borrowing_date = OffsetDateTime.now();
 
         try {
 
-            // Use executeUpdate() method from DBUtil to save the borrow object in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.book_id,
-                    this.user_id, this.borrowing_date, this.expected_return_date));
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueueInsert(TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+            }
+
+            // Use executeInsert() method from DBUtil to save the borrow object and read back the generated keys
+            Object[] keys = DBUtil.executeInsert(INSERT_SQL, DBUtil.getURL(), KEY_COLUMNS,
+                    insertParams());
+            if (keys == null) {
+                return "0";
+            }
+            applyKeys(keys);
+            changes.clear();
+            ChangeBus.publish(ChangeEvent.inserted(TABLE, this.borrowing_id));
+            loanOpened();
+            return "1";
+
+        } catch (Exception ex) {
+            return WriteJournal.enqueueInsertIfOffline(ex, TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+        }
+    }
+
+    /**
+     * Adds the borrow object to the database without blocking the caller. See addToDatabase()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> addToDatabaseAsync() {
+        return DBUtil.supplyAsync(this::addToDatabase);
+    }
+
+    /**
+     * Adds many borrows to the database using batched inserts
+     * Every borrow object in a chunk is committed together and gets its generated borrowing_id and borrowing_date
+     *
+     * @param borrows the borrows to add
+     * @return the number of rows affected or the error message if any occurs
+     */
+    public static String addAllToDatabase(Collection<Borrow> borrows) {
+        List<Object[]> rows = new ArrayList<>(borrows.size());
+
+        // Set the borrowing date of every borrow object to the current time
+        OffsetDateTime now = OffsetDateTime.now();
+        for (Borrow borrow : borrows) {
+            borrow.borrowing_date = now;
+            rows.add(borrow.insertParams());
+        }
+
+        try {
+
+            // Use executeInsertRows() method from DBUtil to save the borrows in the database
+            List<Object[]> keys = DBUtil.executeInsertRows(SQL, DBUtil.getURL(), rows, KEY_COLUMNS);
+
+            // Keys come back in the order the rows were inserted
+            Iterator<Object[]> iterator = keys.iterator();
+            for (Borrow borrow : borrows) {
+                if (!iterator.hasNext()) break;
+                borrow.applyKeys(iterator.next());
+                borrow.changes.clear();
+                ChangeBus.publish(ChangeEvent.inserted(TABLE, borrow.borrowing_id));
+                borrow.loanOpened();
+            }
+            return String.valueOf(keys.size());
 
         } catch (Exception ex) {
             return ex.getMessage();
         }
     }
 
+    /**
+     * Sets the borrowing_id and borrowing_date generated by the database
+     *
+     * @param keys the values of KEY_COLUMNS returned by the database
+     */
+    void applyKeys(Object[] keys) {
+        this.borrowing_id = ((Number) keys[0]).intValue();
+        if (keys[1] != null) {
+            this.borrowing_date = DateTimeUtil.fromSqlValue(keys[1]);
+        }
+    }
+
+    /**
+     * Builds the UPDATE statement writing the columns modified since the last load or save
+     *
+     * @return the SQL statement or null if nothing was modified
+     */
+    String updateSql() {
+        if (changes.isEmpty()) {
+            return null;
+        }
+        return SQL.update(changes.columns());
+    }
+
+    /**
+     * Creates the change event of the statement built by updateSql(), before it is committed
+     *
+     * @return the event naming the modified columns
+     */
+    ChangeEvent updateEvent() {
+        return ChangeEvent.updated(TABLE, this.borrowing_id, changes.columns());
+    }
+
+    /**
+     * Retrieves the parameters of the statement built by updateSql()
+     *
+     * @return the new values of the modified columns followed by the id
+     */
+    Object[] updateParams() {
+        return changes.parameters(this.borrowing_id);
+    }
+
+    /**
+     * Forgets the recorded modifications, called once a write was committed
+     */
+    void afterWrite() {
+        changes.clear();
+    }
+
+    /**
+     * Sets the borrowing date of a borrow object about to be inserted
+     *
+     * @param now the date and time the borrow object is stored
+     */
+    void stamp(OffsetDateTime now) {
+        this.borrowing_date = now;
+    }
+
+    /**
+     * Reports this open loan to the in-memory indexes, called once it was written
+     */
+    void loanOpened() {
+        AvailabilityIndex.opened(this.borrowing_id, this.book_id, this.user_id);
+        OverdueMonitor.schedule(this);
+    }
+
+    /**
+     * Reports the end of this loan to the in-memory indexes, called once it was returned or deleted
+     */
+    void loanClosed() {
+        AvailabilityIndex.closed(this.borrowing_id);
+        OverdueMonitor.cancel(this.borrowing_id);
+    }
+
+    /**
+     * Catches up with a journaled write of a borrow object once the write journal replayed it
+     * The modified columns are not journaled, the event of a replayed update names every column
+     *
+     * @param borrowing_id the id of the borrow object
+     * @param sql the statement that was replayed
+     * @throws SQLException if a database access error occurs
+     */
+    static void replayed(int borrowing_id, String sql) throws SQLException {
+        if (sql.equals(DELETE_SQL)) {
+            AvailabilityIndex.closed(borrowing_id);
+            OverdueMonitor.cancel(borrowing_id);
+            ChangeBus.publish(ChangeEvent.deleted(TABLE, borrowing_id));
+            return;
+        }
+
+        // The stored row tells whether the loan is still open, a later journaled delete closes it itself
+        Borrow stored = findById(borrowing_id);
+        if (stored != null && stored.actual_return_date == null) {
+            stored.loanOpened();
+        } else if (stored != null) {
+            stored.loanClosed();
+        }
+        ChangeBus.publish(sql.equals(INSERT_SQL) ? ChangeEvent.inserted(TABLE, borrowing_id) :
+                ChangeEvent.updated(TABLE, borrowing_id, SQL.columns()));
+    }
+
+    /**
+     * Retrieves the parameters of INSERT_SQL for this borrow object
+     *
+     * @return the values to insert, in column order
+     */
+    Object[] insertParams() {
+        return new Object[]{this.book_id, this.user_id, this.borrowing_date, this.expected_return_date};
+    }
+
     /**
      * Marks the actual time the book is returned
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String returnBook() {
-        String sql = "UPDATE public.borrow SET actual_return_date = ? WHERE borrowing_id = ?";
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.borrowing_id < 0) {
+            return "The borrow object is not in the database yet";
+        }
+
+        String sql = SQL.update(Collections.singletonList("actual_return_date"));
         try {
             this.actual_return_date = OffsetDateTime.now();
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.borrowing_id, sql, this.actual_return_date,
+                        this.borrowing_id);
+            }
+
             // Use executeUpdate() method from DBUtil to save the changes in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(),
-                    this.actual_return_date, this.borrowing_id));
+            int rows = DBUtil.executeUpdate(sql, DBUtil.getURL(), this.actual_return_date,
+                    this.borrowing_id);
+            if (rows > 0) {
+                ChangeBus.publish(ChangeEvent.updated(TABLE, this.borrowing_id,
+                        Collections.singletonList("actual_return_date")));
+            }
+            loanClosed();
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.borrowing_id, sql, this.actual_return_date,
+                    this.borrowing_id);
         }
     }
 
+    /**
+     * Marks the actual time the book is returned without blocking the caller. See returnBook()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> returnBookAsync() {
+        return DBUtil.supplyAsync(this::returnBook);
+    }
+
     /**
      * Save the changes made to the borrow object in the database
+     * Only the columns modified since the last load or save are written
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String saveChanges() {
-        String sql = "UPDATE public.borrow SET " +
-                "book_id = ?, " +
-                "user_id = ?, " +
-                "expected_return_date = ? " +
-                "WHERE borrowing_id = ?";
+
+        // Skip the round trip if no setter was called since the last load or save
+        if (changes.isEmpty()) {
+            return "0";
+        }
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.borrowing_id < 0) {
+            return "The borrow object is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.borrowing_id, updateSql(), updateParams());
+            }
+
             // Use executeUpdate() method from DBUtil to save the changes in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.book_id,
-                    this.user_id, this.expected_return_date, this.borrowing_id));
+            int rows = DBUtil.executeUpdate(updateSql(), DBUtil.getURL(), updateParams());
+            if (rows > 0) ChangeBus.publish(updateEvent());
+            changes.clear();
+
+            // The book or the user of an open loan may have changed
+            if (this.actual_return_date == null) {
+                loanOpened();
+            }
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.borrowing_id, updateSql(), updateParams());
         }
     }
 
+    /**
+     * Save the changes made to the borrow object in the database without blocking the caller. See saveChanges()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> saveChangesAsync() {
+        return DBUtil.supplyAsync(this::saveChanges);
+    }
+
     /**
      * Delete the borrow object from the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String delete() {
-        String sql = "DELETE FROM public.borrow WHERE borrowing_id = ?";
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.borrowing_id < 0) {
+            return "The borrow object is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.borrowing_id, DELETE_SQL, this.borrowing_id);
+            }
+
             // Use executeUpdate() method from DBUtil to delete the book from the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.borrowing_id));
+            int rows = DBUtil.executeUpdate(DELETE_SQL, DBUtil.getURL(), this.borrowing_id);
+            if (rows > 0) ChangeBus.publish(ChangeEvent.deleted(TABLE, this.borrowing_id));
+            loanClosed();
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.borrowing_id, DELETE_SQL, this.borrowing_id);
         }
     }
 
+    /**
+     * Delete the borrow object from the database without blocking the caller. See delete()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> deleteAsync() {
+        return DBUtil.supplyAsync(this::delete);
+    }
+
+    /**
+     * Retrieves the borrow object with the given id
+     *
+     * @param borrowing_id the id of the borrow object
+     * @return the borrow object or null if there is none with that id
+     * @throws SQLException if a database access error occurs
+     */
+    public static Borrow findById(int borrowing_id) throws SQLException {
+        try (Stream<Borrow> borrows = DBUtil.stream(SELECT_SQL + " WHERE borrowing_id = ?",
+                DBUtil.getURL(), Borrow::fromResultSet, borrowing_id)) {
+            return borrows.findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * Retrieves every borrow object of a user
+     *
+     * @param user_id the id of the user
+     * @return a Stream of the borrow objects, must be closed after use
+     * @throws SQLException if a database access error occurs
+     */
+    public static Stream<Borrow> findByUser(int user_id) throws SQLException {
+        return DBUtil.stream(SELECT_SQL + " WHERE user_id = ? ORDER BY borrowing_id", DBUtil.getURL(),
+                Borrow::fromResultSet, user_id);
+    }
+
+    /**
+     * Retrieves the borrow objects of a user whose book has not been returned yet
+     *
+     * @param user_id the id of the user
+     * @return a Stream of the open borrow objects, must be closed after use
+     * @throws SQLException if a database access error occurs
+     */
+    public static Stream<Borrow> findOpenByUser(int user_id) throws SQLException {
+        return DBUtil.stream(SELECT_SQL + " WHERE user_id = ? AND actual_return_date IS NULL " +
+                "ORDER BY borrowing_id", DBUtil.getURL(), Borrow::fromResultSet, user_id);
+    }
+
+    /**
+     * Retrieves every borrow object in the database
+     * Rows are read lazily so the whole table is never held in memory
+     *
+     * @return a Stream of the borrow objects, must be closed after use
+     * @throws SQLException if a database access error occurs
+     */
+    public static Stream<Borrow> findAll() throws SQLException {
+        return DBUtil.stream(SELECT_SQL + " ORDER BY borrowing_id", DBUtil.getURL(), Borrow::fromResultSet);
+    }
+
+    /**
+     * Retrieves one page of the borrow objects ordered by their borrowing date then id
+     *
+     * @param token the token of the previous page or null for the first page
+     * @param pageSize the maximum number of borrow objects of the page, from 1 to 1000
+     * @return the page
+     * @throws SQLException if a database access error occurs
+     * @throws IllegalArgumentException if the token is not valid or the page size out of range
+     */
+    public static Page<Borrow> findPage(String token, int pageSize) throws SQLException {
+        return DBUtil.page(SELECT_SQL, "borrowing_date", "borrowing_id", token, pageSize, DBUtil.getURL(),
+                Borrow::fromResultSet);
+    }
+
+    /**
+     * Creates a borrow object from the current row of a ResultSet read with SELECT_SQL
+     *
+     * @param rs the ResultSet positioned on the row
+     * @return the borrow object
+     * @throws SQLException if a database access error occurs
+     */
+    static Borrow fromResultSet(ResultSet rs) throws SQLException {
+        return new Borrow(rs.getInt("borrowing_id"), rs.getInt("book_id"), rs.getInt("user_id"),
+                rs.getObject("borrowing_date", OffsetDateTime.class),
+                rs.getObject("expected_return_date", OffsetDateTime.class),
+                rs.getObject("actual_return_date", OffsetDateTime.class));
+    }
+
     /**
      * Returns a string representation of the borrow object
      *
@@ -0,0 +1,390 @@
+package model;
+
+import Util.DBUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.stream.Stream;
+
+/**
+ * A compact, append-only store of loans for analytics
+ * Loans are stored by column: three int columns for the ids and three long columns holding the
+ * dates as epoch seconds, about 36 bytes per loan instead of the objects of a Borrow
+ * The columns live on the heap or, for histories larger than the heap, in direct memory
+ * Dates are read back in UTC with a precision of one second
+ */
+public class BorrowHistory {
+
+    /**
+     * Stored instead of the epoch second of a date that is null
+     */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 1_024;
+
+    private final boolean offHeap;
+    private IntBuffer borrowingIds;
+    private IntBuffer bookIds;
+    private IntBuffer userIds;
+    private LongBuffer borrowingDates;
+    private LongBuffer expectedReturnDates;
+    private LongBuffer actualReturnDates;
+    private int size;
+
+    /**
+     * Instantiates an empty BorrowHistory
+     *
+     * @param initialCapacity the number of loans expected, the store grows past it
+     * @param offHeap true to keep the columns in direct memory, outside of the heap
+     */
+    public BorrowHistory(int initialCapacity, boolean offHeap) {
+        this.offHeap = offHeap;
+        allocate(Math.max(16, initialCapacity));
+    }
+
+    /**
+     * Instantiates an empty BorrowHistory stored on the heap
+     */
+    public BorrowHistory() {
+        this(DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Reads every loan of the database with a single streaming query, without creating Borrow objects
+     *
+     * @param offHeap true to keep the columns in direct memory, outside of the heap
+     * @return the history, in borrowing_id order
+     * @throws SQLException if a database access error occurs
+     */
+    public static BorrowHistory load(boolean offHeap) throws SQLException {
+        BorrowHistory history = new BorrowHistory(DEFAULT_CAPACITY, offHeap);
+        try (Stream<long[]> loans = DBUtil.stream(Borrow.SELECT_SQL + " ORDER BY borrowing_id",
+                DBUtil.getURL(), rs -> new long[]{rs.getInt("borrowing_id"), rs.getInt("book_id"),
+                        rs.getInt("user_id"), toEpochSecond(rs.getObject("borrowing_date", OffsetDateTime.class)),
+                        toEpochSecond(rs.getObject("expected_return_date", OffsetDateTime.class)),
+                        toEpochSecond(rs.getObject("actual_return_date", OffsetDateTime.class))})) {
+            loans.forEach(loan -> history.add((int) loan[0], (int) loan[1], (int) loan[2], loan[3], loan[4],
+                    loan[5]));
+        }
+        return history;
+    }
+
+    /**
+     * Appends a loan
+     *
+     * @param borrow the loan
+     * @return this history
+     */
+    public BorrowHistory add(Borrow borrow) {
+        return add(borrow.getBorrowing_id(), borrow.getBook_id(), borrow.getUser_id(),
+                toEpochSecond(borrow.getBorrowing_date()), toEpochSecond(borrow.getExpected_return_date()),
+                toEpochSecond(borrow.getActual_return_date()));
+    }
+
+    /**
+     * Appends a loan from its column values
+     *
+     * @param borrowing_id the id of the borrow object
+     * @param book_id the id of the borrowed book
+     * @param user_id the id of the user
+     * @param borrowing_date the borrowing date in epoch seconds or NO_DATE
+     * @param expected_return_date the expected return date in epoch seconds or NO_DATE
+     * @param actual_return_date the actual return date in epoch seconds or NO_DATE if not returned
+     * @return this history
+     */
+    public BorrowHistory add(int borrowing_id, int book_id, int user_id, long borrowing_date,
+                             long expected_return_date, long actual_return_date) {
+        if (size == borrowingIds.capacity()) {
+            grow();
+        }
+        borrowingIds.put(size, borrowing_id);
+        bookIds.put(size, book_id);
+        userIds.put(size, user_id);
+        borrowingDates.put(size, borrowing_date);
+        expectedReturnDates.put(size, expected_return_date);
+        actualReturnDates.put(size, actual_return_date);
+        size++;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of loans
+     *
+     * @return the number of loans
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the columns are stored outside of the heap
+     *
+     * @return true if the columns are in direct memory, otherwise false
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Retrieves the id of the borrow object of a loan
+     *
+     * @param index the position of the loan
+     * @return the id of the borrow object
+     */
+    public int getBorrowing_id(int index) {
+        return borrowingIds.get(check(index));
+    }
+
+    /**
+     * Retrieves the id of the book of a loan
+     *
+     * @param index the position of the loan
+     * @return the id of the book
+     */
+    public int getBook_id(int index) {
+        return bookIds.get(check(index));
+    }
+
+    /**
+     * Retrieves the id of the user of a loan
+     *
+     * @param index the position of the loan
+     * @return the id of the user
+     */
+    public int getUser_id(int index) {
+        return userIds.get(check(index));
+    }
+
+    /**
+     * Retrieves the borrowing date of a loan
+     *
+     * @param index the position of the loan
+     * @return the date in epoch seconds or NO_DATE
+     */
+    public long getBorrowingEpochSecond(int index) {
+        return borrowingDates.get(check(index));
+    }
+
+    /**
+     * Retrieves the expected return date of a loan
+     *
+     * @param index the position of the loan
+     * @return the date in epoch seconds or NO_DATE
+     */
+    public long getExpectedReturnEpochSecond(int index) {
+        return expectedReturnDates.get(check(index));
+    }
+
+    /**
+     * Retrieves the actual return date of a loan
+     *
+     * @param index the position of the loan
+     * @return the date in epoch seconds or NO_DATE if the book was not returned
+     */
+    public long getActualReturnEpochSecond(int index) {
+        return actualReturnDates.get(check(index));
+    }
+
+    /**
+     * Creates a Borrow holding the values of a loan, only use it when an object is needed
+     *
+     * @param index the position of the loan
+     * @return a new Borrow, dates are in UTC
+     */
+    public Borrow get(int index) {
+        check(index);
+        return new Borrow(borrowingIds.get(index), bookIds.get(index), userIds.get(index),
+                toDate(borrowingDates.get(index)), toDate(expectedReturnDates.get(index)),
+                toDate(actualReturnDates.get(index)));
+    }
+
+    /**
+     * Creates a cursor reading the loans in place
+     *
+     * @return a cursor positioned before the first loan
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A flyweight view of one loan at a time, moved over the history without creating objects
+     */
+    public class Cursor {
+
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next loan
+         *
+         * @return true if the cursor is on a loan, false once past the last one
+         */
+        public boolean next() {
+            if (index < size) index++;
+            return index < size;
+        }
+
+        /**
+         * Moves to a loan
+         *
+         * @param index the position of the loan
+         * @return this cursor
+         */
+        public Cursor moveTo(int index) {
+            this.index = check(index);
+            return this;
+        }
+
+        /**
+         * Retrieves the position of the loan the cursor is on
+         *
+         * @return the position of the loan
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Retrieves the id of the borrow object
+         *
+         * @return the id of the borrow object
+         */
+        public int getBorrowing_id() {
+            return BorrowHistory.this.getBorrowing_id(index);
+        }
+
+        /**
+         * Retrieves the id of the borrowed book
+         *
+         * @return the id of the book
+         */
+        public int getBook_id() {
+            return BorrowHistory.this.getBook_id(index);
+        }
+
+        /**
+         * Retrieves the id of the user
+         *
+         * @return the id of the user
+         */
+        public int getUser_id() {
+            return BorrowHistory.this.getUser_id(index);
+        }
+
+        /**
+         * Retrieves the borrowing date
+         *
+         * @return the date in epoch seconds or NO_DATE
+         */
+        public long getBorrowingEpochSecond() {
+            return BorrowHistory.this.getBorrowingEpochSecond(index);
+        }
+
+        /**
+         * Retrieves the expected return date
+         *
+         * @return the date in epoch seconds or NO_DATE
+         */
+        public long getExpectedReturnEpochSecond() {
+            return BorrowHistory.this.getExpectedReturnEpochSecond(index);
+        }
+
+        /**
+         * Retrieves the actual return date
+         *
+         * @return the date in epoch seconds or NO_DATE if the book was not returned
+         */
+        public long getActualReturnEpochSecond() {
+            return BorrowHistory.this.getActualReturnEpochSecond(index);
+        }
+
+        /**
+         * Checks whether the book was returned
+         *
+         * @return true if the loan has an actual return date, otherwise false
+         */
+        public boolean isReturned() {
+            return getActualReturnEpochSecond() != NO_DATE;
+        }
+
+        /**
+         * Creates a Borrow holding the values of the loan. See BorrowHistory.get()
+         *
+         * @return a new Borrow
+         */
+        public Borrow toBorrow() {
+            return BorrowHistory.this.get(index);
+        }
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        borrowingIds = intColumn(capacity);
+        bookIds = intColumn(capacity);
+        userIds = intColumn(capacity);
+        borrowingDates = longColumn(capacity);
+        expectedReturnDates = longColumn(capacity);
+        actualReturnDates = longColumn(capacity);
+    }
+
+    private void grow() {
+
+        // A direct buffer holds at most Integer.MAX_VALUE bytes, which bounds the long columns
+        int limit = offHeap ? Integer.MAX_VALUE / Long.BYTES : Integer.MAX_VALUE - 8;
+        if (size >= limit) {
+            throw new IllegalStateException("BorrowHistory is full: " + size + " loans");
+        }
+        int capacity = (int) Math.min(limit, (long) size * 2);
+        IntBuffer oldBorrowingIds = borrowingIds;
+        IntBuffer oldBookIds = bookIds;
+        IntBuffer oldUserIds = userIds;
+        LongBuffer oldBorrowingDates = borrowingDates;
+        LongBuffer oldExpectedReturnDates = expectedReturnDates;
+        LongBuffer oldActualReturnDates = actualReturnDates;
+        allocate(capacity);
+        borrowingIds.put(oldBorrowingIds.clear()).clear();
+        bookIds.put(oldBookIds.clear()).clear();
+        userIds.put(oldUserIds.clear()).clear();
+        borrowingDates.put(oldBorrowingDates.clear()).clear();
+        expectedReturnDates.put(oldExpectedReturnDates.clear()).clear();
+        actualReturnDates.put(oldActualReturnDates.clear()).clear();
+    }
+
+    private IntBuffer intColumn(int capacity) {
+        if (!offHeap) {
+            return IntBuffer.allocate(capacity);
+        }
+        return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private LongBuffer longColumn(int capacity) {
+        if (!offHeap) {
+            return LongBuffer.allocate(capacity);
+        }
+        return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    private static long toEpochSecond(OffsetDateTime date) {
+        return (date == null) ? NO_DATE : date.toEpochSecond();
+    }
+
+    private static OffsetDateTime toDate(long epochSecond) {
+        return (epochSecond == NO_DATE) ? null :
+                OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.UTC);
+    }
+}
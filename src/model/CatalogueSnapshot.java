@@ -0,0 +1,658 @@
+package model;
+
+import Util.DBUtil;
+import Util.RowMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * A binary snapshot of every book, author and user, read at startup instead of the database
+ * The file holds fixed-width records sorted by id and a heap of UTF-8 strings they point to.
+ * It is memory-mapped when opened, so fields are read in place and only the objects asked for are created.
+ * A snapshot is at most 2 GB.
+ * Rows added or changed after the snapshot was taken are read back by catchUp(): added rows are found
+ * with date_added, changed and deleted rows through a change file written next to the snapshot by the
+ * models of this process. Changes made by other processes are only seen once added rows are.
+ */
+public class CatalogueSnapshot {
+
+    /**
+     * Tables recorded in the change file
+     */
+    static final byte BOOK = 'B';
+    static final byte AUTHOR = 'A';
+    static final byte USER = 'U';
+
+    private static final int MAGIC = 0x4C4D5353;
+    private static final int VERSION = 1;
+
+    // Header: magic, version, watermark, then count and offset of the books, authors and users, then heap offset
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 3 * (4 + 4) + 4;
+
+    // Record layouts, a date is its epoch second and nanosecond, a string its heap offset and length
+    private static final int BOOK_RECORD = 4 + 4 + 4 + 12 + 3 * 8;
+    private static final int AUTHOR_RECORD = 4 + 12 + 2 * 8;
+    private static final int USER_RECORD = 4 + 12 + 2 * 8 + 4;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    // Rows added while the snapshot is written or with a clock ahead of ours are read again
+    private static final long WATERMARK_MARGIN_MILLIS = 60_000;
+
+    // Largest number of ids in one catch-up query
+    private static final int CATCH_UP_CHUNK = 500;
+
+    // Change file entry: table, id, time of the change in epoch milliseconds
+    private static final int CHANGE_BYTES = 1 + 4 + 8;
+
+    // Periodic writer and the change file it maintains, guarded by the class lock
+    private static ScheduledExecutorService writer;
+    private static Path changeFile;
+    private static OutputStream changes;
+
+    private final MappedByteBuffer buffer;
+    private final long watermark;
+    private final int bookCount;
+    private final int bookOffset;
+    private final int authorCount;
+    private final int authorOffset;
+    private final int userCount;
+    private final int userOffset;
+    private final int heapOffset;
+
+    // Rows read by catchUp(), a null value marks a deleted row
+    private final Map<Integer, Book> newBooks = new HashMap<>();
+    private final Map<Integer, Author> newAuthors = new HashMap<>();
+    private final Map<Integer, User> newUsers = new HashMap<>();
+
+    private CatalogueSnapshot(MappedByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a catalogue snapshot");
+        }
+        this.buffer = buffer;
+        this.watermark = buffer.getLong(8);
+        this.bookCount = buffer.getInt(16);
+        this.bookOffset = buffer.getInt(20);
+        this.authorCount = buffer.getInt(24);
+        this.authorOffset = buffer.getInt(28);
+        this.userCount = buffer.getInt(32);
+        this.userOffset = buffer.getInt(36);
+        this.heapOffset = buffer.getInt(40);
+    }
+
+    /**
+     * Memory-maps a snapshot written by write()
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static CatalogueSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            // The mapping stays valid once the channel is closed
+            return new CatalogueSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads every book, author and user from the database and replaces the snapshot file atomically
+     * Records are streamed to the file as they are read, the strings to a heap file appended at the end,
+     * and the header is written last. Changes older than the new snapshot are then dropped from the change file
+     *
+     * @param file the snapshot file
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if the file cannot be written or the snapshot would exceed 2 GB
+     */
+    public static void write(Path file) throws SQLException, IOException {
+        long watermark = System.currentTimeMillis() - WATERMARK_MARGIN_MILLIS;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Path heapFile = file.resolveSibling(file.getFileName() + ".heap.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel heapChannel = FileChannel.open(heapFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.DELETE_ON_CLOSE)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            ChannelWriter heap = new ChannelWriter(heapChannel);
+            out.skip(HEADER_BYTES);
+
+            int bookOffset = HEADER_BYTES;
+            int bookCount = 0;
+            try (Stream<Book> rows = DBUtil.streamFromPrimary(Book.SELECT_SQL + " ORDER BY book_id",
+                    DBUtil.getURL(), Book::fromResultSet)) {
+                for (Book book : (Iterable<Book>) rows::iterator) {
+                    out.putInt(book.getBook_id());
+                    out.putInt(book.getAuthor_id());
+                    out.putInt(book.getNumber_of_pages());
+                    writeDate(out, book.getDate_added());
+                    writeString(out, heap, book.getTitle());
+                    writeString(out, heap, book.getDescription());
+                    writeString(out, heap, book.getGenre());
+                    bookCount++;
+                }
+            }
+
+            int authorOffset = offset(out, heap);
+            int authorCount = 0;
+            try (Stream<Author> rows = DBUtil.streamFromPrimary(Author.SELECT_SQL + " ORDER BY author_id",
+                    DBUtil.getURL(), Author::fromResultSet)) {
+                for (Author author : (Iterable<Author>) rows::iterator) {
+                    out.putInt(author.getAuthor_id());
+                    writeDate(out, author.getDate_added());
+                    writeString(out, heap, author.getFirst_name());
+                    writeString(out, heap, author.getLast_name());
+                    authorCount++;
+                }
+            }
+
+            int userOffset = offset(out, heap);
+            int userCount = 0;
+            try (Stream<User> rows = DBUtil.streamFromPrimary(User.SELECT_SQL + " ORDER BY user_id",
+                    DBUtil.getURL(), User::fromResultSet)) {
+                for (User user : (Iterable<User>) rows::iterator) {
+                    out.putInt(user.getUser_id());
+                    writeDate(out, user.getDate_added());
+                    writeString(out, heap, user.getFirst_name());
+                    writeString(out, heap, user.getLast_name());
+                    out.putInt(user.getBooking_record() ? 1 : 0);
+                    userCount++;
+                }
+            }
+
+            // Append the heap after the records, then fill in the header
+            int heapOffset = offset(out, heap);
+            out.flush();
+            heap.flush();
+            long heapSize = heap.position();
+            for (long copied = 0; copied < heapSize; ) {
+                copied += heapChannel.transferTo(copied, heapSize - copied, channel.position(heapOffset + copied));
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(watermark)
+                    .putInt(bookCount).putInt(bookOffset)
+                    .putInt(authorCount).putInt(authorOffset)
+                    .putInt(userCount).putInt(userOffset)
+                    .putInt(heapOffset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        compactChanges(changeFileOf(file), watermark);
+    }
+
+    /**
+     * Retrieves the offset the next section starts at, failing once the records and heap exceed 2 GB
+     */
+    private static int offset(ChannelWriter out, ChannelWriter heap) throws IOException {
+        long size = out.position() + heap.position();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Catalogue snapshot would exceed 2 GB: " + size + " bytes");
+        }
+        return (int) out.position();
+    }
+
+    /**
+     * Writes the snapshot periodically and records the changes made by the models in the meantime
+     *
+     * @param file the snapshot file
+     * @param period the time between two snapshots
+     * @throws IOException if the change file cannot be opened
+     */
+    public static synchronized void start(Path file, Duration period) throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("CatalogueSnapshot already started");
+        }
+        changeFile = changeFileOf(file);
+        changes = new BufferedOutputStream(Files.newOutputStream(changeFile, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "CatalogueSnapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                write(file);
+            } catch (SQLException | IOException | RuntimeException ex) {
+
+                // Keep the schedule going, the next run may succeed
+                ex.printStackTrace();
+            }
+        }, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing snapshots and recording changes
+     */
+    public static synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdownNow();
+        writer = null;
+        try {
+            changes.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        changes = null;
+        changeFile = null;
+    }
+
+    /**
+     * Records that a row was modified or deleted, ignored unless start() was called
+     *
+     * @param table BOOK, AUTHOR or USER
+     * @param id the id of the row
+     */
+    static synchronized void changed(byte table, int id) {
+        if (changes == null) {
+            return;
+        }
+        try {
+            byte[] entry = ByteBuffer.allocate(CHANGE_BYTES).put(table).putInt(id)
+                    .putLong(System.currentTimeMillis()).array();
+            changes.write(entry);
+            changes.flush();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads back the rows added since the snapshot and the rows this process changed since then
+     * Afterwards the find methods return the current rows, the index based accessors still read the snapshot
+     *
+     * @param file the snapshot file this snapshot was opened from, used to find the change file
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if the change file cannot be read
+     */
+    public void catchUp(Path file) throws SQLException, IOException {
+        OffsetDateTime since = OffsetDateTime.ofInstant(Instant.ofEpochMilli(watermark), ZoneOffset.UTC);
+        read(Book.SELECT_SQL + " WHERE date_added >= ?", Book::fromResultSet, Book::getBook_id, newBooks, since);
+        read(Author.SELECT_SQL + " WHERE date_added >= ?", Author::fromResultSet, Author::getAuthor_id,
+                newAuthors, since);
+        read(User.SELECT_SQL + " WHERE date_added >= ?", User::fromResultSet, User::getUser_id, newUsers, since);
+
+        Set<Integer> bookIds = new LinkedHashSet<>();
+        Set<Integer> authorIds = new LinkedHashSet<>();
+        Set<Integer> userIds = new LinkedHashSet<>();
+        Path changeFile = changeFileOf(file);
+        if (Files.exists(changeFile)) {
+            ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(changeFile));
+            while (entries.remaining() >= CHANGE_BYTES) {
+                byte table = entries.get();
+                int id = entries.getInt();
+                if (entries.getLong() < watermark) continue;
+                if (table == BOOK) bookIds.add(id);
+                else if (table == AUTHOR) authorIds.add(id);
+                else if (table == USER) userIds.add(id);
+            }
+        }
+        reread(Book.SELECT_SQL, "book_id", Book::fromResultSet, Book::getBook_id, newBooks, bookIds);
+        reread(Author.SELECT_SQL, "author_id", Author::fromResultSet, Author::getAuthor_id, newAuthors, authorIds);
+        reread(User.SELECT_SQL, "user_id", User::fromResultSet, User::getUser_id, newUsers, userIds);
+    }
+
+    /**
+     * Puts every current row in the caches used by findById(), up to the size of each cache
+     */
+    public void warmCaches() {
+        for (int i = 0; i < bookCount; i++) {
+            if (!newBooks.containsKey(getBookId(i))) Book.getCache().put(getBookId(i), getBook(i));
+        }
+        for (int i = 0; i < authorCount; i++) {
+            if (!newAuthors.containsKey(getAuthorId(i))) Author.getCache().put(getAuthorId(i), getAuthor(i));
+        }
+        for (int i = 0; i < userCount; i++) {
+            if (!newUsers.containsKey(getUserId(i))) User.getCache().put(getUserId(i), getUser(i));
+        }
+        newBooks.forEach((id, book) -> {
+            if (book != null) Book.getCache().put(id, book);
+        });
+        newAuthors.forEach((id, author) -> {
+            if (author != null) Author.getCache().put(id, author);
+        });
+        newUsers.forEach((id, user) -> {
+            if (user != null) User.getCache().put(id, user);
+        });
+    }
+
+    /**
+     * Retrieves the time the snapshot is current up to
+     *
+     * @return the watermark in epoch milliseconds
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Retrieves the number of books in the snapshot
+     *
+     * @return the number of book records
+     */
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    /**
+     * Retrieves the id of a book record
+     *
+     * @param index the position of the record
+     * @return the id of the book
+     */
+    public int getBookId(int index) {
+        return buffer.getInt(record(bookOffset, BOOK_RECORD, bookCount, index));
+    }
+
+    /**
+     * Retrieves the author id of a book record
+     *
+     * @param index the position of the record
+     * @return the id of the author of the book
+     */
+    public int getBookAuthorId(int index) {
+        return buffer.getInt(record(bookOffset, BOOK_RECORD, bookCount, index) + 4);
+    }
+
+    /**
+     * Retrieves the title of a book record
+     *
+     * @param index the position of the record
+     * @return the title of the book
+     */
+    public String getBookTitle(int index) {
+        return readString(record(bookOffset, BOOK_RECORD, bookCount, index) + 24);
+    }
+
+    /**
+     * Retrieves the genre of a book record
+     *
+     * @param index the position of the record
+     * @return the genre of the book
+     */
+    public String getBookGenre(int index) {
+        return readString(record(bookOffset, BOOK_RECORD, bookCount, index) + 40);
+    }
+
+    /**
+     * Creates the book of a record
+     *
+     * @param index the position of the record
+     * @return the book as stored in the snapshot
+     */
+    public Book getBook(int index) {
+        int at = record(bookOffset, BOOK_RECORD, bookCount, index);
+        return new Book(buffer.getInt(at), readString(at + 24), readString(at + 32), buffer.getInt(at + 8),
+                readDate(at + 12), readString(at + 40), buffer.getInt(at + 4));
+    }
+
+    /**
+     * Retrieves a book, as read by catchUp() if it changed since the snapshot
+     *
+     * @param book_id the id of the book
+     * @return the book or null if there is none with that id
+     */
+    public Book findBook(int book_id) {
+        if (newBooks.containsKey(book_id)) {
+            return newBooks.get(book_id);
+        }
+        int index = search(bookOffset, BOOK_RECORD, bookCount, book_id);
+        return (index < 0) ? null : getBook(index);
+    }
+
+    /**
+     * Retrieves the number of authors in the snapshot
+     *
+     * @return the number of author records
+     */
+    public int getAuthorCount() {
+        return authorCount;
+    }
+
+    /**
+     * Retrieves the id of an author record
+     *
+     * @param index the position of the record
+     * @return the id of the author
+     */
+    public int getAuthorId(int index) {
+        return buffer.getInt(record(authorOffset, AUTHOR_RECORD, authorCount, index));
+    }
+
+    /**
+     * Creates the author of a record
+     *
+     * @param index the position of the record
+     * @return the author as stored in the snapshot
+     */
+    public Author getAuthor(int index) {
+        int at = record(authorOffset, AUTHOR_RECORD, authorCount, index);
+        return new Author(buffer.getInt(at), readString(at + 16), readString(at + 24), readDate(at + 4));
+    }
+
+    /**
+     * Retrieves an author, as read by catchUp() if it changed since the snapshot
+     *
+     * @param author_id the id of the author
+     * @return the author or null if there is none with that id
+     */
+    public Author findAuthor(int author_id) {
+        if (newAuthors.containsKey(author_id)) {
+            return newAuthors.get(author_id);
+        }
+        int index = search(authorOffset, AUTHOR_RECORD, authorCount, author_id);
+        return (index < 0) ? null : getAuthor(index);
+    }
+
+    /**
+     * Retrieves the number of users in the snapshot
+     *
+     * @return the number of user records
+     */
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Retrieves the id of a user record
+     *
+     * @param index the position of the record
+     * @return the id of the user
+     */
+    public int getUserId(int index) {
+        return buffer.getInt(record(userOffset, USER_RECORD, userCount, index));
+    }
+
+    /**
+     * Creates the user of a record
+     *
+     * @param index the position of the record
+     * @return the user as stored in the snapshot
+     */
+    public User getUser(int index) {
+        int at = record(userOffset, USER_RECORD, userCount, index);
+        return new User(buffer.getInt(at), readString(at + 16), readString(at + 24), readDate(at + 4),
+                buffer.getInt(at + 32) != 0);
+    }
+
+    /**
+     * Retrieves a user, as read by catchUp() if it changed since the snapshot
+     *
+     * @param user_id the id of the user
+     * @return the user or null if there is none with that id
+     */
+    public User findUser(int user_id) {
+        if (newUsers.containsKey(user_id)) {
+            return newUsers.get(user_id);
+        }
+        int index = search(userOffset, USER_RECORD, userCount, user_id);
+        return (index < 0) ? null : getUser(index);
+    }
+
+    /**
+     * Reads the rows of a query into the rows found by catchUp()
+     */
+    private static <T> void read(String sql, RowMapper<T> mapper, ToIntFunction<T> id,
+                                 Map<Integer, T> into, Object... params) throws SQLException {
+        try (Stream<T> rows = DBUtil.streamFromPrimary(sql, DBUtil.getURL(), mapper, params)) {
+            rows.forEach(row -> into.put(id.applyAsInt(row), row));
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads changed rows again by id, in chunks, the ids not found were deleted
+     */
+    private static <T> void reread(String selectSql, String idColumn, RowMapper<T> mapper,
+                                   ToIntFunction<T> id, Map<Integer, T> into,
+                                   Set<Integer> ids) throws SQLException {
+        List<Integer> pending = new ArrayList<>(ids);
+        for (int from = 0; from < pending.size(); from += CATCH_UP_CHUNK) {
+            List<Integer> chunk = pending.subList(from, Math.min(from + CATCH_UP_CHUNK, pending.size()));
+            for (int changed : chunk) {
+                into.put(changed, null);
+            }
+            String sql = selectSql + " WHERE " + idColumn + " IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            read(sql, mapper, id, into, chunk.toArray());
+        }
+    }
+
+    private int record(int offset, int recordBytes, int count, int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + count);
+        }
+        return offset + index * recordBytes;
+    }
+
+    /**
+     * Finds a record by id, records are sorted by id
+     *
+     * @return the position of the record or -1 if there is none with that id
+     */
+    private int search(int offset, int recordBytes, int count, int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = buffer.getInt(offset + middle * recordBytes);
+            if (middleId < id) low = middle + 1;
+            else if (middleId > id) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    private String readString(int at) {
+        int offset = buffer.getInt(at);
+        if (offset < 0) {
+            return null;
+        }
+        int length = buffer.getInt(at + 4);
+        byte[] bytes = new byte[length];
+        buffer.get(heapOffset + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private OffsetDateTime readDate(int at) {
+        long seconds = buffer.getLong(at);
+        if (seconds == NO_DATE) {
+            return null;
+        }
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(seconds, buffer.getInt(at + 8)), ZoneOffset.UTC);
+    }
+
+    private static void writeDate(ChannelWriter out, OffsetDateTime date) {
+        out.putLong((date == null) ? NO_DATE : date.toEpochSecond());
+        out.putInt((date == null) ? 0 : date.getNano());
+    }
+
+    private static void writeString(ChannelWriter out, ChannelWriter heap, String value) throws IOException {
+        if (value == null) {
+            out.putInt(-1);
+            out.putInt(0);
+            return;
+        }
+
+        // Heap offsets are ints, offset() stops the write before they overflow
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt((int) heap.position());
+        out.putInt(bytes.length);
+        heap.put(bytes, 0, bytes.length);
+    }
+
+    private static Path changeFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".changes");
+    }
+
+    /**
+     * Drops the changes older than a snapshot from the change file
+     */
+    private static synchronized void compactChanges(Path file, long watermark) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        if (changes != null && file.equals(changeFile)) {
+            changes.flush();
+        }
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(file));
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        byte[] entry = new byte[CHANGE_BYTES];
+        while (entries.remaining() >= CHANGE_BYTES) {
+            entries.get(entry);
+            if (ByteBuffer.wrap(entry).getLong(5) >= watermark) {
+                kept.write(entry);
+            }
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, kept.toByteArray());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Appends must go to the new file
+        if (changes != null && file.equals(changeFile)) {
+            changes.close();
+            changes = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the change events of the models to the registered listeners
+ * Publishing never takes a lock: listeners are kept in a copy-on-write list and called on the
+ * thread that wrote the row, so they must be quick and hand slow work to their own thread
+ */
+public class ChangeBus {
+
+    /**
+     * Receives the change events
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+
+        /**
+         * Called on the writing thread once a row was written
+         *
+         * @param event the change
+         */
+        void onChange(ChangeEvent event);
+    }
+
+    private static final List<ChangeListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private ChangeBus() {
+    }
+
+    /**
+     * Registers a listener called for every change
+     *
+     * @param listener the listener to add
+     */
+    public static void addListener(ChangeListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeListener(ChangeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Hands an event to every listener, a failing listener does not stop the others
+     *
+     * @param event the change
+     */
+    static void publish(ChangeEvent event) {
+        for (ChangeListener listener : LISTENERS) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+}
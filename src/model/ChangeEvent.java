@@ -0,0 +1,150 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes one row written by the models: which row, what was done to it and when
+ */
+public class ChangeEvent {
+
+    /**
+     * What was done to the row
+     */
+    public enum Operation {
+        INSERT, UPDATE, DELETE
+    }
+
+    private final long offset;
+    private final Operation operation;
+    private final String entity;
+    private final int id;
+    private final List<String> columns;
+    private final long timestamp;
+
+    /**
+     * Instantiates a ChangeEvent with all properties set to parameters
+     *
+     * @param offset the position of the event in the change log or -1 if it was not logged yet
+     * @param operation what was done to the row
+     * @param entity the table of the row, such as book or borrow
+     * @param id the id of the row
+     * @param columns the columns written by an update, empty for inserts and deletes
+     * @param timestamp the time of the change in epoch milliseconds
+     */
+    ChangeEvent(long offset, Operation operation, String entity, int id, Collection<String> columns, long timestamp) {
+        this.offset = offset;
+        this.operation = operation;
+        this.entity = entity;
+        this.id = id;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Creates the event of an inserted row
+     *
+     * @param entity the table of the row
+     * @param id the id of the row
+     * @return the event
+     */
+    static ChangeEvent inserted(String entity, int id) {
+        return new ChangeEvent(-1, Operation.INSERT, entity, id, Collections.emptyList(), System.currentTimeMillis());
+    }
+
+    /**
+     * Creates the event of an updated row
+     *
+     * @param entity the table of the row
+     * @param id the id of the row
+     * @param columns the columns written
+     * @return the event
+     */
+    static ChangeEvent updated(String entity, int id, Collection<String> columns) {
+        return new ChangeEvent(-1, Operation.UPDATE, entity, id, columns, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates the event of a deleted row
+     *
+     * @param entity the table of the row
+     * @param id the id of the row
+     * @return the event
+     */
+    static ChangeEvent deleted(String entity, int id) {
+        return new ChangeEvent(-1, Operation.DELETE, entity, id, Collections.emptyList(), System.currentTimeMillis());
+    }
+
+    /**
+     * Retrieves the position of the event in the change log
+     *
+     * @return the offset or -1 if the event was not logged yet
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Retrieves what was done to the row
+     *
+     * @return the operation
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Retrieves the table of the row
+     *
+     * @return the table name, one of book, author, user or borrow
+     */
+    public String getEntity() {
+        return entity;
+    }
+
+    /**
+     * Retrieves the id of the row
+     *
+     * @return the id of the row
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the columns written by an update
+     *
+     * @return the columns, empty for inserts and deletes
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Retrieves the time of the change
+     *
+     * @return the time in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns a string representation of the event
+     *
+     * @return a string representation of the event
+     */
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "offset = " + offset +
+                ", operation = " + operation +
+                ", entity = '" + entity + '\'' +
+                ", id = " + id +
+                ", columns = " + columns +
+                ", timestamp = " + timestamp +
+                '}';
+    }
+}
@@ -0,0 +1,333 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the change events published on the ChangeBus, kept in a directory on local disk
+ * Each event gets the next offset. Consumers keep the offset they read up to and call read() for the
+ * events after it, from this process or any other, instead of polling the tables.
+ * The log is split in segment files named after their first offset; the oldest segments are deleted
+ * once there are more than maxSegments. Events are written by a background thread and reach the
+ * operating system within FLUSH_PERIOD_MILLIS; a record torn by a crash is dropped when the log is opened.
+ */
+public class ChangeLog implements ChangeBus.ChangeListener, AutoCloseable {
+
+    private static final long FLUSH_PERIOD_MILLIS = 50;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+
+    // Events published but not written yet
+    private final Queue<ChangeEvent> pending = new ConcurrentLinkedQueue<>();
+
+    // Current segment, only used by the writer thread
+    private OutputStream out;
+    private long segmentSize;
+    private volatile long nextOffset;
+
+    private final ScheduledExecutorService writer;
+
+    /**
+     * Opens or creates a change log and registers it with the ChangeBus
+     *
+     * @param directory the directory holding the segment files
+     * @param segmentBytes the size at which a new segment is started
+     * @param maxSegments the number of segments kept
+     * @throws IOException if the directory cannot be read or written
+     */
+    public ChangeLog(Path directory, long segmentBytes, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            long[] end = recover(last);
+            this.nextOffset = end[0];
+            this.segmentSize = end[1];
+            this.out = new BufferedOutputStream(Files.newOutputStream(last, StandardOpenOption.APPEND));
+        }
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ChangeLog-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer.scheduleWithFixedDelay(this::flush, FLUSH_PERIOD_MILLIS, FLUSH_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+        ChangeBus.addListener(this);
+    }
+
+    /**
+     * Opens or creates a change log of 64 MB segments keeping the last 16 segments
+     *
+     * @param directory the directory holding the segment files
+     * @throws IOException if the directory cannot be read or written
+     */
+    public ChangeLog(Path directory) throws IOException {
+        this(directory, 64L * 1024 * 1024, 16);
+    }
+
+    /**
+     * Queues the event, it is written by the writer thread
+     *
+     * @param event the change
+     */
+    @Override
+    public void onChange(ChangeEvent event) {
+        pending.add(event);
+    }
+
+    /**
+     * Retrieves the offset the next event will get
+     *
+     * @return the offset after the last written event
+     */
+    public long getEndOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Reads the events of this log from an offset. See read(Path, long, int)
+     *
+     * @param fromOffset the offset of the first event to read
+     * @param maxEvents the maximum number of events returned
+     * @return the events in offset order, empty if there is none yet
+     * @throws IOException if the log cannot be read
+     */
+    public List<ChangeEvent> read(long fromOffset, int maxEvents) throws IOException {
+        return read(directory, fromOffset, maxEvents);
+    }
+
+    /**
+     * Reads the events of a change log from an offset, the log may be written by another process
+     * Pass the offset of the last event read plus one to continue where the previous call stopped.
+     * If the offset was already deleted by retention, reading starts at the oldest event kept.
+     *
+     * @param directory the directory holding the segment files
+     * @param fromOffset the offset of the first event to read
+     * @param maxEvents the maximum number of events returned
+     * @return the events in offset order, empty if there is none yet
+     * @throws IOException if the log cannot be read
+     */
+    public static List<ChangeEvent> read(Path directory, long fromOffset, int maxEvents) throws IOException {
+        List<ChangeEvent> events = new ArrayList<>();
+        List<Path> segments = segments(directory);
+
+        // Start from the last segment beginning at or before the offset
+        int first = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (baseOffset(segments.get(i)) <= fromOffset) first = i;
+        }
+
+        for (int i = first; i < segments.size() && events.size() < maxEvents; i++) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(segments.get(i))))) {
+                long[] position = new long[1];
+                ChangeEvent event;
+                while (events.size() < maxEvents && (event = readRecord(in, position)) != null) {
+                    if (event.getOffset() >= fromOffset) events.add(event);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Unregisters the log, writes the remaining events and stops the writer
+     */
+    @Override
+    public void close() {
+        ChangeBus.removeListener(this);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            out.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the queued events, only ever run by one thread at a time
+     */
+    private synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            ChangeEvent event;
+            while ((event = pending.poll()) != null) {
+                if (segmentSize >= segmentBytes) {
+                    out.close();
+                    openSegment(nextOffset);
+                    deleteOldSegments();
+                }
+                byte[] record = encode(event, nextOffset);
+                out.write(record);
+                segmentSize += record.length;
+                nextOffset++;
+            }
+            out.flush();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void openSegment(long baseOffset) throws IOException {
+        Path segment = directory.resolve(String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+        this.out = new BufferedOutputStream(Files.newOutputStream(segment, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+        this.segmentSize = Files.size(segment);
+        this.nextOffset = baseOffset;
+    }
+
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = segments(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * Finds the end of the last segment and cuts a record torn by a crash
+     *
+     * @return the offset after the last complete record and the size of the segment
+     */
+    private static long[] recover(Path segment) throws IOException {
+        long nextOffset = baseOffset(segment);
+        long[] position = new long[1];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            ChangeEvent event;
+            while ((event = readRecord(in, position)) != null) {
+                nextOffset = event.getOffset() + 1;
+            }
+        }
+        long validBytes = position[0];
+        if (validBytes < Files.size(segment)) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes);
+            }
+        }
+        return new long[]{nextOffset, validBytes};
+    }
+
+    /**
+     * Encodes an event as a record: length, offset, timestamp, operation, entity, id, columns, CRC32
+     */
+    private static byte[] encode(ChangeEvent event, long offset) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeLong(offset);
+        data.writeLong(event.getTimestamp());
+        data.writeByte(event.getOperation().ordinal());
+        data.writeUTF(event.getEntity());
+        data.writeInt(event.getId());
+        data.writeShort(event.getColumns().size());
+        for (String column : event.getColumns()) {
+            data.writeUTF(column);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+        data.writeInt((int) crc.getValue());
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(body.size() + Integer.BYTES);
+        new DataOutputStream(record).writeInt(body.size());
+        body.writeTo(record);
+        return record.toByteArray();
+    }
+
+    /**
+     * Reads the next record of a segment
+     *
+     * @param in the segment, positioned on a record
+     * @param position the number of bytes read so far, advanced past the record
+     * @return the event or null at the end of the segment or at a torn record
+     */
+    private static ChangeEvent readRecord(DataInputStream in, long[] position) throws IOException {
+        byte[] body;
+        try {
+            int length = in.readInt();
+            if (length < Integer.BYTES || length > 1024 * 1024) {
+                return null;
+            }
+            body = new byte[length];
+            in.readFully(body);
+        } catch (EOFException ex) {
+            return null;
+        }
+
+        // Check the whole record before decoding it
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length - Integer.BYTES);
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+        data.mark(body.length);
+        data.skipBytes(body.length - Integer.BYTES);
+        if (data.readInt() != (int) crc.getValue()) {
+            return null;
+        }
+        data.reset();
+
+        long offset = data.readLong();
+        long timestamp = data.readLong();
+        ChangeEvent.Operation operation = ChangeEvent.Operation.values()[data.readByte()];
+        String entity = data.readUTF();
+        int id = data.readInt();
+        int columnCount = data.readShort();
+        List<String> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(data.readUTF());
+        }
+        position[0] += Integer.BYTES + body.length;
+        return new ChangeEvent(offset, operation, entity, id, columns, timestamp);
+    }
+
+    private static long baseOffset(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
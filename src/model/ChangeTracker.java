@@ -0,0 +1,66 @@
+package model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which columns of a model were modified since it was loaded or last saved
+ */
+class ChangeTracker {
+
+    // Modified columns and their new values, in the order they were first modified
+    private final Map<String, Object> changes = new LinkedHashMap<>();
+
+    /**
+     * Records that a column was set to a new value
+     *
+     * @param column the name of the column
+     * @param value the new value of the column
+     */
+    void record(String column, Object value) {
+        changes.put(column, value);
+    }
+
+    /**
+     * Checks whether any column was modified
+     *
+     * @return true if nothing needs to be written, otherwise false
+     */
+    boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Retrieves the names of the modified columns
+     *
+     * @return the modified columns in the order they were first modified
+     */
+    Set<String> columns() {
+        return Collections.unmodifiableSet(changes.keySet());
+    }
+
+    /**
+     * Retrieves the parameters of an UPDATE statement of the columns()
+     *
+     * @param id the id used in the WHERE clause
+     * @return the new values of the modified columns followed by the id
+     */
+    Object[] parameters(int id) {
+        Object[] params = new Object[changes.size() + 1];
+        int i = 0;
+        for (Object value : changes.values()) {
+            params[i++] = value;
+        }
+        params[i] = id;
+        return params;
+    }
+
+    /**
+     * Forgets every modification, called once the model matches the database
+     */
+    void clear() {
+        changes.clear();
+    }
+}
@@ -0,0 +1,120 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes big-endian values to a file channel through a small buffer, keeping track of the position
+ * Used to stream the snapshot and segment files instead of building them in memory
+ */
+class ChannelWriter {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private long position;
+
+    /**
+     * Instantiates a ChannelWriter writing from the start of a channel
+     *
+     * @param channel the channel written to
+     */
+    ChannelWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Retrieves the number of bytes written or skipped so far
+     *
+     * @return the position the next value is written at
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * Leaves a gap, such as a header written last
+     *
+     * @param bytes the number of bytes to skip
+     * @throws IOException if the buffered bytes cannot be written
+     */
+    void skip(int bytes) throws IOException {
+        flush();
+        position += bytes;
+    }
+
+    /**
+     * Writes an int
+     * May be called where an IOException cannot be thrown, it is then wrapped in an UncheckedIOException
+     *
+     * @param value the value
+     * @return this writer
+     */
+    ChannelWriter putInt(int value) {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+        position += Integer.BYTES;
+        return this;
+    }
+
+    /**
+     * Writes a long, see putInt()
+     *
+     * @param value the value
+     * @return this writer
+     */
+    ChannelWriter putLong(long value) {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+        position += Long.BYTES;
+        return this;
+    }
+
+    /**
+     * Writes bytes
+     *
+     * @param bytes the array holding the bytes
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @throws IOException if the bytes cannot be written
+     */
+    void put(byte[] bytes, int offset, int length) throws IOException {
+        if (length <= buffer.remaining()) {
+            buffer.put(bytes, offset, length);
+            position += length;
+            return;
+        }
+        flush();
+        ByteBuffer source = ByteBuffer.wrap(bytes, offset, length);
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel
+     *
+     * @throws IOException if the bytes cannot be written
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        long at = position - buffer.remaining();
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+        buffer.clear();
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            try {
+                flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package model;
+
+import Util.WriteJournal;
+
+import java.sql.SQLException;
+
+/**
+ * Hands the writes replayed by the WriteJournal to the model they belong to
+ * A journaled write leaves the caches, indexes and change listeners as they were, they catch up here once
+ * the write reached the database
+ */
+public class JournalReplay {
+
+    private static boolean registered;
+
+    private JournalReplay() {
+    }
+
+    /**
+     * Registers the models as a replay listener of the WriteJournal, done when a model class is first used
+     * Call it before opening a journal left by an earlier run, its entries are replayed as soon as it is opened
+     */
+    public static synchronized void register() {
+        if (!registered) {
+            WriteJournal.addReplayListener(JournalReplay::replayed);
+            registered = true;
+        }
+    }
+
+    private static void replayed(String table, int id, String sql) throws SQLException {
+        switch (table) {
+            case Book.TABLE: Book.replayed(id, sql); break;
+            case Author.TABLE: Author.replayed(id, sql); break;
+            case User.TABLE: User.replayed(id, sql); break;
+            case Borrow.TABLE: Borrow.replayed(id, sql); break;
+            default: break;
+        }
+    }
+}
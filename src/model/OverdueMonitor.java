@@ -0,0 +1,379 @@
+package model;
+
+import Util.DBUtil;
+
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Detects late returns as their expected return date passes
+ * Open loans are kept in a priority queue ordered by expected return date, fed by
+ * Borrow.addToDatabase(), returnBook(), saveChanges() and delete(), so no table scan is needed
+ * When loans become overdue the listeners are called and the booking record of their users
+ * is set to false in one batch
+ */
+public class OverdueMonitor {
+
+    /**
+     * Receives the loans that became overdue
+     */
+    @FunctionalInterface
+    public interface OverdueListener {
+
+        /**
+         * Called on the monitor thread when a loan becomes overdue
+         *
+         * @param borrowing_id the id of the borrow object
+         * @param user_id the id of the user holding the book
+         * @param expected_return_date the date and time the book was expected back
+         */
+        void onOverdue(int borrowing_id, int user_id, OffsetDateTime expected_return_date);
+    }
+
+    // An open loan waiting for its expected return date
+    private static final class Deadline implements Comparable<Deadline> {
+        final int borrowing_id;
+        final int user_id;
+        final OffsetDateTime expected_return_date;
+        final long dueAtMillis;
+        boolean cancelled;
+
+        Deadline(int borrowing_id, int user_id, OffsetDateTime expected_return_date) {
+            this.borrowing_id = borrowing_id;
+            this.user_id = user_id;
+            this.expected_return_date = expected_return_date;
+            this.dueAtMillis = expected_return_date.toInstant().toEpochMilli();
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            return Long.compare(dueAtMillis, other.dueAtMillis);
+        }
+    }
+
+    // A loan scheduled, or cancelled when deadline is null, while start() reads the open loans
+    private static final class Change {
+        final int borrowing_id;
+        final Deadline deadline;
+
+        Change(int borrowing_id, Deadline deadline) {
+            this.borrowing_id = borrowing_id;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final String FLAG_USER_SQL = User.SQL.update(Collections.singletonList("booking_record"));
+
+    // Pending deadlines, guarded by LOCK, cancelled ones are skipped when they reach the head
+    private static final PriorityQueue<Deadline> QUEUE = new PriorityQueue<>();
+    private static final Map<Integer, Deadline> BY_LOAN = new HashMap<>();
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static final Condition CHANGED = LOCK.newCondition();
+
+    private static final List<OverdueListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static Thread worker;
+
+    // Changes made while start() reads the open loans, replayed before the worker starts, null when not loading
+    private static List<Change> pending;
+
+    private OverdueMonitor() {
+    }
+
+    /**
+     * Loads the open loans from the database and starts firing overdue events
+     * Loans that are already overdue fire right away
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    public static void start() throws SQLException {
+        try (Stream<Borrow> loans = DBUtil.streamFromPrimary(Borrow.SELECT_SQL + " WHERE actual_return_date IS NULL",
+                DBUtil.getURL(), Borrow::fromResultSet)) {
+            start(loans);
+        }
+    }
+
+    /**
+     * Starts firing overdue events for the given open loans
+     * Loans scheduled or cancelled while the stream is read are applied after it, before the first event
+     *
+     * @param loans the open loans, read once
+     */
+    static void start(Stream<Borrow> loans) {
+        Thread loading;
+        LOCK.lock();
+        try {
+            if (worker != null) {
+                throw new IllegalStateException("OverdueMonitor already started");
+            }
+            loading = new Thread(OverdueMonitor::run, "OverdueMonitor");
+            loading.setDaemon(true);
+            worker = loading;
+            pending = new ArrayList<>();
+        } finally {
+            LOCK.unlock();
+        }
+
+        try {
+            loans.forEach(OverdueMonitor::load);
+        } catch (RuntimeException ex) {
+            stop();
+            throw ex;
+        }
+
+        LOCK.lock();
+        try {
+            if (worker != loading) {
+                return;
+            }
+
+            // The stream may or may not have seen these changes, replaying them gives the same result either way
+            for (Change change : pending) {
+                if (change.deadline == null) remove(change.borrowing_id);
+                else put(change.deadline);
+            }
+            pending = null;
+            loading.start();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Stops the monitor and forgets every pending deadline
+     */
+    public static void stop() {
+        LOCK.lock();
+        try {
+            if (worker != null) {
+                worker.interrupt();
+                worker = null;
+            }
+            pending = null;
+            QUEUE.clear();
+            BY_LOAN.clear();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Registers a listener called when a loan becomes overdue
+     *
+     * @param listener the listener to add
+     */
+    public static void addListener(OverdueListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeListener(OverdueListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Retrieves the number of open loans waiting for their expected return date
+     *
+     * @return the number of pending deadlines
+     */
+    public static int getPendingCount() {
+        LOCK.lock();
+        try {
+            return BY_LOAN.size();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Watches an open loan, replacing its previous deadline, ignored while the monitor is stopped
+     *
+     * @param borrow the open loan
+     */
+    static void schedule(Borrow borrow) {
+        if (borrow.getExpected_return_date() == null) {
+            cancel(borrow.getBorrowing_id());
+            return;
+        }
+        Deadline deadline = new Deadline(borrow.getBorrowing_id(), borrow.getUser_id(),
+                borrow.getExpected_return_date());
+        LOCK.lock();
+        try {
+            if (worker == null) {
+                return;
+            }
+            if (pending != null) {
+                pending.add(new Change(deadline.borrowing_id, deadline));
+                return;
+            }
+            put(deadline);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Stops watching a loan because the book was returned or the loan deleted
+     *
+     * @param borrowing_id the id of the borrow object
+     */
+    static void cancel(int borrowing_id) {
+        LOCK.lock();
+        try {
+            if (pending != null) {
+                pending.add(new Change(borrowing_id, null));
+                return;
+            }
+            remove(borrowing_id);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Watches an open loan read by start()
+     *
+     * @param borrow the open loan as read from the database
+     */
+    private static void load(Borrow borrow) {
+        if (borrow.getExpected_return_date() == null) {
+            return;
+        }
+        Deadline deadline = new Deadline(borrow.getBorrowing_id(), borrow.getUser_id(),
+                borrow.getExpected_return_date());
+        LOCK.lock();
+        try {
+            if (pending != null) {
+                put(deadline);
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    // Called with LOCK held
+    private static void put(Deadline deadline) {
+        Deadline previous = BY_LOAN.put(deadline.borrowing_id, deadline);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        QUEUE.add(deadline);
+        if (QUEUE.peek() == deadline) {
+            CHANGED.signal();
+        }
+    }
+
+    // Called with LOCK held
+    private static void remove(int borrowing_id) {
+        Deadline deadline = BY_LOAN.remove(borrowing_id);
+        if (deadline != null) {
+            deadline.cancelled = true;
+        }
+    }
+
+    private static void run() {
+        Thread self = Thread.currentThread();
+        while (!self.isInterrupted()) {
+            List<Deadline> due;
+            try {
+                due = awaitDue();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            fire(due);
+        }
+    }
+
+    /**
+     * Waits until at least one deadline passed and takes every passed deadline
+     *
+     * @return the deadlines that passed, in order
+     * @throws InterruptedException if the monitor is stopped
+     */
+    private static List<Deadline> awaitDue() throws InterruptedException {
+        LOCK.lockInterruptibly();
+        try {
+            while (true) {
+                Deadline head = QUEUE.peek();
+                while (head != null && head.cancelled) {
+                    QUEUE.poll();
+                    head = QUEUE.peek();
+                }
+
+                long now = System.currentTimeMillis();
+                if (head == null) {
+                    CHANGED.await();
+                } else if (head.dueAtMillis > now) {
+                    CHANGED.await(head.dueAtMillis - now, TimeUnit.MILLISECONDS);
+                } else {
+                    List<Deadline> due = new ArrayList<>();
+                    while (head != null && head.dueAtMillis <= now) {
+                        QUEUE.poll();
+                        if (!head.cancelled) {
+                            BY_LOAN.remove(head.borrowing_id);
+                            due.add(head);
+                        }
+                        head = QUEUE.peek();
+                    }
+                    if (!due.isEmpty()) {
+                        return due;
+                    }
+                }
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Calls the listeners and flags the users of the overdue loans in one batch
+     *
+     * @param due the loans that became overdue
+     */
+    private static void fire(List<Deadline> due) {
+        Set<Integer> users = new LinkedHashSet<>();
+        for (Deadline deadline : due) {
+            users.add(deadline.user_id);
+            for (OverdueListener listener : LISTENERS) {
+                try {
+                    listener.onOverdue(deadline.borrowing_id, deadline.user_id, deadline.expected_return_date);
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(users.size());
+        for (int user_id : users) {
+            rows.add(new Object[]{false, user_id});
+        }
+        try {
+            DBUtil.executeBatch(FLAG_USER_SQL, DBUtil.getURL(), rows);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        } finally {
+
+            // Cached and snapshot users still carry their old booking record
+            for (int user_id : users) {
+                User.getCache().invalidate(user_id);
+                CatalogueSnapshot.changed(CatalogueSnapshot.USER, user_id);
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package model;
+
+import Util.DBUtil;
+import Util.TableSql;
+import Util.Transaction;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects inserts, updates and deletes of books, authors, users and borrow objects
+ * and writes them to the database in one transaction
+ * Statements are grouped into batches and run in dependency order: authors and users,
+ * then books, then borrow objects, and the reverse order for deletes
+ * A new entity referring to another new entity names it when it is added, see add(Object, Object...),
+ * and its foreign key is bound to the id generated for that entity within the same transaction
+ */
+public class Session implements AutoCloseable {
+
+    // Models in the order their rows may be inserted, a row only refers to rows of earlier models
+    private static final Class<?>[] INSERT_ORDER = {Author.class, User.class, Book.class, Borrow.class};
+
+    private static final Object[] NO_PARENTS = {};
+
+    private final String url;
+
+    // Pending work, guarded by this
+    private final Set<Object> inserts = new LinkedHashSet<>();
+    private final Set<Object> updates = new LinkedHashSet<>();
+    private final Set<Object> deletes = new LinkedHashSet<>();
+
+    // Entities each pending insert refers to, whose ids fill its foreign keys, guarded by this
+    private final Map<Object, Object[]> parents = new HashMap<>();
+
+    private ScheduledExecutorService writeBehind;
+
+    /**
+     * Instantiates a Session writing to the configured database, see DBUtil.getURL()
+     */
+    public Session() {
+        this(DBUtil.getURL());
+    }
+
+    /**
+     * Instantiates a Session writing to the given database
+     *
+     * @param url the Url for the connection, should be one of the three predefined constants
+     */
+    public Session(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Records a new book, author, user or borrow object to insert on commit
+     * A foreign key still set to -1 must be given by one of the parents, such as the new Book and User of a new
+     * Borrow. The foreign key is set to the id the parent gets in the same transaction, or already has.
+     *
+     * @param entity the entity to insert
+     * @param parents the entities the foreign keys of the entity refer to, pending in this session or saved
+     * @throws IllegalArgumentException if the entity does not refer to a parent type or a foreign key is
+     *                                  unsaved and not given by a parent
+     */
+    public synchronized void add(Object entity, Object... parents) {
+        checkType(entity);
+        List<String> columns = sql(entity.getClass()).columns();
+        Object[] params = insertParams(entity);
+        for (Object parent : parents) {
+            checkType(parent);
+            if (!columns.contains(idColumn(parent.getClass()))) {
+                throw new IllegalArgumentException(entity.getClass().getSimpleName() + " does not refer to a " +
+                        parent.getClass().getSimpleName());
+            }
+        }
+        for (Class<?> type : INSERT_ORDER) {
+            int index = columns.indexOf(idColumn(type));
+            if (index >= 0 && Integer.valueOf(-1).equals(params[index]) && parentOfType(parents, type) == null) {
+                throw new IllegalArgumentException(entity.getClass().getSimpleName() + " refers to an unsaved " +
+                        type.getSimpleName() + ", pass it to add() as a parent");
+            }
+        }
+        inserts.add(entity);
+        if (parents.length > 0) {
+            this.parents.put(entity, parents.clone());
+        } else {
+            this.parents.remove(entity);
+        }
+    }
+
+    /**
+     * Records a book, author, user or borrow object whose modified columns are written on commit
+     * Entities that are also pending insertion are inserted with their current values instead
+     *
+     * @param entity the modified entity
+     */
+    public synchronized void update(Object entity) {
+        checkType(entity);
+        if (!inserts.contains(entity)) {
+            updates.add(entity);
+        }
+    }
+
+    /**
+     * Records a book, author, user or borrow object to delete on commit
+     * A pending insert of the same entity is simply dropped
+     *
+     * @param entity the entity to delete
+     */
+    public synchronized void delete(Object entity) {
+        checkType(entity);
+        updates.remove(entity);
+        parents.remove(entity);
+        if (!inserts.remove(entity)) {
+            deletes.add(entity);
+        }
+    }
+
+    /**
+     * Checks whether there is pending work
+     *
+     * @return true if commit() has nothing to write, otherwise false
+     */
+    public synchronized boolean isEmpty() {
+        return inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty();
+    }
+
+    /**
+     * Writes every pending insert, update and delete in one transaction
+     * Inserted entities get their generated ids and dates, and their foreign keys the ids of their parents,
+     * once the transaction is committed
+     * If anything fails nothing is written and the pending work is kept so commit() can be retried
+     *
+     * @return the number of rows affected, updates and deletes matching no row are not counted
+     * @throws SQLException if a database access error occurs
+     * @throws IllegalStateException if a parent was neither saved nor inserted by this session
+     */
+    public synchronized int commit() throws SQLException {
+        if (isEmpty()) {
+            return 0;
+        }
+        for (Map.Entry<Object, Object[]> entry : parents.entrySet()) {
+            for (Object parent : entry.getValue()) {
+                if (id(parent) < 0 && !inserts.contains(parent)) {
+                    throw new IllegalStateException(entry.getKey().getClass().getSimpleName() +
+                            " refers to a " + parent.getClass().getSimpleName() + " that is neither saved nor added");
+                }
+            }
+        }
+
+        long rows = 0;
+        Map<Object, Object[]> generatedKeys = new LinkedHashMap<>();
+        Map<Object, Integer> affected = new IdentityHashMap<>();
+        try (Transaction tx = DBUtil.beginTransaction(url)) {
+            for (Class<?> type : INSERT_ORDER) {
+                rows += insert(tx, type, generatedKeys);
+            }
+            for (Class<?> type : INSERT_ORDER) {
+                rows += update(tx, type, affected);
+            }
+            for (int i = INSERT_ORDER.length - 1; i >= 0; i--) {
+                rows += delete(tx, INSERT_ORDER[i], affected);
+            }
+            tx.commit();
+        }
+
+        // Only touch the entities once the transaction is committed
+        generatedKeys.forEach(Session::applyKeys);
+        parents.forEach((entity, entityParents) -> {
+            for (Object parent : entityParents) {
+                setForeignKey(entity, parent);
+            }
+        });
+        List<ChangeEvent> events = changeEvents(affected);
+        for (Object entity : inserts) afterWrite(entity);
+        for (Object entity : updates) afterWrite(entity);
+        for (Object entity : deletes) afterWrite(entity);
+        updateIndexes();
+        events.forEach(ChangeBus::publish);
+        inserts.clear();
+        updates.clear();
+        deletes.clear();
+        parents.clear();
+        return (int) rows;
+    }
+
+    /**
+     * Commits the pending work periodically in the background until the session is closed
+     * Failed commits are reported and retried on the next run
+     *
+     * @param interval the time between two commits
+     */
+    public synchronized void startWriteBehind(Duration interval) {
+        if (writeBehind != null) {
+            throw new IllegalStateException("Write-behind already started");
+        }
+        writeBehind = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Session-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writeBehind.scheduleWithFixedDelay(() -> {
+            try {
+                commit();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the write-behind, if started, and commits the pending work
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = writeBehind;
+            writeBehind = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        commit();
+    }
+
+    private int insert(Transaction tx, Class<?> type, Map<Object, Object[]> generatedKeys) throws SQLException {
+        List<Object> entities = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        OffsetDateTime now = OffsetDateTime.now();
+        List<String> columns = sql(type).columns();
+        for (Object entity : inserts) {
+            if (entity.getClass() == type) {
+                stamp(entity, now);
+                entities.add(entity);
+                Object[] params = insertParams(entity);
+
+                // Parents were inserted by an earlier batch of this transaction, bind the ids they got
+                for (Object parent : parents.getOrDefault(entity, NO_PARENTS)) {
+                    Object[] keys = generatedKeys.get(parent);
+                    params[columns.indexOf(idColumn(parent.getClass()))] =
+                            keys != null ? ((Number) keys[0]).intValue() : id(parent);
+                }
+                rows.add(params);
+            }
+        }
+
+        List<Object[]> keys = tx.executeBatch(insertSql(type), rows, keyColumns(type));
+        for (int i = 0; i < keys.size() && i < entities.size(); i++) {
+            generatedKeys.put(entities.get(i), keys.get(i));
+        }
+        return rows.size();
+    }
+
+    private long update(Transaction tx, Class<?> type, Map<Object, Integer> affected) throws SQLException {
+
+        // Entities with the same modified columns share one batch
+        Map<String, List<Object>> batches = new LinkedHashMap<>();
+        for (Object entity : updates) {
+            String sql = (entity.getClass() == type) ? updateSql(entity) : null;
+            if (sql != null) {
+                batches.computeIfAbsent(sql, key -> new ArrayList<>()).add(entity);
+            }
+        }
+
+        long rows = 0;
+        for (Map.Entry<String, List<Object>> batch : batches.entrySet()) {
+            List<Object[]> params = new ArrayList<>(batch.getValue().size());
+            for (Object entity : batch.getValue()) {
+                params.add(updateParams(entity));
+            }
+            rows += execute(tx, batch.getKey(), batch.getValue(), params, affected);
+        }
+        return rows;
+    }
+
+    private long delete(Transaction tx, Class<?> type, Map<Object, Integer> affected) throws SQLException {
+        List<Object> entities = new ArrayList<>();
+        List<Object[]> params = new ArrayList<>();
+        for (Object entity : deletes) {
+            if (entity.getClass() == type) {
+                entities.add(entity);
+                params.add(new Object[]{id(entity)});
+            }
+        }
+        return execute(tx, deleteSql(type), entities, params, affected);
+    }
+
+    /**
+     * Runs a batch of updates or deletes and records the number of rows each entity matched
+     */
+    private static long execute(Transaction tx, String sql, List<Object> entities, List<Object[]> params,
+                                Map<Object, Integer> affected) throws SQLException {
+        int[] counts = tx.executeBatchCounts(sql, params);
+        for (int i = 0; i < counts.length && i < entities.size(); i++) {
+            affected.put(entities.get(i), counts[i]);
+        }
+        return Transaction.affectedRows(counts);
+    }
+
+    /**
+     * Creates the change events of the committed work, before afterWrite() forgets the modified columns
+     * Updates and deletes that matched no row changed nothing and get no event
+     *
+     * @param affected the number of rows matched by each update and delete
+     * @return the events in the order the rows were written
+     */
+    private List<ChangeEvent> changeEvents(Map<Object, Integer> affected) {
+        List<ChangeEvent> events = new ArrayList<>();
+        for (Object entity : inserts) {
+            events.add(ChangeEvent.inserted(table(entity), id(entity)));
+        }
+        for (Object entity : updates) {
+            if (updateSql(entity) != null && changed(affected, entity)) events.add(updateEvent(entity));
+        }
+        for (Object entity : deletes) {
+            if (changed(affected, entity)) events.add(ChangeEvent.deleted(table(entity), id(entity)));
+        }
+        return events;
+    }
+
+    private static boolean changed(Map<Object, Integer> affected, Object entity) {
+        int count = affected.getOrDefault(entity, 0);
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+
+    /**
+     * Reports the committed books and loans to the in-memory indexes
+     */
+    private void updateIndexes() {
+        for (Object entity : inserts) {
+            if (entity instanceof Book) ((Book) entity).reindex();
+            else if (entity instanceof Borrow) ((Borrow) entity).loanOpened();
+        }
+        for (Object entity : updates) {
+            if (entity instanceof Book) {
+                ((Book) entity).reindex();
+            } else if (entity instanceof Borrow && ((Borrow) entity).getActual_return_date() == null) {
+                ((Borrow) entity).loanOpened();
+            }
+        }
+        for (Object entity : deletes) {
+            if (entity instanceof Book) ((Book) entity).unindex();
+            else if (entity instanceof Borrow) ((Borrow) entity).loanClosed();
+        }
+    }
+
+    private static void checkType(Object entity) {
+        for (Class<?> type : INSERT_ORDER) {
+            if (entity.getClass() == type) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Not a model class: " + entity.getClass().getName());
+    }
+
+    private static Object parentOfType(Object[] parents, Class<?> type) {
+        for (Object parent : parents) {
+            if (parent.getClass() == type) {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+    private static TableSql sql(Class<?> type) {
+        if (type == Book.class) return Book.SQL;
+        if (type == Author.class) return Author.SQL;
+        if (type == User.class) return User.SQL;
+        return Borrow.SQL;
+    }
+
+    private static String idColumn(Class<?> type) {
+        return sql(type).allColumns().get(0);
+    }
+
+    private static String insertSql(Class<?> type) {
+        if (type == Book.class) return Book.INSERT_SQL;
+        if (type == Author.class) return Author.INSERT_SQL;
+        if (type == User.class) return User.INSERT_SQL;
+        return Borrow.INSERT_SQL;
+    }
+
+    private static String[] keyColumns(Class<?> type) {
+        if (type == Book.class) return Book.KEY_COLUMNS;
+        if (type == Author.class) return Author.KEY_COLUMNS;
+        if (type == User.class) return User.KEY_COLUMNS;
+        return Borrow.KEY_COLUMNS;
+    }
+
+    private static String deleteSql(Class<?> type) {
+        if (type == Book.class) return Book.DELETE_SQL;
+        if (type == Author.class) return Author.DELETE_SQL;
+        if (type == User.class) return User.DELETE_SQL;
+        return Borrow.DELETE_SQL;
+    }
+
+    private static void stamp(Object entity, OffsetDateTime now) {
+        if (entity instanceof Book) ((Book) entity).stamp(now);
+        else if (entity instanceof Author) ((Author) entity).stamp(now);
+        else if (entity instanceof User) ((User) entity).stamp(now);
+        else ((Borrow) entity).stamp(now);
+    }
+
+    private static Object[] insertParams(Object entity) {
+        if (entity instanceof Book) return ((Book) entity).insertParams();
+        if (entity instanceof Author) return ((Author) entity).insertParams();
+        if (entity instanceof User) return ((User) entity).insertParams();
+        return ((Borrow) entity).insertParams();
+    }
+
+    private static String updateSql(Object entity) {
+        if (entity instanceof Book) return ((Book) entity).updateSql();
+        if (entity instanceof Author) return ((Author) entity).updateSql();
+        if (entity instanceof User) return ((User) entity).updateSql();
+        return ((Borrow) entity).updateSql();
+    }
+
+    private static Object[] updateParams(Object entity) {
+        if (entity instanceof Book) return ((Book) entity).updateParams();
+        if (entity instanceof Author) return ((Author) entity).updateParams();
+        if (entity instanceof User) return ((User) entity).updateParams();
+        return ((Borrow) entity).updateParams();
+    }
+
+    private static String table(Object entity) {
+        if (entity instanceof Book) return Book.TABLE;
+        if (entity instanceof Author) return Author.TABLE;
+        if (entity instanceof User) return User.TABLE;
+        return Borrow.TABLE;
+    }
+
+    private static ChangeEvent updateEvent(Object entity) {
+        if (entity instanceof Book) return ((Book) entity).updateEvent();
+        if (entity instanceof Author) return ((Author) entity).updateEvent();
+        if (entity instanceof User) return ((User) entity).updateEvent();
+        return ((Borrow) entity).updateEvent();
+    }
+
+    private static int id(Object entity) {
+        if (entity instanceof Book) return ((Book) entity).getBook_id();
+        if (entity instanceof Author) return ((Author) entity).getAuthor_id();
+        if (entity instanceof User) return ((User) entity).getUser_id();
+        return ((Borrow) entity).getBorrowing_id();
+    }
+
+    private static void applyKeys(Object entity, Object[] keys) {
+        if (entity instanceof Book) ((Book) entity).applyKeys(keys);
+        else if (entity instanceof Author) ((Author) entity).applyKeys(keys);
+        else if (entity instanceof User) ((User) entity).applyKeys(keys);
+        else ((Borrow) entity).applyKeys(keys);
+    }
+
+    private static void setForeignKey(Object entity, Object parent) {
+        int id = id(parent);
+        if (entity instanceof Book) {
+            ((Book) entity).setAuthor_id(id);
+        } else if (parent instanceof Book) {
+            ((Borrow) entity).setBook_id(id);
+        } else {
+            ((Borrow) entity).setUser_id(id);
+        }
+    }
+
+    private static void afterWrite(Object entity) {
+        if (entity instanceof Book) ((Book) entity).afterWrite();
+        else if (entity instanceof Author) ((Author) entity).afterWrite();
+        else if (entity instanceof User) ((User) entity).afterWrite();
+        else ((Borrow) entity).afterWrite();
+    }
+}
@@ -1,22 +1,67 @@
 package model;
 
+import Util.BulkLoader;
 import Util.DBUtil;
 import Util.DateTimeUtil;
+import Util.EntityCache;
+import Util.Page;
+import Util.TableSql;
+import Util.WriteJournal;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Represents a User
  */
 public class User {
 
+    // Name of the table, used in change events
+    static final String TABLE = "user";
+
+    // Columns generated by the database on insert
+    static final String[] KEY_COLUMNS = {"user_id", "date_added"};
+
+    // Statements of the table, generated once for the dialect of the configured database
+    static final TableSql SQL = new TableSql(DBUtil.getDialect(), TABLE, "user_id", "first_name", "last_name",
+            "date_added", "booking_record");
+
+    // SQL used to insert a user
+    static final String INSERT_SQL = SQL.insert();
+
+    // SQL used to read users, filters are appended by the finders
+    static final String SELECT_SQL = SQL.select();
+
+    // SQL used to delete a user
+    static final String DELETE_SQL = SQL.delete();
+
+    // Read-through cache used by findById()
+    private static final EntityCache<User> CACHE = new EntityCache<>(10_000, Duration.ofMinutes(10),
+            User::copy);
+
+    // Replayed writes of the write journal reach the caches, indexes and change listeners
+    static {
+        JournalReplay.register();
+    }
+
     //Attributes of a user
-    private final int user_id;
+    private int user_id;
     private String first_name;
     private String last_name;
     private OffsetDateTime date_added;
     private boolean booking_record;
 
+    // Columns modified by the setters since the last load or save
+    private final ChangeTracker changes = new ChangeTracker();
+
     /**
      * Instantiates a User object with all properties set to parameters
      *
@@ -38,7 +83,7 @@ public class User {
     /**
      * Instantiates a User object with minimum parameters to create a new user
      * Sets user_id to -1 as dummy data
-     * user_id is set automatically by the database
+     * user_id is set automatically by the database and filled in by addToDatabase()
      * date_added is set to null, will be the date and time it actually gets stored in the database
      * Sets booking_record to true by default meaning a good booking record
      *
@@ -74,6 +119,7 @@ public class User {
      */
     public void setFirst_name(String first_name) {
         this.first_name = first_name;
+        changes.record("first_name", first_name);
     }
 
     /**
@@ -92,6 +138,7 @@ public class User {
      */
     public void setLast_name(String last_name) {
         this.last_name = last_name;
+        changes.record("last_name", last_name);
     }
 
     /**
@@ -119,70 +166,410 @@ public class User {
      */
     public void setBooking_record(boolean booking_record) {
         this.booking_record = booking_record;
+        changes.record("booking_record", booking_record);
     }
 
     /**
      * Adds the user to the database
+     * Sets user_id and date_added to the values stored by the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String addToDatabase() {
-        String sql = "INSERT INTO public.user (first_name, last_name, date_added, booking_record)" +
-                " VALUES (?, ?, ?, ?)";
 
         // Set the date added to the current time
         this.date_added = OffsetDateTime.now();
 
         try {
 
-            // Use executeUpdate() method from DBUtil to save the user in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.first_name,
-                    this.last_name, this.date_added, this.booking_record));
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueueInsert(TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+            }
+
+            // Use executeInsert() method from DBUtil to save the user and read back the generated keys
+            Object[] keys = DBUtil.executeInsert(INSERT_SQL, DBUtil.getURL(), KEY_COLUMNS,
+                    insertParams());
+            if (keys == null) {
+                return "0";
+            }
+            applyKeys(keys);
+            changes.clear();
+            ChangeBus.publish(ChangeEvent.inserted(TABLE, this.user_id));
+            return "1";
+
+        } catch (Exception ex) {
+            return WriteJournal.enqueueInsertIfOffline(ex, TABLE, KEY_COLUMNS[0], INSERT_SQL, insertParams());
+        }
+    }
+
+    /**
+     * Adds the user to the database without blocking the caller. See addToDatabase()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> addToDatabaseAsync() {
+        return DBUtil.supplyAsync(this::addToDatabase);
+    }
+
+    /**
+     * Adds many users to the database using batched inserts
+     * Every user in a chunk is committed together and gets its generated user_id and date_added
+     *
+     * @param users the users to add
+     * @return the number of rows affected or the error message if any occurs
+     */
+    public static String addAllToDatabase(Collection<User> users) {
+        List<Object[]> rows = new ArrayList<>(users.size());
+
+        // Set the date added of every user to the current time
+        OffsetDateTime now = OffsetDateTime.now();
+        for (User user : users) {
+            user.date_added = now;
+            rows.add(user.insertParams());
+        }
+
+        try {
+
+            // Use executeInsertRows() method from DBUtil to save the users in the database
+            List<Object[]> keys = DBUtil.executeInsertRows(SQL, DBUtil.getURL(), rows, KEY_COLUMNS);
+
+            // Keys come back in the order the rows were inserted
+            Iterator<Object[]> iterator = keys.iterator();
+            for (User user : users) {
+                if (!iterator.hasNext()) break;
+                user.applyKeys(iterator.next());
+                user.changes.clear();
+                ChangeBus.publish(ChangeEvent.inserted(TABLE, user.user_id));
+            }
+            return String.valueOf(keys.size());
+
+        } catch (Exception ex) {
+            return ex.getMessage();
+        }
+    }
+
+    /**
+     * Loads many users at once, streaming them into COPY on PostgreSQL, see BulkLoader
+     * Users without a date added get the current time. The new rows are then read back, so the catalogue
+     * snapshot and the change listeners learn about them, see imported()
+     *
+     * @param users the users to load, must be closed by the caller
+     * @param chunkRows the number of users committed together
+     * @param listener told about the outcome of every chunk or null to only print the errors
+     * @return the number of rows loaded or the error message if any occurs
+     */
+    public static String importAll(Stream<User> users, int chunkRows, BulkLoader.ChunkListener listener) {
+        OffsetDateTime now = OffsetDateTime.now();
+        Iterator<Object[]> rows = users.map(user -> {
+            if (user.date_added == null) user.date_added = now;
+            return user.insertParams();
+        }).iterator();
+
+        try {
+            int lastId = lastId();
+            long loaded = BulkLoader.load(SQL, DBUtil.getURL(), rows, chunkRows, listener);
+            imported(lastId);
+            return String.valueOf(loaded);
 
         } catch (Exception ex) {
             return ex.getMessage();
         }
     }
 
+    /**
+     * Reports the users loaded by importAll() to the catalogue snapshot and the change listeners
+     * COPY does not return the generated ids, the new rows are the ones after the last id stored before the
+     * import. A user inserted by another writer while the import runs is reported a second time.
+     *
+     * @param lastId the greatest user_id stored before the import
+     * @throws SQLException if a database access error occurs
+     */
+    private static void imported(int lastId) throws SQLException {
+        try (Stream<User> users = DBUtil.streamFromPrimary(SELECT_SQL + " WHERE user_id > ? ORDER BY user_id",
+                DBUtil.getURL(), User::fromResultSet, lastId)) {
+            users.forEach(user -> {
+                CatalogueSnapshot.changed(CatalogueSnapshot.USER, user.user_id);
+                ChangeBus.publish(ChangeEvent.inserted(TABLE, user.user_id));
+            });
+        }
+    }
+
+    /**
+     * Reads the greatest user_id stored
+     *
+     * @return the id or 0 if the table is empty
+     * @throws SQLException if a database access error occurs
+     */
+    private static int lastId() throws SQLException {
+        try (Stream<Integer> ids = DBUtil.streamFromPrimary("SELECT MAX(user_id) FROM " + SQL.table(),
+                DBUtil.getURL(), rs -> rs.getInt(1))) {
+            return ids.findFirst().orElse(0);
+        }
+    }
+
+    /**
+     * Sets the user_id and date_added generated by the database
+     *
+     * @param keys the values of KEY_COLUMNS returned by the database
+     */
+    void applyKeys(Object[] keys) {
+        this.user_id = ((Number) keys[0]).intValue();
+        if (keys[1] != null) {
+            this.date_added = DateTimeUtil.fromSqlValue(keys[1]);
+        }
+    }
+
+    /**
+     * Builds the UPDATE statement writing the columns modified since the last load or save
+     *
+     * @return the SQL statement or null if nothing was modified
+     */
+    String updateSql() {
+        if (changes.isEmpty()) {
+            return null;
+        }
+        return SQL.update(changes.columns());
+    }
+
+    /**
+     * Creates the change event of the statement built by updateSql(), before it is committed
+     *
+     * @return the event naming the modified columns
+     */
+    ChangeEvent updateEvent() {
+        return ChangeEvent.updated(TABLE, this.user_id, changes.columns());
+    }
+
+    /**
+     * Retrieves the parameters of the statement built by updateSql()
+     *
+     * @return the new values of the modified columns followed by the id
+     */
+    Object[] updateParams() {
+        return changes.parameters(this.user_id);
+    }
+
+    /**
+     * Forgets the recorded modifications and drops the cached copy, called once a write was committed
+     */
+    void afterWrite() {
+        changes.clear();
+        CACHE.invalidate(this.user_id);
+        CatalogueSnapshot.changed(CatalogueSnapshot.USER, this.user_id);
+    }
+
+    /**
+     * Catches up with a journaled write of a user once the write journal replayed it
+     * The modified columns are not journaled, the event of a replayed update names every column
+     *
+     * @param user_id the id of the user
+     * @param sql the statement that was replayed
+     * @throws SQLException if a database access error occurs
+     */
+    static void replayed(int user_id, String sql) throws SQLException {
+        CACHE.invalidate(user_id);
+        CatalogueSnapshot.changed(CatalogueSnapshot.USER, user_id);
+        if (sql.equals(DELETE_SQL)) {
+            ChangeBus.publish(ChangeEvent.deleted(TABLE, user_id));
+        } else {
+            ChangeBus.publish(sql.equals(INSERT_SQL) ? ChangeEvent.inserted(TABLE, user_id) :
+                    ChangeEvent.updated(TABLE, user_id, SQL.columns()));
+        }
+    }
+
+    /**
+     * Sets the date added of a user about to be inserted
+     *
+     * @param now the date and time the user is stored
+     */
+    void stamp(OffsetDateTime now) {
+        this.date_added = now;
+    }
+
+    /**
+     * Retrieves the parameters of INSERT_SQL for this user
+     *
+     * @return the values to insert, in column order
+     */
+    Object[] insertParams() {
+        return new Object[]{this.first_name, this.last_name, this.date_added, this.booking_record};
+    }
+
     /**
      * Save the changes made to the user in the database
+     * Only the columns modified since the last load or save are written
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String saveChanges() {
-        String sql = "UPDATE public.user SET " +
-                "first_name = ?, " +
-                "last_name = ?, " +
-                "booking_record = ? " +
-                "WHERE user_id = ?";
+
+        // Skip the round trip if no setter was called since the last load or save
+        if (changes.isEmpty()) {
+            return "0";
+        }
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.user_id < 0) {
+            return "The user is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.user_id, updateSql(), updateParams());
+            }
+
             // Use executeUpdate() method from DBUtil to save the changes in the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.first_name,
-                    this.last_name, this.booking_record, this.user_id));
+            int rows = DBUtil.executeUpdate(updateSql(), DBUtil.getURL(), updateParams());
+            if (rows > 0) ChangeBus.publish(updateEvent());
+            changes.clear();
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.user_id, updateSql(), updateParams());
+        } finally {
+
+            // Drop the cached copy so the next lookup reads the stored row
+            CACHE.invalidate(this.user_id);
+            CatalogueSnapshot.changed(CatalogueSnapshot.USER, this.user_id);
         }
     }
 
+    /**
+     * Save the changes made to the user in the database without blocking the caller. See saveChanges()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> saveChangesAsync() {
+        return DBUtil.supplyAsync(this::saveChanges);
+    }
+
     /**
      * Delete the user from the database
      *
      * @return the number of rows affected or the error message if any occurs
      */
     public String delete() {
-        String sql = "DELETE FROM public.user WHERE user_id = ?";
+
+        // An insert still waiting in the write journal has no id, there is no row to write yet
+        if (this.user_id < 0) {
+            return "The user is not in the database yet";
+        }
+
         try {
 
+            // Keep the order of the writes while journaled ones wait for the database
+            if (WriteJournal.isBacklogged()) {
+                return WriteJournal.enqueue(TABLE, this.user_id, DELETE_SQL, this.user_id);
+            }
+
             // Use executeUpdate() method from DBUtil to delete the user from the database
-            return String.valueOf(DBUtil.executeUpdate(sql, DBUtil.getPostreSQLURL(), this.user_id));
+            int rows = DBUtil.executeUpdate(DELETE_SQL, DBUtil.getURL(), this.user_id);
+            if (rows > 0) ChangeBus.publish(ChangeEvent.deleted(TABLE, this.user_id));
+            return String.valueOf(rows);
 
         } catch (Exception ex) {
-            return ex.getMessage();
+            return WriteJournal.enqueueIfOffline(ex, TABLE, this.user_id, DELETE_SQL, this.user_id);
+        } finally {
+
+            // Drop the cached copy so the next lookup reads the stored row
+            CACHE.invalidate(this.user_id);
+            CatalogueSnapshot.changed(CatalogueSnapshot.USER, this.user_id);
+        }
+    }
+
+    /**
+     * Delete the user from the database without blocking the caller. See delete()
+     *
+     * @return a future completed with the number of rows affected or the error message if any occurs
+     */
+    public CompletableFuture<String> deleteAsync() {
+        return DBUtil.supplyAsync(this::delete);
+    }
+
+    /**
+     * Retrieves the user with the given id, from the cache if it was read recently
+     * Every call returns its own copy, modifying it does not change the cached one until saveChanges()
+     *
+     * @param user_id the id of the user
+     * @return the user or null if there is none with that id
+     * @throws SQLException if a database access error occurs
+     */
+    public static User findById(int user_id) throws SQLException {
+        return CACHE.get(user_id, User::loadById);
+    }
+
+    /**
+     * Retrieves the cache used by findById(), to read its statistics or clear it
+     *
+     * @return the user cache
+     */
+    public static EntityCache<User> getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Creates a copy of the user with the same values and no unsaved change, for the cache
+     *
+     * @return the copy
+     */
+    private User copy() {
+        return new User(user_id, first_name, last_name, date_added, booking_record);
+    }
+
+    /**
+     * Reads the user with the given id from the database itself, a replica could hand an old row to the cache
+     *
+     * @param user_id the id of the user
+     * @return the user or null if there is none with that id
+     * @throws SQLException if a database access error occurs
+     */
+    private static User loadById(int user_id) throws SQLException {
+        try (Stream<User> users = DBUtil.streamFromPrimary(SELECT_SQL + " WHERE user_id = ?",
+                DBUtil.getURL(), User::fromResultSet, user_id)) {
+            return users.findFirst().orElse(null);
         }
     }
 
+    /**
+     * Retrieves every user in the database
+     * Rows are read lazily so the whole table is never held in memory
+     *
+     * @return a Stream of the users, must be closed after use
+     * @throws SQLException if a database access error occurs
+     */
+    public static Stream<User> findAll() throws SQLException {
+        return DBUtil.stream(SELECT_SQL + " ORDER BY user_id", DBUtil.getURL(), User::fromResultSet);
+    }
+
+    /**
+     * Retrieves one page of the users ordered by the date they were added then id
+     *
+     * @param token the token of the previous page or null for the first page
+     * @param pageSize the maximum number of users of the page, from 1 to 1000
+     * @return the page
+     * @throws SQLException if a database access error occurs
+     * @throws IllegalArgumentException if the token is not valid or the page size out of range
+     */
+    public static Page<User> findPage(String token, int pageSize) throws SQLException {
+        return DBUtil.page(SELECT_SQL, "date_added", "user_id", token, pageSize, DBUtil.getURL(),
+                User::fromResultSet);
+    }
+
+    /**
+     * Creates a user from the current row of a ResultSet read with SELECT_SQL
+     *
+     * @param rs the ResultSet positioned on the row
+     * @return the user
+     * @throws SQLException if a database access error occurs
+     */
+    static User fromResultSet(ResultSet rs) throws SQLException {
+        return new User(rs.getInt("user_id"), rs.getString("first_name"), rs.getString("last_name"),
+                rs.getObject("date_added", OffsetDateTime.class), rs.getBoolean("booking_record"));
+    }
+
     /**
      * Returns a string representation of the user
      *
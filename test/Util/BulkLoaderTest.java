@@ -0,0 +1,125 @@
+package Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class BulkLoaderTest {
+
+    // Not PostgreSQL, so the rows go through the multi-row inserts
+    private static final String URL = "jdbc:h2:mem:bulk;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    @Test
+    void otherDatabasesLoadChunksWithInsertsAndReportEachChunk() throws SQLException {
+        DBUtil.executeUpdate("CREATE TABLE IF NOT EXISTS shelf (shelf_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, added TIMESTAMP WITH TIME ZONE)", URL);
+        TableSql table = new TableSql(Dialect.MYSQL, "shelf", "shelf_id", "name", "added");
+        OffsetDateTime now = OffsetDateTime.now();
+        List<Object[]> rows = Arrays.asList(new Object[]{"A", now}, new Object[]{"B", now},
+                new Object[]{null, now}, new Object[]{"D", null}, new Object[]{"E", now});
+
+        // The third row breaks the second chunk only
+        List<Object[]> chunks = new ArrayList<>();
+        List<SQLException> errors = new ArrayList<>();
+        long loaded = BulkLoader.load(table, URL, rows.iterator(), 2, (chunk, count, loadedRows, error) -> {
+            chunks.add(new Object[]{chunk, count, loadedRows});
+            errors.add(error);
+        });
+
+        assertEquals(3, loaded);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new Object[]{0, 2, 2L}, chunks.get(0));
+        assertArrayEquals(new Object[]{1, 2, 2L}, chunks.get(1));
+        assertArrayEquals(new Object[]{2, 1, 3L}, chunks.get(2));
+        assertNull(errors.get(0));
+        assertNotNull(errors.get(1));
+        assertNull(errors.get(2));
+        try (Stream<String> names = DBUtil.stream("SELECT name FROM shelf ORDER BY shelf_id", URL,
+                rs -> rs.getString(1))) {
+            assertArrayEquals(new String[]{"A", "B", "E"}, names.toArray());
+        }
+    }
+
+    @Test
+    void copyChunkErrorsAreReportedAndTheOtherChunksLoaded() {
+        SQLException refused = new SQLException("Refused");
+        List<SQLException> errors = new ArrayList<>();
+        long loaded = BulkLoader.copy(chunk -> chunk.index == 1 ? refused : null,
+                Stream.generate(() -> new Object[]{1}).limit(5).iterator(), 2, 1,
+                (chunk, count, loadedRows, error) -> errors.add(error));
+
+        assertEquals(3, loaded);
+        assertEquals(Arrays.asList(null, refused, null), errors);
+    }
+
+    @Test
+    void writerFailureStopsTheEncoderAndReachesTheCaller() {
+        IllegalStateException failure = new IllegalStateException("Driver failure");
+
+        // Rows never run out, only the failure of the writer ends the load
+        RuntimeException thrown = assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+                assertThrows(RuntimeException.class, () -> BulkLoader.copy(chunk -> {
+                    throw failure;
+                }, Stream.generate(() -> new Object[]{1}).iterator(), 10, 1, (chunk, count, loadedRows, error) -> {
+                })));
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    void encoderWritesTheBinaryCopyFormat() {
+        BulkLoader.Chunk chunk = new BulkLoader.Chunk(32);
+        BulkLoader.Encoder encoder = new BulkLoader.Encoder();
+        encoder.start(chunk, 0);
+
+        // Longer than the buffer, so encoding overflows and grows it
+        String text = "é".repeat(100) + "€";
+        OffsetDateTime date = OffsetDateTime.of(2000, 1, 1, 1, 0, 0, 1_000, ZoneOffset.ofHours(1));
+        encoder.row(new Object[]{text, null, date, 7, 8L, true}, 6);
+        encoder.finish();
+
+        ByteBuffer data = ByteBuffer.wrap(chunk.buffer.array(), 0, chunk.buffer.position());
+        byte[] signature = new byte[11];
+        data.get(signature);
+        assertArrayEquals(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0}, signature);
+        assertEquals(0, data.getInt());
+        assertEquals(0, data.getInt());
+
+        assertEquals(6, data.getShort());
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        assertEquals(text, new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(-1, data.getInt());
+
+        // Microseconds since 2000-01-01 UTC
+        assertEquals(8, data.getInt());
+        assertEquals(1, data.getLong());
+        assertEquals(4, data.getInt());
+        assertEquals(7, data.getInt());
+        assertEquals(8, data.getInt());
+        assertEquals(8L, data.getLong());
+        assertEquals(1, data.getInt());
+        assertEquals(1, data.get());
+
+        assertEquals(-1, data.getShort());
+        assertFalse(data.hasRemaining());
+        assertEquals(1, chunk.rows);
+    }
+}
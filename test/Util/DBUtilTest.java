@@ -0,0 +1,29 @@
+package Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DBUtilTest {
+
+    @Test
+    void queryResultKeepsTypedGetObject() throws SQLException {
+        OffsetDateTime date = OffsetDateTime.parse("2024-03-01T10:15:30Z");
+        try (ResultSet rs = DBUtil.executeQuery("SELECT CAST(? AS TIMESTAMP WITH TIME ZONE) AS added, " +
+                "CAST(NULL AS TIMESTAMP WITH TIME ZONE), CAST(? AS DATE), 42", DBUtil.getURL(), date, "2024-03-01")) {
+            assertTrue(rs.next());
+            assertEquals(date.toInstant(), rs.getObject(1, OffsetDateTime.class).toInstant());
+            assertEquals(date.toInstant(), rs.getObject("added", OffsetDateTime.class).toInstant());
+            assertNull(rs.getObject(2, OffsetDateTime.class));
+            assertEquals(LocalDate.of(2024, 3, 1), rs.getObject(3, LocalDate.class));
+            assertEquals(42L, rs.getObject(4, Long.class));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DateTimeUtilTest {
+
+    private static final OffsetDateTime TIME = OffsetDateTime.of(2024, 3, 9, 17, 5, 42, 0, ZoneOffset.ofHours(2));
+
+    @Test
+    void parseIsoReadsWhatFormatToIsoWrites() {
+        assertEquals(TIME, DateTimeUtil.parseIso(DateTimeUtil.formatToIso(TIME)));
+        OffsetDateTime fraction = TIME.withNano(123_456_789);
+        assertEquals(fraction, DateTimeUtil.parseIso(DateTimeUtil.formatToIso(fraction)));
+        OffsetDateTime utc = TIME.withOffsetSameLocal(ZoneOffset.UTC);
+        assertEquals(utc, DateTimeUtil.parseIso(DateTimeUtil.formatToIso(utc)));
+    }
+
+    @Test
+    void parseReadsEveryCustomPattern() {
+        assertEquals(TIME, DateTimeUtil.parse(DateTimeUtil.formatToCustom1(TIME), DateTimeUtil.PATTERN_1));
+        assertEquals(TIME, DateTimeUtil.parse(DateTimeUtil.formatToCustom2(TIME), DateTimeUtil.PATTERN_2));
+        assertEquals(TIME, DateTimeUtil.parse(DateTimeUtil.formatToCustom3(TIME), DateTimeUtil.PATTERN_3));
+    }
+
+    @Test
+    void parseIsoRejectsMalformedInput() {
+        assertThrows(DateTimeParseException.class, () -> DateTimeUtil.parseIso("2024-13-09T17:05:42+02:00"));
+        assertThrows(DateTimeParseException.class, () -> DateTimeUtil.parseIso("not a date"));
+    }
+}
@@ -0,0 +1,42 @@
+package Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DialectTest {
+
+    @Test
+    void forUrlFindsTheDialect() {
+        assertEquals(Dialect.POSTGRESQL, Dialect.forUrl("jdbc:postgresql://localhost:5432/library"));
+        assertEquals(Dialect.MYSQL, Dialect.forUrl("jdbc:mysql://localhost:3306/library"));
+        assertEquals(Dialect.SQLSERVER, Dialect.forUrl("jdbc:sqlserver://localhost:1433;databaseName=library"));
+        assertEquals(Dialect.POSTGRESQL, Dialect.forUrl("jdbc:h2:mem:x;MODE=PostgreSQL"));
+        assertEquals(Dialect.SQLSERVER, Dialect.forUrl("jdbc:h2:mem:x;MODE=MSSQLServer"));
+        assertThrows(IllegalArgumentException.class, () -> Dialect.forUrl("jdbc:oracle:thin:@localhost"));
+    }
+
+    @Test
+    void tableQuotesAndQualifiesTheName() {
+        assertEquals("public.\"user\"", Dialect.POSTGRESQL.table("user"));
+        assertEquals("`user`", Dialect.MYSQL.table("user"));
+        assertEquals("dbo.[user]", Dialect.SQLSERVER.table("user"));
+    }
+
+    @Test
+    void insertRepeatsTheRowPlaceholders() {
+        assertEquals("INSERT INTO t (a, b) VALUES (?, ?), (?, ?)",
+                Dialect.POSTGRESQL.insert("t", List.of("a", "b"), 2));
+    }
+
+    @Test
+    void seekParametersMatchTheSeekCondition() {
+        for (Dialect dialect : Dialect.values()) {
+            long placeholders = dialect.seek("d", "id").chars().filter(c -> c == '?').count();
+            assertEquals(placeholders, dialect.seekParameters("date", 1).length);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package Util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EntityCacheTest {
+
+    private static final class Box {
+        String value;
+
+        Box(String value) {
+            this.value = value;
+        }
+    }
+
+    private final EntityCache<Box> cache = new EntityCache<>(2, Duration.ofMinutes(1), box -> new Box(box.value));
+
+    @Test
+    void everyLookupGetsItsOwnCopy() throws Exception {
+        Box first = cache.get(1, key -> new Box("stored"));
+        first.value = "modified";
+
+        Box second = cache.get(1, key -> new Box("loaded again"));
+        assertNotSame(first, second);
+        assertEquals("stored", second.value);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void invalidateDuringALoadKeepsTheLoadedValueOutOfTheCache() throws Exception {
+        Box stale = cache.get(1, key -> {
+
+            // A write commits and invalidates the key while the old row is being read
+            cache.invalidate(key);
+            return new Box("stale");
+        });
+        assertEquals("stale", stale.value);
+        assertEquals(0, cache.size());
+        assertEquals("fresh", cache.get(1, key -> new Box("fresh")).value);
+    }
+
+    @Test
+    void putDuringALoadWins() throws Exception {
+        cache.get(1, key -> {
+            cache.put(key, new Box("written"));
+            return new Box("stale");
+        });
+        assertEquals("written", cache.get(1, key -> new Box("loaded")).value);
+    }
+
+    @Test
+    void missingEntitiesAreNotCached() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(cache.get(1, key -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get(1, key -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        cache.get(1, key -> new Box("1"));
+        cache.get(2, key -> new Box("2"));
+        cache.get(1, key -> new Box("1"));
+        cache.get(3, key -> new Box("3"));
+        assertEquals(2, cache.size());
+        assertEquals("reloaded", cache.get(2, key -> new Box("reloaded")).value);
+    }
+}
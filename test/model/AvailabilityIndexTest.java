@@ -0,0 +1,103 @@
+package model;
+
+import Util.DBUtil;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AvailabilityIndexTest {
+
+    // Ids far above the rows the other tests insert
+    private static final int LOAN = 900_000;
+    private static final int BOOK = 800_000;
+    private static final int USER = 700_000;
+
+    @Test
+    void twoLoansOfTheSameBookByOneUserAreBothListed() {
+        AvailabilityIndex.opened(LOAN, BOOK, USER);
+        AvailabilityIndex.opened(LOAN + 1, BOOK, USER);
+        assertArrayEquals(new int[]{BOOK, BOOK}, AvailabilityIndex.getBooksHeldBy(USER));
+
+        AvailabilityIndex.closed(LOAN + 1);
+        assertFalse(AvailabilityIndex.isAvailable(BOOK));
+        assertArrayEquals(new int[]{BOOK}, AvailabilityIndex.getBooksHeldBy(USER));
+
+        AvailabilityIndex.closed(LOAN);
+        assertTrue(AvailabilityIndex.isAvailable(BOOK));
+        assertEquals(0, AvailabilityIndex.getBooksHeldBy(USER).length);
+    }
+
+    @Test
+    void listsOfDifferentUsersStayApart() {
+        AvailabilityIndex.opened(LOAN + 10, BOOK + 10, USER + 10);
+        AvailabilityIndex.opened(LOAN + 11, BOOK + 11, USER + 10);
+        AvailabilityIndex.opened(LOAN + 12, BOOK + 10, USER + 11);
+
+        assertArrayEquals(new int[]{BOOK + 11, BOOK + 10}, AvailabilityIndex.getBooksHeldBy(USER + 10));
+        assertArrayEquals(new int[]{BOOK + 10}, AvailabilityIndex.getBooksHeldBy(USER + 11));
+
+        AvailabilityIndex.closed(LOAN + 10);
+        assertArrayEquals(new int[]{BOOK + 11}, AvailabilityIndex.getBooksHeldBy(USER + 10));
+        assertArrayEquals(new int[]{BOOK + 10}, AvailabilityIndex.getBooksHeldBy(USER + 11));
+
+        AvailabilityIndex.closed(LOAN + 11);
+        AvailabilityIndex.closed(LOAN + 12);
+        assertEquals(0, AvailabilityIndex.getBooksHeldBy(USER + 10).length);
+        assertEquals(0, AvailabilityIndex.getBooksHeldBy(USER + 11).length);
+    }
+
+    @Test
+    void holderIsTheUserOfALoanStillOpen() {
+        AvailabilityIndex.opened(LOAN + 40, BOOK + 40, USER + 40);
+        AvailabilityIndex.opened(LOAN + 41, BOOK + 40, USER + 41);
+        assertEquals(USER + 41, AvailabilityIndex.getHolder(BOOK + 40));
+
+        AvailabilityIndex.closed(LOAN + 41);
+        assertFalse(AvailabilityIndex.isAvailable(BOOK + 40));
+        assertEquals(USER + 40, AvailabilityIndex.getHolder(BOOK + 40));
+
+        AvailabilityIndex.closed(LOAN + 40);
+        assertEquals(-1, AvailabilityIndex.getHolder(BOOK + 40));
+    }
+
+    @Test
+    void reopeningALoanMovesIt() {
+        AvailabilityIndex.opened(LOAN + 20, BOOK + 20, USER + 20);
+        AvailabilityIndex.opened(LOAN + 20, BOOK + 21, USER + 21);
+        assertTrue(AvailabilityIndex.isAvailable(BOOK + 20));
+        assertEquals(USER + 21, AvailabilityIndex.getHolder(BOOK + 21));
+        assertEquals(0, AvailabilityIndex.getBooksHeldBy(USER + 20).length);
+        AvailabilityIndex.closed(LOAN + 20);
+    }
+
+    @Test
+    void loadReadsTheLoansOfThePrimaryNotOfAReplica() throws SQLException {
+        TestDatabase.create();
+        int book = BOOK + 30;
+        DBUtil.executeUpdate("INSERT INTO public.borrow (book_id, user_id) VALUES (?, ?)", DBUtil.getURL(),
+                book, USER + 30);
+
+        // A replica that missed the book being borrowed
+        String replica = "jdbc:h2:mem:laggingLoans;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        DBUtil.executeUpdate("CREATE TABLE IF NOT EXISTS public.borrow (borrowing_id INT PRIMARY KEY, " +
+                "book_id INT, user_id INT, borrowing_date TIMESTAMP WITH TIME ZONE, " +
+                "expected_return_date TIMESTAMP WITH TIME ZONE, actual_return_date TIMESTAMP WITH TIME ZONE)", replica);
+        DBUtil.addReplica(DBUtil.getURL(), replica);
+        DBUtil.setReadYourWritesWindow(0);
+        try {
+            AvailabilityIndex.load();
+            assertFalse(AvailabilityIndex.isAvailable(book));
+            assertEquals(USER + 30, AvailabilityIndex.getHolder(book));
+        } finally {
+            DBUtil.removeReplica(DBUtil.getURL(), replica);
+            DBUtil.setReadYourWritesWindow(5_000);
+            DBUtil.executeUpdate("DELETE FROM public.borrow WHERE book_id = ?", DBUtil.getURL(), book);
+            AvailabilityIndex.load();
+        }
+    }
+}
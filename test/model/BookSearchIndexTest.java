@@ -0,0 +1,109 @@
+package model;
+
+import Util.DBUtil;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookSearchIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void createTables() throws Exception {
+        TestDatabase.create();
+    }
+
+    @AfterEach
+    void stop() {
+        BookSearchIndex.stop();
+    }
+
+    @Test
+    void loadedSegmentAnswersLikeTheIndexItWasSavedFrom() throws Exception {
+        Book whale = new Book("Moby Dick", "The whale hunt of captain Ahab", 635, "Adventure", 1);
+        Book sea = new Book("The Sea Wolf", "A captain at sea", 366, "Adventure", 1);
+        whale.addToDatabase();
+        sea.addToDatabase();
+        BookSearchIndex.rebuild();
+        int[] expected = BookSearchIndex.search("captain whal*", 10);
+        int size = BookSearchIndex.size();
+
+        Path file = directory.resolve("books.idx");
+        BookSearchIndex.save(file);
+        BookSearchIndex.load(file);
+
+        assertEquals(size, BookSearchIndex.size());
+        assertArrayEquals(expected, BookSearchIndex.search("captain whal*", 10));
+        assertEquals(whale.getBook_id(), BookSearchIndex.search("ahab", 10)[0]);
+    }
+
+    @Test
+    void changesAfterLoadMaskTheSegment() throws Exception {
+        Book book = new Book("Kidnapped", "Highlands adventure", 288, "Adventure", 2);
+        book.addToDatabase();
+        BookSearchIndex.rebuild();
+        Path file = directory.resolve("books.idx");
+        BookSearchIndex.save(file);
+        BookSearchIndex.load(file);
+        int size = BookSearchIndex.size();
+
+        book.setTitle("Abducted");
+        book.saveChanges();
+        assertEquals(size, BookSearchIndex.size());
+        assertEquals(0, BookSearchIndex.search("kidnapped", 10).length);
+        assertArrayEquals(new int[]{book.getBook_id()}, BookSearchIndex.search("abducted", 10));
+
+        // Saving merges the segment and the books changed since, without the masked versions
+        BookSearchIndex.save(file);
+        BookSearchIndex.load(file);
+        assertEquals(size, BookSearchIndex.size());
+        assertEquals(0, BookSearchIndex.search("kidnapped", 10).length);
+        assertArrayEquals(new int[]{book.getBook_id()}, BookSearchIndex.search("abducted", 10));
+
+        book.delete();
+        assertEquals(size - 1, BookSearchIndex.size());
+        assertEquals(0, BookSearchIndex.search("abducted", 10).length);
+    }
+
+    @Test
+    void catchUpIndexesBooksAddedAndChangedSinceTheWatermark() throws Exception {
+        // Added long before the watermark, so only the change file brings its new version back
+        Object[] keys = DBUtil.executeInsert(Book.INSERT_SQL, DBUtil.getURL(), Book.KEY_COLUMNS, "Walden",
+                "Life in the woods", 352, OffsetDateTime.now().minusDays(30), "Essay", 3);
+        Book changed = Book.findById(((Number) keys[0]).intValue());
+        BookSearchIndex.rebuild();
+        Path file = directory.resolve("books.idx");
+        BookSearchIndex.save(file);
+        long watermark = BookSearchIndex.getWatermark();
+        assertTrue(watermark > 0);
+
+        // Changed by this process while the change file is written, then a book added by another process
+        BookSearchIndex.start(file, Duration.ofHours(1));
+        changed.setDescription("Simple living by a pond");
+        changed.saveChanges();
+        DBUtil.executeUpdate("INSERT INTO " + Book.SQL.table() + " (title, description, number_of_pages, " +
+                        "date_added, genre, author_id) VALUES (?, ?, ?, ?, ?, ?)", DBUtil.getURL(),
+                "Leviathan", "Commonwealth", 736, OffsetDateTime.now(), "Philosophy", 4);
+
+        // A process starting from the saved segment
+        BookSearchIndex.load(file);
+        assertEquals(0, BookSearchIndex.search("pond", 10).length);
+        BookSearchIndex.catchUp(file);
+        assertArrayEquals(new int[]{changed.getBook_id()}, BookSearchIndex.search("pond", 10));
+        assertEquals(0, BookSearchIndex.search("woods", 10).length);
+        assertEquals(1, BookSearchIndex.search("leviathan", 10).length);
+        assertTrue(BookSearchIndex.getWatermark() > watermark);
+    }
+}
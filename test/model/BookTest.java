@@ -0,0 +1,93 @@
+package model;
+
+import Util.DBUtil;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookTest {
+
+    @BeforeAll
+    static void createTables() throws SQLException {
+        TestDatabase.create();
+    }
+
+    @Test
+    void addToDatabaseReadsBackTheGeneratedKeys() throws SQLException {
+        Book book = new Book("Dune", "Sand", 412, "Science fiction", 1);
+        assertEquals("1", book.addToDatabase());
+        assertTrue(book.getBook_id() > 0);
+        assertNotNull(book.getDate_added());
+
+        Book stored = Book.findById(book.getBook_id());
+        assertEquals("Dune", stored.getTitle());
+        assertEquals(412, stored.getNumber_of_pages());
+    }
+
+    @Test
+    void saveChangesWritesTheModifiedColumns() throws SQLException {
+        Book book = new Book("Emma", "Matchmaking", 474, "Novel", 2);
+        book.addToDatabase();
+        assertEquals("0", book.saveChanges());
+
+        book.setTitle("Emma, a novel");
+        assertEquals("1", book.saveChanges());
+        assertEquals("Emma, a novel", Book.findById(book.getBook_id()).getTitle());
+    }
+
+    @Test
+    void deleteRemovesTheRow() throws SQLException {
+        Book book = new Book("Ulysses", "A day in Dublin", 730, "Novel", 3);
+        book.addToDatabase();
+        assertEquals("1", book.delete());
+        assertNull(Book.findById(book.getBook_id()));
+        assertEquals("0", book.delete());
+    }
+
+    @Test
+    void addAllToDatabaseKeysEveryBook() {
+        List<Book> books = List.of(new Book("A", "a", 1, "G", 4), new Book("B", "b", 2, "G", 4),
+                new Book("C", "c", 3, "G", 4));
+        assertEquals("3", Book.addAllToDatabase(books));
+        assertTrue(books.get(0).getBook_id() < books.get(1).getBook_id());
+        assertTrue(books.get(1).getBook_id() < books.get(2).getBook_id());
+    }
+
+    @Test
+    void findByIdCachesTheRowOfThePrimaryNotOfAReplica() throws SQLException {
+        Book book = new Book("Middlemarch", "A provincial town", 880, "Novel", 5);
+        book.addToDatabase();
+
+        // A replica that missed the book being renamed
+        String replica = "jdbc:h2:mem:lagging;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        DBUtil.executeUpdate("CREATE TABLE IF NOT EXISTS public.book (book_id INT PRIMARY KEY, title VARCHAR(255), " +
+                "description VARCHAR(4000), number_of_pages INT, date_added TIMESTAMP WITH TIME ZONE, " +
+                "genre VARCHAR(255), author_id INT)", replica);
+        DBUtil.executeUpdate("INSERT INTO public.book VALUES (?, 'Old title', 'A provincial town', 880, NULL, " +
+                "'Novel', 5)", replica, book.getBook_id());
+
+        book.setTitle("Middlemarch, a study of provincial life");
+        book.saveChanges();
+        DBUtil.addReplica(DBUtil.getURL(), replica);
+        DBUtil.setReadYourWritesWindow(0);
+        try {
+            try (ResultSet rs = DBUtil.executeQuery("SELECT title FROM public.book WHERE book_id = ?",
+                    DBUtil.getURL(), book.getBook_id())) {
+                assertTrue(rs.next());
+                assertEquals("Old title", rs.getString(1));
+            }
+            assertEquals("Middlemarch, a study of provincial life", Book.findById(book.getBook_id()).getTitle());
+        } finally {
+            DBUtil.removeReplica(DBUtil.getURL(), replica);
+            DBUtil.setReadYourWritesWindow(5_000);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogueSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void createTables() throws Exception {
+        TestDatabase.create();
+    }
+
+    @Test
+    void openedSnapshotHoldsTheRowsItWasWrittenFrom() throws Exception {
+        Author author = new Author("Jules", "Verne");
+        author.addToDatabase();
+        Book book = new Book("Vingt mille lieues sous les mers", null, 500, "Aventure épique", author.getAuthor_id());
+        book.addToDatabase();
+        User user = new User("Pierre", "Aronnax");
+        user.addToDatabase();
+
+        Path file = directory.resolve("catalogue.snap");
+        CatalogueSnapshot.write(file);
+        assertFalse(Files.exists(directory.resolve("catalogue.snap.tmp")));
+        assertFalse(Files.exists(directory.resolve("catalogue.snap.heap.tmp")));
+
+        CatalogueSnapshot snapshot = CatalogueSnapshot.open(file);
+        assertTrue(snapshot.getWatermark() > 0);
+        assertTrue(snapshot.getBookCount() > 0);
+
+        Book stored = snapshot.findBook(book.getBook_id());
+        assertEquals(book.getTitle(), stored.getTitle());
+        assertNull(stored.getDescription());
+        assertEquals("Aventure épique", stored.getGenre());
+        assertEquals(author.getAuthor_id(), stored.getAuthor_id());
+        assertEquals(book.getDate_added().toInstant(), stored.getDate_added().toInstant());
+
+        assertEquals("Verne", snapshot.findAuthor(author.getAuthor_id()).getLast_name());
+        User storedUser = snapshot.findUser(user.getUser_id());
+        assertEquals("Aronnax", storedUser.getLast_name());
+        assertTrue(storedUser.getBooking_record());
+        assertNull(snapshot.findBook(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,94 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChangeLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tornRecordIsCutWhenTheLogIsOpened() throws IOException {
+        try (ChangeLog log = open(1024 * 1024, 16)) {
+            log.onChange(ChangeEvent.inserted("book", 1));
+            log.onChange(ChangeEvent.updated("book", 1, List.of("title", "genre")));
+            log.onChange(ChangeEvent.deleted("book", 1));
+        }
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+
+        // A crash in the middle of a record: its length and part of its body
+        Files.write(segment, ByteBuffer.allocate(12).putInt(40).putLong(3).array(), StandardOpenOption.APPEND);
+
+        try (ChangeLog log = open(1024 * 1024, 16)) {
+            assertEquals(3, log.getEndOffset());
+            assertEquals(size, Files.size(segment));
+            log.onChange(ChangeEvent.inserted("author", 2));
+        }
+
+        List<ChangeEvent> events = ChangeLog.read(directory, 0, 10);
+        assertEquals(List.of(0L, 1L, 2L, 3L), offsets(events));
+        assertEquals(List.of("title", "genre"), events.get(1).getColumns());
+        assertEquals(ChangeEvent.Operation.DELETE, events.get(2).getOperation());
+        assertEquals("author", events.get(3).getEntity());
+    }
+
+    @Test
+    void fullSegmentsRotateAndTheOldestAreDeleted() throws IOException {
+
+        // Every segment is full after one event
+        try (ChangeLog log = open(1, 3)) {
+            for (int id = 0; id < 6; id++) {
+                log.onChange(ChangeEvent.inserted("book", id));
+            }
+        }
+
+        List<Path> segments = segments();
+        assertEquals(List.of("00000000000000000003.log", "00000000000000000004.log", "00000000000000000005.log"),
+                segments.stream().map(file -> file.getFileName().toString()).collect(Collectors.toList()));
+        assertEquals(List.of(4L, 5L), offsets(ChangeLog.read(directory, 4, 10)));
+        assertEquals(List.of(4L), offsets(ChangeLog.read(directory, 4, 1)));
+    }
+
+    @Test
+    void readingFromADeletedOffsetStartsAtTheOldestEventKept() throws IOException {
+        try (ChangeLog log = open(1, 2)) {
+            for (int id = 0; id < 5; id++) {
+                log.onChange(ChangeEvent.inserted("book", id));
+            }
+        }
+
+        assertEquals(List.of(3L, 4L), offsets(ChangeLog.read(directory, 0, 10)));
+        assertEquals(0, ChangeLog.read(directory, 5, 10).size());
+    }
+
+    private ChangeLog open(long segmentBytes, int maxSegments) throws IOException {
+        ChangeLog log = new ChangeLog(directory, segmentBytes, maxSegments);
+
+        // Only the events given by the test are written
+        ChangeBus.removeListener(log);
+        return log;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<Long> offsets(List<ChangeEvent> events) {
+        return events.stream().map(ChangeEvent::getOffset).collect(Collectors.toList());
+    }
+}
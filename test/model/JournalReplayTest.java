@@ -0,0 +1,109 @@
+package model;
+
+import Util.ConnectionUnavailableException;
+import Util.DBUtil;
+import Util.WriteJournal;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalReplayTest {
+
+    // A database that cannot be reached, a journal draining to it keeps its entries
+    private static final String OFFLINE_URL = "jdbc:h2:tcp://127.0.0.1:1/offline;MODE=PostgreSQL";
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void createTables() throws SQLException {
+        TestDatabase.create();
+    }
+
+    @Test
+    void replayedInsertReachesTheIndexesAndListeners() throws IOException, InterruptedException {
+        Path file = directory.resolve("journal");
+        Book book = new Book("Kindred", "Time travel", 264, "Journaled", 4_242);
+
+        // Hold a write in the journal so the book is journaled behind it
+        try (WriteJournal journal = new WriteJournal(file, OFFLINE_URL, 500, 60_000)) {
+            WriteJournal.install(journal);
+            journal.append("UPDATE public.book SET title = title WHERE book_id = ?", -1);
+            assertEquals(WriteJournal.QUEUED, book.addToDatabase());
+            assertEquals(-1, book.getBook_id());
+
+            book.setTitle("Kindred, a novel");
+            assertNotEquals(WriteJournal.QUEUED, book.saveChanges());
+            assertNotEquals(WriteJournal.QUEUED, book.delete());
+        }
+
+        List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+        ChangeBus.ChangeListener listener = events::add;
+        ChangeBus.addListener(listener);
+        try (WriteJournal journal = new WriteJournal(file, DBUtil.getURL(), 500, 60_000)) {
+            for (int i = 0; i < 100 && journal.getPendingCount() > 0; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, journal.getPendingCount());
+        } finally {
+            ChangeBus.removeListener(listener);
+        }
+
+        assertEquals(1, events.size());
+        assertEquals(ChangeEvent.Operation.INSERT, events.get(0).getOperation());
+        assertEquals(1, BookAttributeIndex.getBooksByAuthorAndGenre(4_242, "Journaled").length);
+        assertEquals(events.get(0).getId(), BookAttributeIndex.getBooksByAuthor(4_242)[0]);
+    }
+
+    @Test
+    void appliedKeysAreDeletedOnceTheJournalIsEmptied() throws IOException, InterruptedException, SQLException {
+        String key;
+        try (WriteJournal journal = new WriteJournal(directory.resolve("journal"), DBUtil.getURL(), 500, 50)) {
+            key = journal.append("UPDATE public.book SET title = title WHERE book_id = ?", -1);
+            for (int i = 0; i < 100 && (journal.getPendingCount() > 0 || countApplied(key) > 0); i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, journal.getPendingCount());
+        }
+        assertEquals(0, countApplied(key));
+    }
+
+    @Test
+    void insertIsOnlyJournaledIfItWasNeverSent() throws IOException {
+        SQLTransientConnectionException lost = new SQLTransientConnectionException("Connection reset", "08006");
+        try (WriteJournal journal = new WriteJournal(directory.resolve("journal"), OFFLINE_URL, 500, 60_000)) {
+            WriteJournal.install(journal);
+            assertEquals("Connection reset", WriteJournal.enqueueInsertIfOffline(lost, Book.TABLE,
+                    Book.KEY_COLUMNS[0], Book.INSERT_SQL, new Book("T", "D", 1, "G", 1).insertParams()));
+            assertEquals(0, journal.getPendingCount());
+
+            assertEquals(WriteJournal.QUEUED, WriteJournal.enqueueInsertIfOffline(
+                    new ConnectionUnavailableException(lost), Book.TABLE, Book.KEY_COLUMNS[0], Book.INSERT_SQL,
+                    new Book("T", "D", 1, "G", 1).insertParams()));
+            assertTrue(journal.getPendingCount() > 0);
+
+            // An update can be replayed whether or not the failed attempt was committed
+            assertEquals(WriteJournal.QUEUED, WriteJournal.enqueueIfOffline(lost, Book.TABLE, 1,
+                    Book.SQL.update(List.of("title")), "T", 1));
+        }
+    }
+
+    private static int countApplied(String key) throws SQLException {
+        try (Stream<Integer> count = DBUtil.stream("SELECT COUNT(*) FROM journal_applied WHERE entry_key = ?",
+                DBUtil.getURL(), rs -> rs.getInt(1), key)) {
+            return count.findFirst().orElse(0);
+        }
+    }
+}
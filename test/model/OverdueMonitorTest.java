@@ -0,0 +1,48 @@
+package model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OverdueMonitorTest {
+
+    // Ids far above the rows the other tests insert
+    private static final int LOAN = 900_000;
+    private static final int BOOK = 800_000;
+    private static final int USER = 700_000;
+
+    @AfterEach
+    void stopMonitor() {
+        OverdueMonitor.stop();
+    }
+
+    @Test
+    void loanReturnedWhileTheOpenLoansAreReadIsNotWatched() {
+        Borrow loan = openLoan(LOAN);
+
+        // The cursor already holds the open row when the book is returned
+        OverdueMonitor.start(Stream.of(loan).peek(read -> OverdueMonitor.cancel(read.getBorrowing_id())));
+        assertEquals(0, OverdueMonitor.getPendingCount());
+    }
+
+    @Test
+    void loanOpenedWhileTheOpenLoansAreReadIsWatched() {
+        Borrow loan = openLoan(LOAN + 1);
+        Borrow opened = openLoan(LOAN + 2);
+
+        OverdueMonitor.start(Stream.of(loan).peek(read -> OverdueMonitor.schedule(opened)));
+        assertEquals(2, OverdueMonitor.getPendingCount());
+
+        OverdueMonitor.cancel(LOAN + 2);
+        assertEquals(1, OverdueMonitor.getPendingCount());
+    }
+
+    private static Borrow openLoan(int borrowing_id) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return new Borrow(borrowing_id, BOOK, USER, now, now.plusDays(14), null);
+    }
+}
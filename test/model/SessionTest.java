@@ -0,0 +1,94 @@
+package model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTest {
+
+    @BeforeAll
+    static void createTables() throws SQLException {
+        TestDatabase.create();
+    }
+
+    @Test
+    void newBorrowOfNewBookAndUserGetsTheirIds() throws SQLException {
+        Author author = new Author("Mary", "Shelley");
+        Book book = new Book("Frankenstein", "A creature", 280, "Gothic", -1);
+        User user = new User("Ada", "Lovelace");
+        Borrow borrow = new Borrow(-1, -1, OffsetDateTime.now().plusDays(14));
+
+        try (Session session = new Session()) {
+            session.add(borrow, book, user);
+            session.add(book, author);
+            session.add(user);
+            session.add(author);
+        }
+
+        assertTrue(author.getAuthor_id() > 0);
+        assertEquals(author.getAuthor_id(), book.getAuthor_id());
+        assertEquals(book.getBook_id(), borrow.getBook_id());
+        assertEquals(user.getUser_id(), borrow.getUser_id());
+
+        Borrow stored = Borrow.findById(borrow.getBorrowing_id());
+        assertEquals(book.getBook_id(), stored.getBook_id());
+        assertEquals(user.getUser_id(), stored.getUser_id());
+        assertEquals(author.getAuthor_id(), Book.findById(book.getBook_id()).getAuthor_id());
+    }
+
+    @Test
+    void unsavedForeignKeyWithoutParentIsRejected() {
+        Session session = new Session();
+        Borrow borrow = new Borrow(-1, 1, OffsetDateTime.now().plusDays(14));
+        assertThrows(IllegalArgumentException.class, () -> session.add(borrow));
+        assertThrows(IllegalArgumentException.class, () -> session.add(new Book("T", "D", 1, "G", 1),
+                new User("Not", "Related")));
+        assertTrue(session.isEmpty());
+    }
+
+    @Test
+    void parentDroppedFromTheSessionFailsTheCommit() {
+        Session session = new Session();
+        User user = new User("Grace", "Hopper");
+        session.add(user);
+        session.add(new Borrow(1, -1, OffsetDateTime.now().plusDays(14)), user);
+        session.delete(user);
+        assertThrows(IllegalStateException.class, session::commit);
+    }
+
+    @Test
+    void rowsThatAreGoneCountNothingAndPublishNoEvent() throws SQLException {
+        User user = new User("Alan", "Turing");
+        try (Session session = new Session()) {
+            session.add(user);
+        }
+        User missing = new User(999_999, "No", "Body", OffsetDateTime.now(), false);
+        missing.setFirst_name("Still nobody");
+        user.setFirst_name("Alan M.");
+
+        List<ChangeEvent> events = new ArrayList<>();
+        ChangeBus.ChangeListener listener = events::add;
+        ChangeBus.addListener(listener);
+        try {
+            Session session = new Session();
+            session.update(user);
+            session.update(missing);
+            session.delete(new User(999_998, "No", "One", OffsetDateTime.now(), false));
+            assertEquals(1, session.commit());
+        } finally {
+            ChangeBus.removeListener(listener);
+        }
+
+        assertEquals(1, events.size());
+        assertEquals(ChangeEvent.Operation.UPDATE, events.get(0).getOperation());
+        assertEquals(user.getUser_id(), events.get(0).getId());
+    }
+}
@@ -0,0 +1,44 @@
+package model;
+
+import Util.DBUtil;
+
+import java.sql.SQLException;
+
+/**
+ * Creates the library tables in the in-memory H2 database the tests run against, see core/pom.xml
+ */
+final class TestDatabase {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS public.author (author_id SERIAL PRIMARY KEY, first_name VARCHAR(255), " +
+                    "last_name VARCHAR(255), date_added TIMESTAMP WITH TIME ZONE)",
+            "CREATE TABLE IF NOT EXISTS public.book (book_id SERIAL PRIMARY KEY, title VARCHAR(255), " +
+                    "description VARCHAR(4000), number_of_pages INT, date_added TIMESTAMP WITH TIME ZONE, " +
+                    "genre VARCHAR(255), author_id INT)",
+            "CREATE TABLE IF NOT EXISTS public.\"user\" (user_id SERIAL PRIMARY KEY, first_name VARCHAR(255), " +
+                    "last_name VARCHAR(255), date_added TIMESTAMP WITH TIME ZONE, booking_record BOOLEAN)",
+            "CREATE TABLE IF NOT EXISTS public.borrow (borrowing_id SERIAL PRIMARY KEY, book_id INT, user_id INT, " +
+                    "borrowing_date TIMESTAMP WITH TIME ZONE, expected_return_date TIMESTAMP WITH TIME ZONE, " +
+                    "actual_return_date TIMESTAMP WITH TIME ZONE)"
+    };
+
+    private static boolean created;
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Creates the tables once per JVM
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    static synchronized void create() throws SQLException {
+        if (created) {
+            return;
+        }
+        for (String sql : SCHEMA) {
+            DBUtil.executeUpdate(sql, DBUtil.getURL());
+        }
+        created = true;
+    }
+}